@@ -0,0 +1,142 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs each task on its own named virtual thread with at most maxConcurrency running at once. Tasks over the cap wait on their own
+ * order, once maxQueued are waiting further tasks are handled by the rejection policy.
+ */
+public class BoundedExecutor implements Executor {
+
+	public enum RejectionPolicy {
+		/** throw a {@link RejectedExecutionException}, futures using the executor fail with it */
+		ABORT,
+		/** run the task on the thread that submitted it, slowing the submitter down */
+		CALLER_RUNS
+	}
+
+	private final String name;
+	private final int maxConcurrency;
+	private final int maxQueued;
+	private final RejectionPolicy rejectionPolicy;
+	private final Semaphore permits;
+	private final ThreadFactory threads;
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	public BoundedExecutor(String name, int maxConcurrency, int maxQueued, RejectionPolicy rejectionPolicy) {
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException("max concurrency must be at least 1");
+		}
+		if (maxQueued < 0) {
+			throw new IllegalArgumentException("max queued can not be negative");
+		}
+		this.name = name;
+		this.maxConcurrency = maxConcurrency;
+		this.maxQueued = maxQueued;
+		this.rejectionPolicy = rejectionPolicy;
+		this.permits = new Semaphore(maxConcurrency, true);
+		this.threads = Thread.ofVirtual().name(name + "-", 0).factory();
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		if (permits.tryAcquire()) {
+			start(() -> run(task));
+			return;
+		}
+		if (queued.incrementAndGet() > maxQueued) {
+			queued.decrementAndGet();
+			reject(task);
+			return;
+		}
+		start(() -> {
+			permits.acquireUninterruptibly();
+			queued.decrementAndGet();
+			run(task);
+		});
+	}
+
+	private void start(Runnable runnable) {
+		threads.newThread(runnable).start();
+	}
+
+	// called holding a permit
+	private void run(Runnable task) {
+		active.incrementAndGet();
+		try {
+			task.run();
+		} finally {
+			active.decrementAndGet();
+			completed.incrementAndGet();
+			permits.release();
+		}
+	}
+
+	private void reject(Runnable task) {
+		rejected.incrementAndGet();
+		if (rejectionPolicy == RejectionPolicy.CALLER_RUNS) {
+			task.run();
+			return;
+		}
+		throw new RejectedExecutionException(name + " has " + maxConcurrency + " tasks running and " + maxQueued + " waiting");
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	public int getMaxQueued() {
+		return maxQueued;
+	}
+
+	/**
+	 * Tasks running now
+	 */
+	public int getActive() {
+		return active.get();
+	}
+
+	/**
+	 * Tasks waiting for a running one to finish
+	 */
+	public int getQueued() {
+		return queued.get();
+	}
+
+	public long getCompletedCount() {
+		return completed.get();
+	}
+
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	@Override
+	public String toString() {
+		return name + "[active=" + getActive() + ", queued=" + getQueued() + ", completed=" + getCompletedCount() + ", rejected=" + getRejectedCount() + "]";
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Running totals of the capacity a database consumed, kept per organisation, table and index
+ */
+public class CapacityUsage implements DatabaseListener {
+
+	private record Key(String organisationId, String table, String index) {}
+
+	private record Units(DoubleAdder read, DoubleAdder write) {
+		Units() {
+			this(new DoubleAdder(), new DoubleAdder());
+		}
+	}
+
+	private final Map<Key, Units> usage = new ConcurrentHashMap<>();
+
+	@Override
+	public void consumedCapacity(ConsumedCapacity capacity) {
+		var units = usage.computeIfAbsent(new Key(capacity.organisationId(), capacity.table(), capacity.index()), __ -> new Units());
+		units.read().add(capacity.readCapacityUnits());
+		units.write().add(capacity.writeCapacityUnits());
+	}
+
+	/**
+	 * One entry per organisation, table and index combination that consumed capacity
+	 */
+	public List<ConsumedCapacity> entries() {
+		return usage
+			.entrySet()
+			.stream()
+			.map(
+				entry -> new ConsumedCapacity(
+					entry.getKey().organisationId(),
+					entry.getKey().table(),
+					entry.getKey().index(),
+					entry.getValue().read().sum(),
+					entry.getValue().write().sum()
+				)
+			)
+			.sorted(
+				Comparator
+					.comparing(ConsumedCapacity::organisationId, Comparator.nullsFirst(Comparator.naturalOrder()))
+					.thenComparing(ConsumedCapacity::table, Comparator.nullsFirst(Comparator.naturalOrder()))
+					.thenComparing(ConsumedCapacity::index, Comparator.nullsFirst(Comparator.naturalOrder()))
+			)
+			.toList();
+	}
+
+	public ConsumedCapacity total() {
+		return sum(null, null, entries());
+	}
+
+	public Map<String, ConsumedCapacity> byOrganisation() {
+		return group(ConsumedCapacity::organisationId, capacity -> sum(capacity.organisationId(), null, List.of(capacity)));
+	}
+
+	public Map<String, ConsumedCapacity> byTable() {
+		return group(ConsumedCapacity::table, capacity -> sum(null, capacity.table(), List.of(capacity)));
+	}
+
+	public boolean isEmpty() {
+		return usage.isEmpty();
+	}
+
+	/**
+	 * Totals in a shape that can be serialised into a GraphQL response extension
+	 */
+	public Map<String, Object> toMap() {
+		var total = total();
+		var map = new LinkedHashMap<String, Object>();
+		map.put("readCapacityUnits", total.readCapacityUnits());
+		map.put("writeCapacityUnits", total.writeCapacityUnits());
+		map
+			.put(
+				"tables",
+				entries()
+					.stream()
+					.map(capacity -> {
+						var entry = new LinkedHashMap<String, Object>();
+						entry.put("organisationId", capacity.organisationId());
+						entry.put("table", capacity.table());
+						if (capacity.index() != null) {
+							entry.put("index", capacity.index());
+						}
+						entry.put("readCapacityUnits", capacity.readCapacityUnits());
+						entry.put("writeCapacityUnits", capacity.writeCapacityUnits());
+						return entry;
+					})
+					.toList()
+			);
+		return map;
+	}
+
+	private Map<String, ConsumedCapacity> group(Function<ConsumedCapacity, String> key, Function<ConsumedCapacity, ConsumedCapacity> relabel) {
+		return entries()
+			.stream()
+			.filter(capacity -> key.apply(capacity) != null)
+			.map(relabel)
+			.collect(Collectors.toMap(key, Function.identity(), (a, b) -> sum(a.organisationId(), a.table(), List.of(a, b)), LinkedHashMap::new));
+	}
+
+	private static ConsumedCapacity sum(String organisationId, String table, List<ConsumedCapacity> capacities) {
+		double read = 0;
+		double write = 0;
+		for (var capacity : capacities) {
+			read += capacity.readCapacityUnits();
+			write += capacity.writeCapacityUnits();
+		}
+		return new ConsumedCapacity(organisationId, table, null, read, write);
+	}
+}
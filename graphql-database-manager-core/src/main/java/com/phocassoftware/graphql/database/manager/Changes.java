@@ -0,0 +1,22 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.phocassoftware.graphql.database.manager;
+
+import java.util.List;
+
+/**
+ * A page of changes in update order. An id is only in one of the lists, whichever happened last
+ *
+ * @param cursor  position after this page, pass it to the next call. Kept even when there is nothing more so a replica can store it
+ * @param hasMore false once the page reached the end of the changes at the time of the read
+ */
+public record Changes<T extends Table>(List<T> updated, List<String> deleted, String cursor, boolean hasMore) {}
@@ -0,0 +1,276 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.phocassoftware.graphql.database.manager;
+
+import com.phocassoftware.graphql.database.manager.access.ForbiddenWriteException;
+import com.phocassoftware.graphql.database.manager.util.TableCoreUtil;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Feeds a stream of entities to the bulk writer in fixed size batches. Only {@link ImportQuery#parallelism()} batches are held at
+ * once so memory stays bounded no matter how large the source is.
+ */
+class DataImporter {
+
+	private final String organisationId;
+	private final ImportQuery query;
+	private final Function<List<PutValue<?>>, CompletableFuture<Void>> bulkWriter;
+	private final Function<List<Table>, CompletableFuture<List<Boolean>>> putAllowAll;
+	private final Consumer<List<Table>> onWrite;
+	private final Executor executor;
+
+	private final AtomicLong succeeded = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+
+	DataImporter(
+		String organisationId,
+		ImportQuery query,
+		Function<List<PutValue<?>>, CompletableFuture<Void>> bulkWriter,
+		Function<List<Table>, CompletableFuture<List<Boolean>>> putAllowAll,
+		Consumer<List<Table>> onWrite,
+		Executor executor
+	) {
+		this.organisationId = organisationId;
+		this.query = query;
+		this.bulkWriter = bulkWriter;
+		this.putAllowAll = putAllowAll;
+		this.onWrite = onWrite;
+		this.executor = executor;
+	}
+
+	<T extends Table> CompletableFuture<ImportResult> run(Iterator<T> source) {
+		return CompletableFuture
+			.supplyAsync(
+				() -> {
+					var permits = new Semaphore(query.parallelism());
+					RuntimeException failure = null;
+					while (failure == null) {
+						permits.acquireUninterruptibly();
+						var batch = new ArrayList<T>(query.batchSize());
+						try {
+							while (batch.size() < query.batchSize() && source.hasNext()) {
+								batch.add(source.next());
+							}
+						} catch (RuntimeException e) {
+							failure = e;
+						}
+						if (batch.isEmpty()) {
+							permits.release();
+							break;
+						}
+						write(batch).whenComplete((r, e) -> permits.release());
+					}
+					// batches already handed to the writer settle before the result does, even when the source failed
+					permits.acquireUninterruptibly(query.parallelism());
+					if (failure != null) {
+						throw failure;
+					}
+					return summary();
+				},
+				executor
+			);
+	}
+
+	<T extends Table> CompletableFuture<ImportResult> run(Flow.Publisher<T> source) {
+		var subscriber = new ImportSubscriber<T>();
+		source.subscribe(subscriber);
+		return subscriber.result;
+	}
+
+	private ImportResult summary() {
+		return new ImportResult(succeeded.get(), failed.get());
+	}
+
+	private CompletableFuture<Void> write(List<? extends Table> batch) {
+		return allow(batch)
+			.thenCompose(allowed -> {
+				var entities = new ArrayList<Table>(batch.size());
+				var values = new ArrayList<PutValue<?>>(batch.size());
+				for (int i = 0; i < batch.size(); i++) {
+					if (allowed.get(i)) {
+						var entity = batch.get(i);
+						entities.add(entity);
+						values.add(new PutValue<>(organisationId, entity, query.check(), new CompletableFuture<>()));
+					}
+				}
+				if (values.isEmpty()) {
+					return CompletableFuture.completedFuture(null);
+				}
+				onWrite.accept(entities);
+
+				var written = new ArrayList<CompletableFuture<?>>(values.size());
+				for (PutValue<?> value : values) {
+					written
+						.add(
+							value
+								.getFuture()
+								.handle((r, error) -> {
+									if (error == null) {
+										succeeded.incrementAndGet();
+									} else {
+										fail(value.getEntity(), error);
+									}
+									return null;
+								})
+						);
+				}
+
+				try {
+					bulkWriter
+						.apply(values)
+						.exceptionally(error -> {
+							values.forEach(value -> value.fail(error));
+							return null;
+						});
+				} catch (RuntimeException e) {
+					values.forEach(value -> value.fail(e));
+				}
+				return CompletableFuture.allOf(written.toArray(CompletableFuture<?>[]::new));
+			});
+	}
+
+	// one permission check for the whole batch, entities that can not be written are failed here
+	private CompletableFuture<List<Boolean>> allow(List<? extends Table> batch) {
+		CompletableFuture<List<Boolean>> allow;
+		try {
+			allow = putAllowAll.apply(List.copyOf(batch));
+		} catch (RuntimeException e) {
+			allow = CompletableFuture.failedFuture(e);
+		}
+		return allow
+			.handle((allowed, error) -> {
+				if (error == null && allowed.size() != batch.size()) {
+					error = new IllegalStateException("permission gave " + allowed.size() + " results for " + batch.size() + " entities");
+				}
+				var result = new ArrayList<Boolean>(batch.size());
+				for (int i = 0; i < batch.size(); i++) {
+					var entity = batch.get(i);
+					if (error != null) {
+						fail(entity, error);
+						result.add(false);
+					} else if (!Boolean.TRUE.equals(allowed.get(i))) {
+						fail(entity, new ForbiddenWriteException("put not allowed for " + TableCoreUtil.table(entity.getClass()) + " with id " + entity.getId()));
+						result.add(false);
+					} else {
+						result.add(true);
+					}
+				}
+				return result;
+			});
+	}
+
+	private void fail(Table entity, Throwable error) {
+		if (error instanceof CompletionException && error.getCause() != null) {
+			error = error.getCause();
+		}
+		failed.incrementAndGet();
+		query.onFailure().accept(entity, error);
+	}
+
+	private class ImportSubscriber<T extends Table> implements Flow.Subscriber<T> {
+
+		private final CompletableFuture<ImportResult> result = new CompletableFuture<>();
+		private Flow.Subscription subscription;
+		private List<T> batch = new ArrayList<>();
+		private int inFlight;
+		private boolean waiting;
+		private boolean complete;
+		private Throwable failure;
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			subscription.request(query.batchSize());
+		}
+
+		@Override
+		public void onNext(T item) {
+			batch.add(item);
+			if (batch.size() >= query.batchSize()) {
+				flush();
+			}
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			finish(throwable);
+		}
+
+		@Override
+		public void onComplete() {
+			finish(null);
+		}
+
+		// what was received is still written, the result waits for every batch in flight either way
+		private void finish(Throwable throwable) {
+			synchronized (this) {
+				complete = true;
+				failure = throwable;
+			}
+			if (!batch.isEmpty()) {
+				flush();
+			} else {
+				batchComplete(false);
+			}
+		}
+
+		private void flush() {
+			var toSend = batch;
+			batch = new ArrayList<>();
+			synchronized (this) {
+				inFlight++;
+			}
+			var future = write(toSend);
+			boolean request;
+			synchronized (this) {
+				request = !complete && inFlight < query.parallelism();
+				waiting = !complete && !request;
+			}
+			future.whenComplete((r, e) -> batchComplete(true));
+			if (request) {
+				subscription.request(query.batchSize());
+			}
+		}
+
+		private void batchComplete(boolean finished) {
+			boolean request = false;
+			synchronized (this) {
+				if (finished) {
+					inFlight--;
+				}
+				if (complete) {
+					if (inFlight == 0 && failure != null) {
+						result.completeExceptionally(failure);
+					} else if (inFlight == 0) {
+						result.complete(summary());
+					}
+				} else if (waiting) {
+					waiting = false;
+					request = true;
+				}
+			}
+			if (request) {
+				subscription.request(query.batchSize());
+			}
+		}
+	}
+}
@@ -11,9 +11,12 @@
  */
 package com.phocassoftware.graphql.database.manager;
 
+import com.phocassoftware.graphql.database.manager.access.ForbiddenWriteException;
+import com.phocassoftware.graphql.database.manager.util.TableCoreUtil;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -22,10 +25,31 @@ public class DataWriter {
 	private final Function<List<PutValue>, CompletableFuture<Void>> bulkWriter;
 	private final List<PutValue> toPut = new ArrayList<>();
 	private final Consumer<CompletableFuture<?>> handleFuture;
+	private final Function<List<Table>, CompletableFuture<List<Boolean>>> allowAll;
 
 	public DataWriter(Function<List<PutValue>, CompletableFuture<Void>> bulkWriter, Consumer<CompletableFuture<?>> handleFuture) {
+		this(bulkWriter, handleFuture, null);
+	}
+
+	/**
+	 * @param allowAll checks each dispatched batch in one call before it is written, null when puts are checked before they are queued
+	 */
+	@SuppressWarnings("rawtypes")
+	public DataWriter(
+		Function<List<PutValue>, CompletableFuture<Void>> bulkWriter,
+		Consumer<CompletableFuture<?>> handleFuture,
+		Function<List<Table>, CompletableFuture<List<Boolean>>> allowAll
+	) {
 		this.bulkWriter = bulkWriter;
 		this.handleFuture = handleFuture;
+		this.allowAll = allowAll;
+	}
+
+	/**
+	 * @return true when queued puts are checked at dispatch, so callers need not check them first
+	 */
+	public boolean checksPermission() {
+		return allowAll != null;
 	}
 
 	public int dispatchSize() {
@@ -44,11 +68,47 @@ public class DataWriter {
 		}
 		if (toSend == null) {
 			return CompletableFuture.completedFuture(null);
+		} else if (allowAll != null) {
+			return checked(toSend);
 		} else {
 			return bulkWriter.apply(toSend);
 		}
 	}
 
+	// denied puts fail on their own, the rest of the batch is still written. Raw as that is what the bulk writer takes
+	@SuppressWarnings("rawtypes")
+	private CompletableFuture<Void> checked(List<PutValue> values) {
+		CompletableFuture<List<Boolean>> allowed;
+		try {
+			allowed = allowAll.apply(values.stream().map(PutValue::getEntity).toList());
+		} catch (RuntimeException e) {
+			allowed = CompletableFuture.failedFuture(e);
+		}
+		return allowed
+			.handle((results, failure) -> {
+				if (failure == null && results.size() != values.size()) {
+					failure = new IllegalStateException("permission gave " + results.size() + " results for " + values.size() + " entities");
+				}
+				if (failure != null) {
+					var cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+					values.forEach(value -> value.fail(cause));
+					return List.<PutValue>of();
+				}
+				var permitted = new ArrayList<PutValue>(values.size());
+				for (int i = 0; i < values.size(); i++) {
+					var value = values.get(i);
+					if (Boolean.TRUE.equals(results.get(i))) {
+						permitted.add(value);
+					} else {
+						var entity = value.getEntity();
+						value.fail(new ForbiddenWriteException("put not allowed for " + TableCoreUtil.table(entity.getClass()) + " with id " + entity.getId()));
+					}
+				}
+				return permitted;
+			})
+			.thenCompose(permitted -> permitted.isEmpty() ? CompletableFuture.completedFuture(null) : bulkWriter.apply(permitted));
+	}
+
 	public <T extends Table> CompletableFuture<T> put(String organisationId, T entity, boolean check) {
 		var future = new CompletableFuture<T>();
 		var putValue = new PutValue<T>(organisationId, entity, check, future);
@@ -12,28 +12,47 @@
 
 package com.phocassoftware.graphql.database.manager;
 
+import com.phocassoftware.graphql.database.manager.access.BatchModificationPermission;
 import com.phocassoftware.graphql.database.manager.access.ForbiddenWriteException;
 import com.phocassoftware.graphql.database.manager.access.ModificationPermission;
+import com.phocassoftware.graphql.database.manager.instrumentation.AccessPatternDetector;
+import com.phocassoftware.graphql.database.manager.instrumentation.AccessScope;
 import com.phocassoftware.graphql.database.manager.util.BackupItem;
 import com.phocassoftware.graphql.database.manager.util.HistoryBackupItem;
 import com.phocassoftware.graphql.database.manager.util.TableCoreUtil;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import org.dataloader.BatchLoaderEnvironment;
 import org.dataloader.DataLoader;
 import org.dataloader.DataLoaderFactory;
 import org.dataloader.DataLoaderOptions;
@@ -41,8 +60,16 @@ import org.dataloader.DataLoaderOptions;
 @SuppressWarnings("unchecked")
 public class Database {
 
+	/**
+	 * Default executor for every workload, see {@link DatabaseExecutors} to bound or isolate them
+	 */
 	public static ExecutorService VIRTUAL_THREAD_POOL = Executors.newVirtualThreadPerTaskExecutor();
 
+	private static final int MAX_UPDATE_ATTEMPTS = 5;
+	private static final int BULK_LINK_PARALLELISM = 8;
+	private static final int LINK_BATCHES_IN_FLIGHT = 4;
+	private static final int CHANGES_PAGE_SIZE = 100;
+
 	private String organisationId;
 	private final DatabaseDriver driver;
 
@@ -52,20 +79,51 @@ public class Database {
 	private final DataWriter put;
 
 	private final Function<Table, CompletableFuture<Boolean>> putAllow;
+	private final Function<List<Table>, CompletableFuture<List<Boolean>>> putAllowAll;
 
 	private final AtomicInteger submitted;
+	private final CapacityUsage consumedCapacity;
+	private final AtomicReference<TraceRecorder> recorder;
+	private final Deadline deadline;
+	private final DatabaseExecutors executors;
 
 	Database(String organisationId, DatabaseDriver driver, ModificationPermission putAllow) {
+		this(organisationId, driver, putAllow, DatabaseListener.NONE);
+	}
+
+	Database(String organisationId, DatabaseDriver driver, ModificationPermission putAllow, DatabaseListener listener) {
+		this(organisationId, driver, putAllow, listener, Deadline.NONE, DatabaseExecutors.VIRTUAL);
+	}
+
+	Database(
+		String organisationId,
+		DatabaseDriver driver,
+		ModificationPermission putAllow,
+		DatabaseListener listener,
+		Deadline deadline,
+		DatabaseExecutors executors
+	) {
 		this.organisationId = organisationId;
-		this.driver = driver;
-		this.putAllow = putAllow;
+		this.executors = executors;
+		this.consumedCapacity = new CapacityUsage();
+		this.recorder = new AtomicReference<>();
+		this.deadline = deadline;
+		this.driver = driver
+			.monitored(consumedCapacity.and(AccessPatternDetector.OPERATIONS).and(new RecorderListener(recorder)).and(listener))
+			.withDeadline(deadline);
+		this.putAllow = entity -> allowed(putAllow, entity);
+		this.putAllowAll = entities -> allowedAll(putAllow, entities);
 		this.submitted = new AtomicInteger();
 
 		items = new TableDataLoader<>(
 			DataLoaderFactory
 				.newDataLoader(
-					driver::get,
-					DataLoaderOptions.newOptions().setMaxBatchSize(driver.maxBatchSize()).build()
+					(List<DatabaseKey<Table>> keys, BatchLoaderEnvironment environment) -> dispatch(
+						"items",
+						environment.getKeyContextsList(),
+						() -> this.driver.get(keys)
+					),
+					DataLoaderOptions.newOptions().setMaxBatchSize(this.driver.maxBatchSize()).build()
 				),
 			this::handleFuture
 		); // will auto call global
@@ -73,7 +131,11 @@ public class Database {
 		queries = new TableDataLoader<>(
 			DataLoaderFactory
 				.newDataLoader(
-					keys -> merge(keys.stream().map(driver::query)),
+					(List<DatabaseQueryKey<Table>> keys, BatchLoaderEnvironment environment) -> dispatch(
+						"queries",
+						environment.getKeyContextsList(),
+						() -> merge(keys.stream().map(this.driver::query))
+					),
 					DataLoaderOptions.newOptions().setBatchingEnabled(false).build()
 				),
 			this::handleFuture
@@ -82,13 +144,14 @@ public class Database {
 		queryHistories = new TableDataLoader<>(
 			DataLoaderFactory
 				.newDataLoader(
-					keys -> merge(keys.stream().map(driver::queryHistory)),
+					keys -> merge(keys.stream().map(this.driver::queryHistory)),
 					DataLoaderOptions.newOptions().setBatchingEnabled(false).build()
 				),
 			this::handleFuture
 		); // will auto call global
 
-		put = new DataWriter(driver::bulkPut, this::handleFuture);
+		// a batch permission checks puts when the writer dispatches rather than one at a time
+		put = new DataWriter(this.driver::bulkPut, this::handleFuture, putAllow instanceof BatchModificationPermission ? putAllowAll : null);
 	}
 
 	private Database(
@@ -99,7 +162,12 @@ public class Database {
 		TableDataLoader<DatabaseQueryHistoryKey<Table>> queryHistories,
 		DataWriter put,
 		Function<Table, CompletableFuture<Boolean>> putAllow,
-		AtomicInteger submitted
+		Function<List<Table>, CompletableFuture<List<Boolean>>> putAllowAll,
+		AtomicInteger submitted,
+		CapacityUsage consumedCapacity,
+		AtomicReference<TraceRecorder> recorder,
+		Deadline deadline,
+		DatabaseExecutors executors
 	) {
 		super();
 		this.organisationId = organisationId;
@@ -109,7 +177,75 @@ public class Database {
 		this.queryHistories = queryHistories;
 		this.put = put;
 		this.putAllow = putAllow;
+		this.putAllowAll = putAllowAll;
 		this.submitted = submitted;
+		this.consumedCapacity = consumedCapacity;
+		this.recorder = recorder;
+		this.deadline = deadline;
+		this.executors = executors;
+	}
+
+	// forwards operations to whichever recorder is active when they complete
+	private record RecorderListener(AtomicReference<TraceRecorder> recorder) implements DatabaseListener {
+		@Override
+		public void operation(OperationTrace trace) {
+			var active = recorder.get();
+			if (active != null) {
+				active.operation(trace);
+			}
+		}
+	}
+
+	private <T> CompletableFuture<T> dispatch(String loader, List<Object> contexts, Supplier<CompletableFuture<T>> send) {
+		try {
+			deadline.check();
+		} catch (DeadlineExceededException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+		var active = recorder.get();
+		if (active == null) {
+			return AccessScope.dispatch(contexts, send);
+		}
+		var start = System.nanoTime();
+		return AccessScope
+			.dispatch(contexts, send)
+			.whenComplete((result, failure) -> {
+				var paths = contexts.stream().filter(AccessScope.class::isInstance).map(context -> ((AccessScope) context).path()).distinct().toList();
+				active.record("dispatch " + loader, "dispatch", paths.size() == 1 ? paths.getFirst() : null, start, Map.of("keys", contexts.size(), "fields", String.join(", ", paths)));
+			});
+	}
+
+	private CompletableFuture<Boolean> allowed(ModificationPermission permission, Table entity) {
+		var active = recorder.get();
+		if (active == null) {
+			return permission.apply(entity);
+		}
+		var start = System.nanoTime();
+		var path = TraceRecorder.currentPath();
+		return permission
+			.apply(entity)
+			.whenComplete((allowed, failure) -> active.record("permission", "permission", path, start, Map.of("type", TableCoreUtil.table(entity.getClass()), "allowed", Boolean.TRUE.equals(allowed))));
+	}
+
+	private CompletableFuture<List<Boolean>> allowedAll(ModificationPermission permission, List<Table> entities) {
+		var active = recorder.get();
+		if (active == null) {
+			return permission.applyAll(entities);
+		}
+		var start = System.nanoTime();
+		var path = TraceRecorder.currentPath();
+		return permission
+			.applyAll(entities)
+			.whenComplete(
+				(allowed, failure) -> active
+					.record(
+						"permission",
+						"permission",
+						path,
+						start,
+						Map.of("entities", entities.size(), "denied", allowed == null ? 0 : allowed.stream().filter(allow -> !Boolean.TRUE.equals(allow)).count())
+					)
+			);
 	}
 
 	public <T extends Table> CompletableFuture<List<T>> query(Class<T> type, Function<QueryBuilder<T>, QueryBuilder<T>> func) {
@@ -122,6 +258,59 @@ public class Database {
 		return toReturn.thenApply(items -> items.stream().filter(Objects::nonNull).collect(Collectors.toList()));
 	}
 
+	/**
+	 * The requests the query would send, a query already cached by this database costs nothing and is planned as empty
+	 */
+	public <T extends Table> QueryPlan explain(Query<T> query) {
+		DatabaseQueryKey<Table> key = (DatabaseQueryKey<Table>) KeyFactory.createDatabaseQueryKey(organisationId, query);
+		if (queries.isLoaded(key)) {
+			return new QueryPlan(List.of());
+		}
+		return driver.explain(organisationId, query);
+	}
+
+	public <T extends Table> QueryPlan explain(Class<T> type, Function<QueryBuilder<T>, QueryBuilder<T>> func) {
+		return explain(func.apply(QueryBuilder.create(type)).build());
+	}
+
+	/**
+	 * Runs the query past the cache and records what came back next to the plan
+	 */
+	public <T extends Table> CompletableFuture<QueryPlan> analyze(Query<T> query) {
+		var plan = driver.explain(organisationId, query);
+		DatabaseQueryKey<T> key = KeyFactory.createDatabaseQueryKey(organisationId, query);
+		var start = System.nanoTime();
+		return driver
+			.query(key)
+			.thenApply(results -> {
+				var elapsed = (System.nanoTime() - start) / 1_000_000;
+				return plan.withActual(new QueryPlan.Actual((int) results.stream().filter(Objects::nonNull).count(), elapsed));
+			});
+	}
+
+	public <T extends Table> QueryPlan explainGet(Class<T> type, Collection<String> ids) {
+		int count = 0;
+		for (var id : new HashSet<>(ids)) {
+			DatabaseKey<Table> key = (DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, type, id);
+			if (!items.isLoaded(key)) {
+				count++;
+			}
+		}
+		if (count == 0) {
+			return new QueryPlan(List.of());
+		}
+		return driver.explainGet(organisationId, type, count);
+	}
+
+	/**
+	 * Plans {@link #getLinks(Table, Class)}, the link ids are read to size the batch get when they are stored outside the entity
+	 */
+	public CompletableFuture<QueryPlan> explainGetLinks(Table entry, Class<? extends Table> type) {
+		return driver
+			.linkedIds(organisationId, entry, type)
+			.thenApply(ids -> driver.explainLinkedIds(organisationId, entry, type).plus(explainGet(type, ids)));
+	}
+
 	public <T extends Table> CompletableFuture<List<T>> queryHistory(QueryHistory<T> queryHistory) {
 		DatabaseQueryHistoryKey<Table> key = (DatabaseQueryHistoryKey<Table>) KeyFactory.createDatabaseQueryHistoryKey(organisationId, queryHistory);
 		CompletableFuture<List<T>> toReturn = queryHistories.load(key);
@@ -133,7 +322,14 @@ public class Database {
 	}
 
 	public <T extends Table> CompletableFuture<List<T>> queryGlobal(Class<T> type, String id) {
-		return driver.queryGlobal(type, id);
+		return queryGlobal(type, "", id);
+	}
+
+	/**
+	 * @param indexName name given to the {@link com.phocassoftware.graphql.database.manager.annotations.GlobalIndex} to search
+	 */
+	public <T extends Table> CompletableFuture<List<T>> queryGlobal(Class<T> type, String indexName, String value) {
+		return driver.queryGlobal(type, indexName, value);
 	}
 
 	public <T extends Table> CompletableFuture<T> queryGlobalUnique(Class<T> type, String id) {
@@ -178,7 +374,48 @@ public class Database {
 	}
 
 	public <T extends Table> CompletableFuture<List<T>> querySecondary(Class<T> type, String id) {
-		return driver.querySecondary(type, organisationId, id, items);
+		return querySecondary(type, id, false);
+	}
+
+	/**
+	 * @param consistentRead read the matching entities from the table rather than the index, costs a second round trip
+	 */
+	public <T extends Table> CompletableFuture<List<T>> querySecondary(Class<T> type, String id, boolean consistentRead) {
+		return driver.querySecondary(type, organisationId, "", KeyRange.equalTo(id), consistentRead, items);
+	}
+
+	/**
+	 * @param indexName name given to the {@link com.phocassoftware.graphql.database.manager.annotations.SecondaryIndex} to search
+	 */
+	public <T extends Table> CompletableFuture<List<T>> querySecondary(Class<T> type, String indexName, String value) {
+		return querySecondary(type, indexName, KeyRange.equalTo(value));
+	}
+
+	/**
+	 * @param indexName name given to the {@link com.phocassoftware.graphql.database.manager.annotations.SecondaryIndex}, empty for
+	 *                  the unnamed index
+	 * @param range     bounds on the indexed value, resolved by the index rather than filtered afterwards
+	 */
+	public <T extends Table> CompletableFuture<List<T>> querySecondary(Class<T> type, String indexName, KeyRange range) {
+		return driver.querySecondary(type, organisationId, indexName, range, false, items);
+	}
+
+	/**
+	 * Entities of a {@link com.phocassoftware.graphql.database.manager.annotations.TrackChanges} type put or deleted since the given
+	 * time, read a page at a time by passing back the cursor of the previous page
+	 */
+	public <T extends Table> CompletableFuture<Changes<T>> changedSince(Class<T> type, Instant since, String cursor) {
+		return changedSince(type, since, cursor, CHANGES_PAGE_SIZE);
+	}
+
+	public <T extends Table> CompletableFuture<Changes<T>> changedSince(Class<T> type, Instant since, String cursor, int limit) {
+		if (limit <= 0) {
+			throw new IllegalArgumentException("limit must be positive");
+		}
+		if (since == null && cursor == null) {
+			throw new IllegalArgumentException("changedSince needs a time or a cursor to start from");
+		}
+		return driver.changedSince(organisationId, type, since, cursor, limit, items);
 	}
 
 	public <T extends Table> CompletableFuture<T> querySecondaryUnique(Class<T> type, String id) {
@@ -225,8 +462,14 @@ public class Database {
 				throw new RuntimeException("deleting would leave dangling links");
 			}
 		}
-		return putAllow
-			.apply(entity)
+		var external = deleteLinks ? CompletableFuture.completedFuture(false) : driver.hasExternalLinks(organisationId, entity);
+		return external
+			.thenCompose(linked -> {
+				if (linked) {
+					throw new RuntimeException("deleting would leave dangling links");
+				}
+				return putAllow.apply(entity);
+			})
 			.thenCompose(allow -> {
 				if (!allow) {
 					throw new ForbiddenWriteException("Delete not allowed for " + TableCoreUtil.table(entity.getClass()) + " with id " + entity.getId());
@@ -244,10 +487,64 @@ public class Database {
 
 	public <T extends Table> CompletableFuture<List<T>> getLinks(final Table entry, Class<T> target) {
 		return driver
-			.getViaLinks(organisationId, entry, target, items)
+			.getViaLinks(organisationId, entry, target, items.scoped(AccessScope.current()))
 			.thenApply(items -> items.stream().filter(Objects::nonNull).map(item -> (T) item).collect(Collectors.toList()));
 	}
 
+	/**
+	 * Reads one page of linked entities in id order. Entities are loaded a batch at a time with only a few batches outstanding, so large
+	 * link sets are never loaded all at once.
+	 *
+	 * @param after id of the last entity on the previous page, null for the first page
+	 * @param limit maximum number of entities to return
+	 * @return linked entities with an id greater than after, links to missing entities are skipped
+	 */
+	public <T extends Table> CompletableFuture<List<T>> getLinks(final Table entry, Class<T> target, String after, int limit) {
+		if (limit <= 0) {
+			throw new IllegalArgumentException("Limit must be greater than 0");
+		}
+		return driver
+			.linkedIds(organisationId, entry, target)
+			.thenCompose(ids -> {
+				var remaining = after == null ? ids : ids.tailSet(after, false);
+				return loadLinkPage(target, remaining.iterator(), new ArrayList<>(), limit);
+			});
+	}
+
+	private <T extends Table> CompletableFuture<List<T>> loadLinkPage(Class<T> target, Iterator<String> ids, List<T> page, int limit) {
+		int batchSize = driver.maxBatchSize();
+		// never ask for more batches than could still be needed to fill the page
+		int batches = Math.min(LINK_BATCHES_IN_FLIGHT, (limit - page.size() + batchSize - 1) / batchSize);
+
+		List<CompletableFuture<List<T>>> futures = new ArrayList<>();
+		for (int i = 0; i < batches && ids.hasNext(); i++) {
+			List<DatabaseKey<Table>> keys = new ArrayList<>(batchSize);
+			while (keys.size() < batchSize && ids.hasNext()) {
+				keys.add((DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, target, ids.next()));
+			}
+			futures.add(items.loadMany(keys));
+		}
+		if (futures.isEmpty()) {
+			return CompletableFuture.completedFuture(page);
+		}
+
+		return TableCoreUtil
+			.all(futures)
+			.thenCompose(loaded -> {
+				for (var batch : loaded) {
+					for (var item : batch) {
+						if (item != null && page.size() < limit) {
+							page.add(item);
+						}
+					}
+				}
+				if (page.size() >= limit || !ids.hasNext()) {
+					return CompletableFuture.completedFuture(page);
+				}
+				return loadLinkPage(target, ids, page, limit);
+			});
+	}
+
 	public <T extends Table> CompletableFuture<T> getLink(final Table entry, Class<T> target) {
 		return getLinks(entry, target)
 			.thenApply(items -> {
@@ -298,8 +595,8 @@ public class Database {
 	 * @return updated entity with the revision incremented by one CompletableFuture will fail with a RevisionMismatchException
 	 */
 	public <T extends Table> CompletableFuture<T> put(T entity, boolean check) {
-		return putAllow
-			.apply(entity)
+		var allowed = put.checksPermission() ? CompletableFuture.completedFuture(true) : putAllow.apply(entity);
+		return allowed
 			.thenCompose(allow -> {
 				if (!allow) {
 					throw new ForbiddenWriteException("put not allowed for " + TableCoreUtil.table(entity.getClass()) + " with id " + entity.getId());
@@ -312,9 +609,121 @@ public class Database {
 			});
 	}
 
+	/**
+	 * Reads the latest copy of the entity, applies the mutator and writes only the fields that changed. If another writer gets in first
+	 * the read and mutator are retried a bounded number of times.
+	 *
+	 * @param <T>     database entity type to update
+	 * @param mutator may be called more than once, must not change the id
+	 * @return updated entity with the revision incremented by one CompletableFuture will fail with a RevisionMismatchException once
+	 *         retries are exhausted
+	 */
+	public <T extends Table> CompletableFuture<T> update(Class<T> type, String id, Function<T, T> mutator) {
+		return update(type, id, mutator, MAX_UPDATE_ATTEMPTS);
+	}
+
+	private <T extends Table> CompletableFuture<T> update(Class<T> type, String id, Function<T, T> mutator, int attempts) {
+		DatabaseKey<Table> key = (DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, type, id);
+		items.clear(key);
+
+		return get(type, id)
+			.thenCompose(entity -> {
+				if (entity == null) {
+					throw new RuntimeException("Can not update missing " + TableCoreUtil.table(type) + " with id " + id);
+				}
+				return driver
+					.update(
+						organisationId,
+						entity,
+						current -> {
+							var updated = mutator.apply(current);
+							return putAllow
+								.apply(updated)
+								.thenApply(allow -> {
+									if (!allow) {
+										throw new ForbiddenWriteException("update not allowed for " + TableCoreUtil.table(type) + " with id " + id);
+									}
+									items.clear(key);
+									queries.clearAll();
+									return updated;
+								});
+						}
+					);
+			})
+			.exceptionallyCompose(failure -> {
+				var cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+				if (cause instanceof RevisionMismatchException && attempts > 1) {
+					return update(type, id, mutator, attempts - 1);
+				}
+				return CompletableFuture.failedFuture(cause);
+			});
+	}
+
+	/**
+	 * Atomically adds delta to a numeric field. Unlike put there is no revision check so concurrent increments never conflict. An
+	 * entity only read from a lower table or globally is copied into the written table the first time.
+	 *
+	 * @param <T>   database entity type to update, the entity must already exist
+	 * @param field name of a numeric property on the entity
+	 * @return entity as stored after the increment, also visible to following gets
+	 */
+	public <T extends Table> CompletableFuture<T> increment(Class<T> type, String id, String field, long delta) {
+		return get(type, id)
+			.thenCompose(entity -> {
+				if (entity == null) {
+					throw new RuntimeException("Can not increment missing " + TableCoreUtil.table(type) + " with id " + id);
+				}
+				return putAllow.apply(entity);
+			})
+			.thenCompose(allow -> {
+				if (!allow) {
+					throw new ForbiddenWriteException("increment not allowed for " + TableCoreUtil.table(type) + " with id " + id);
+				}
+				DatabaseKey<Table> key = (DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, type, id);
+				items.clear(key);
+				queries.clearAll();
+				return driver
+					.increment(organisationId, type, id, field, delta)
+					.thenApply(entity -> {
+						items.clear(key);
+						items.prime(key, entity);
+						return entity;
+					});
+			});
+	}
+
+	/**
+	 * For counters too hot for a single item. Increments are spread over shards rows and only the total is available, via
+	 * {@link #getShardedCounter(Class, String, String)}.
+	 *
+	 * @param shards number of rows to spread the counter over, keep the same for a given counter
+	 */
+	public <T extends Table> CompletableFuture<Void> incrementSharded(Class<T> type, String id, String field, long delta, int shards) {
+		if (shards <= 0) {
+			throw new IllegalArgumentException("Shards must be greater than 0");
+		}
+		return get(type, id)
+			.thenCompose(entity -> {
+				if (entity == null) {
+					throw new RuntimeException("Can not increment missing " + TableCoreUtil.table(type) + " with id " + id);
+				}
+				return putAllow.apply(entity);
+			})
+			.thenCompose(allow -> {
+				if (!allow) {
+					throw new ForbiddenWriteException("increment not allowed for " + TableCoreUtil.table(type) + " with id " + id);
+				}
+				return driver.incrementSharded(organisationId, type, id, field, delta, shards);
+			});
+	}
+
+	public <T extends Table> CompletableFuture<Long> getShardedCounter(Class<T> type, String id, String field) {
+		return driver.getShardedCounter(organisationId, type, id, field);
+	}
+
 	public <T extends Table> CompletableFuture<T> putGlobal(T entity) {
-		return putAllow
-			.apply(entity)
+		var allowed = put.checksPermission() ? CompletableFuture.completedFuture(true) : putAllow.apply(entity);
+		return allowed
 			.thenCompose(allow -> {
 				if (!allow) {
 					throw new ForbiddenWriteException("put global not allowed for " + TableCoreUtil.table(entity.getClass()) + " with id " + entity.getId());
@@ -326,6 +735,53 @@ public class Database {
 			});
 	}
 
+	public <T extends Table> CompletableFuture<ImportResult> importStream(Iterator<T> entities) {
+		return importStream(entities, builder -> builder);
+	}
+
+	/**
+	 * Writes every entity from the source through the bulk writer without holding the whole source in memory. Entities are pulled a
+	 * batch at a time and the source is not read again until a batch slot is free.
+	 *
+	 * @param <T>      database entity type to import
+	 * @param entities read lazily, may block
+	 * @param builder  batch size, parallelism, revision check and failure callback
+	 * @return counts of written and failed entities, the future only fails if the source itself fails
+	 */
+	public <T extends Table> CompletableFuture<ImportResult> importStream(Iterator<T> entities, Function<ImportQueryBuilder, ImportQueryBuilder> builder) {
+		return importer(builder).run(entities);
+	}
+
+	public <T extends Table> CompletableFuture<ImportResult> importStream(Flow.Publisher<T> entities) {
+		return importStream(entities, builder -> builder);
+	}
+
+	/**
+	 * Same as {@link #importStream(Iterator, Function)} but requests from the publisher one batch at a time.
+	 */
+	public <T extends Table> CompletableFuture<ImportResult> importStream(Flow.Publisher<T> entities, Function<ImportQueryBuilder, ImportQueryBuilder> builder) {
+		return importer(builder).run(entities);
+	}
+
+	private DataImporter importer(Function<ImportQueryBuilder, ImportQueryBuilder> builder) {
+		return new DataImporter(
+			organisationId,
+			builder.apply(new ImportQueryBuilder()).build(),
+			values -> driver.bulkPut(Collections.unmodifiableList(values)),
+			putAllowAll,
+			entities -> {
+				for (var entity : entities) {
+					if (entity.getId() != null) {
+						items.clear((DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, entity.getClass(), entity.getId()));
+					}
+				}
+				// once per batch rather than once per entity
+				queries.clearAll();
+			},
+			executors.executor(DatabaseExecutors.Workload.IMPORT)
+		);
+	}
+
 	private <T> CompletableFuture<List<T>> merge(Stream<CompletableFuture<T>> stream) {
 		List<CompletableFuture<T>> list = stream.collect(Collectors.toList());
 
@@ -371,17 +827,18 @@ public class Database {
 				items.clear(key);
 				queries.clearAll();
 
-				for (String id : getLinkIds(entity, class1)) {
-					key = (DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, class1, id);
-					items.clear(key);
-				}
+				return getLinkIdsAsync(entity, class1)
+					.thenCompose(existing -> {
+						for (String id : existing) {
+							items.clear((DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, class1, id));
+						}
 
-				for (String id : targetIds) {
-					key = (DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, class1, id);
-					items.clear(key);
-				}
+						for (String id : targetIds) {
+							items.clear((DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, class1, id));
+						}
 
-				return driver.link(organisationId, entity, class1, targetIds);
+						return driver.link(organisationId, entity, class1, targetIds);
+					});
 			});
 	}
 
@@ -393,6 +850,298 @@ public class Database {
 		}
 	}
 
+	/**
+	 * Sets the links of many entities at once. The sources are read once and only the source and target type pairs whose ids differ from
+	 * what is stored are written. Sources that link to one another are written in turn, so a link already made from the other side is not
+	 * written again, and at most {@code parallelism} such groups are linked at a time.
+	 *
+	 * @param links target ids per target type for each source, an empty collection removes every link of that type
+	 * @return the sources with their new links and revisions in iteration order. CompletableFuture will fail with the first error once
+	 *         every source has been attempted
+	 */
+	public CompletableFuture<List<Table>> bulkLinks(Map<? extends Table, ? extends Map<Class<? extends Table>, ? extends Collection<String>>> links) {
+		return bulkLinks(links, BULK_LINK_PARALLELISM);
+	}
+
+	public CompletableFuture<List<Table>> bulkLinks(
+		Map<? extends Table, ? extends Map<Class<? extends Table>, ? extends Collection<String>>> links,
+		int parallelism
+	) {
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException("Parallelism must be greater than 0");
+		}
+		var sources = new ArrayList<Table>(links.keySet());
+
+		return putAllowAll
+			.apply(sources)
+			.thenCompose(allowed -> {
+				for (int i = 0; i < sources.size(); i++) {
+					if (!Boolean.TRUE.equals(allowed.get(i))) {
+						var entity = sources.get(i);
+						throw new ForbiddenWriteException("Link not allowed for " + TableCoreUtil.table(entity.getClass()) + " with id " + entity.getId());
+					}
+				}
+				// the caller's copies may be behind, diff against what is stored
+				return bulkLinkLoad(sources);
+			})
+			.thenCompose(current -> {
+				var states = new ArrayList<BulkLinkSource>(sources.size());
+				var existing = new ArrayList<CompletableFuture<Void>>();
+				for (int i = 0; i < sources.size(); i++) {
+					var state = new BulkLinkSource(current.get(i), links.get(sources.get(i)));
+					states.add(state);
+					existing.add(state.loadExisting());
+				}
+				return CompletableFuture.allOf(existing.toArray(CompletableFuture<?>[]::new)).thenCompose(__ -> bulkLinkGroups(states, parallelism));
+			});
+	}
+
+	private CompletableFuture<List<Table>> bulkLinkGroups(List<BulkLinkSource> states, int parallelism) {
+		Map<String, BulkLinkSource> byKey = new HashMap<>();
+		for (var state : states) {
+			var previous = byKey.putIfAbsent(state.key(), state);
+			if (previous != null) {
+				previous.union(state);
+			}
+		}
+		// sources that link to one another are written one after the other, each one sees the reciprocal links the others made
+		for (var state : states) {
+			state.forEachLinked(id -> {
+				var other = byKey.get(id);
+				if (other != null) {
+					state.union(other);
+				}
+			});
+		}
+		Map<BulkLinkSource, List<BulkLinkSource>> groups = new LinkedHashMap<>();
+		for (var state : states) {
+			groups.computeIfAbsent(state.root(), __ -> new ArrayList<>()).add(state);
+		}
+
+		var pending = new ArrayList<>(groups.values());
+		var next = new AtomicInteger();
+		var failure = new AtomicReference<Throwable>();
+		Set<DatabaseKey<Table>> touched = ConcurrentHashMap.newKeySet();
+
+		var workers = new ArrayList<CompletableFuture<Void>>();
+		for (int i = 0; i < Math.min(parallelism, pending.size()); i++) {
+			workers.add(bulkLinkNext(pending, byKey, next, failure, touched));
+		}
+
+		return CompletableFuture
+			.allOf(workers.toArray(CompletableFuture<?>[]::new))
+			.thenCompose(__ -> {
+				// sources another source linked to are only reloaded once, at the end
+				var stale = states.stream().filter(state -> state.stale).toList();
+				if (stale.isEmpty()) {
+					return CompletableFuture.completedFuture(null);
+				}
+				return bulkLinkLoad(stale.stream().map(state -> state.entity).toList())
+					.thenAccept(latest -> {
+						for (int i = 0; i < stale.size(); i++) {
+							stale.get(i).entity = latest.get(i);
+						}
+					});
+			})
+			.handle((done, error) -> {
+				// refresh the loaders once for the whole batch rather than per link call
+				touched.forEach(items::clear);
+				queries.clearAll();
+
+				var cause = failure.get();
+				if (cause == null && error != null) {
+					cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+				}
+				if (cause instanceof RuntimeException runtime) {
+					throw runtime;
+				} else if (cause != null) {
+					throw new RuntimeException(cause);
+				}
+				return states.stream().map(state -> state.entity).toList();
+			});
+	}
+
+	private CompletableFuture<Void> bulkLinkNext(
+		List<List<BulkLinkSource>> groups,
+		Map<String, BulkLinkSource> byKey,
+		AtomicInteger next,
+		AtomicReference<Throwable> failure,
+		Set<DatabaseKey<Table>> touched
+	) {
+		int index = next.getAndIncrement();
+		if (index >= groups.size()) {
+			return CompletableFuture.completedFuture(null);
+		}
+		CompletableFuture<Void> future = CompletableFuture.completedFuture(null);
+		for (var state : groups.get(index)) {
+			future = future
+				.thenCompose(__ -> bulkLinkTypes(state, byKey, touched, MAX_UPDATE_ATTEMPTS))
+				.handle((__, error) -> {
+					if (error != null) {
+						failure.compareAndSet(null, error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+					}
+					return null;
+				});
+		}
+		return future.thenCompose(__ -> bulkLinkNext(groups, byKey, next, failure, touched));
+	}
+
+	private CompletableFuture<Void> bulkLinkTypes(BulkLinkSource state, Map<String, BulkLinkSource> byKey, Set<DatabaseKey<Table>> touched, int attempts) {
+		CompletableFuture<Void> future = CompletableFuture.completedFuture(null);
+		// one source is linked a type at a time as each link moves its revision on
+		for (var target : state.targets.entrySet()) {
+			var type = target.getKey();
+			var table = TableCoreUtil.table(type);
+			var ids = new ArrayList<>(new LinkedHashSet<>(target.getValue()));
+			var wanted = new HashSet<>(ids);
+			future = future
+				.thenCompose(__ -> {
+					if (state.existing.get(table).equals(wanted)) {
+						return CompletableFuture.completedFuture(null);
+					}
+					// another link in the batch moved its revision on, only worth a read when there is still something to write
+					var ready = state.stale ? bulkLinkReload(state) : CompletableFuture.<Void>completedFuture(null);
+					return ready.thenCompose(___ -> {
+						var existing = state.existing.get(table);
+						if (existing.equals(wanted)) {
+							return CompletableFuture.completedFuture(null);
+						}
+						touched.add((DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, state.entity.getClass(), state.entity.getId()));
+						for (String id : existing) {
+							touched.add((DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, type, id));
+						}
+						for (String id : ids) {
+							touched.add((DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, type, id));
+						}
+						return driver
+							.link(organisationId, state.entity, type, ids)
+							.thenAccept(entity -> {
+								state.entity = entity;
+								state.linked(type, existing, wanted, byKey);
+							});
+					});
+				});
+		}
+		return future
+			.exceptionallyCompose(failure -> {
+				var cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+				if (cause instanceof RevisionMismatchException && attempts > 1) {
+					// written to from outside the batch, reload it and apply whatever is still different
+					return bulkLinkReload(state).thenCompose(__ -> bulkLinkTypes(state, byKey, touched, attempts - 1));
+				}
+				return CompletableFuture.failedFuture(cause);
+			});
+	}
+
+	private CompletableFuture<Void> bulkLinkReload(BulkLinkSource state) {
+		return bulkLinkLoad(List.of(state.entity))
+			.thenCompose(latest -> {
+				state.entity = latest.get(0);
+				state.stale = false;
+				return state.loadExisting();
+			});
+	}
+
+	private CompletableFuture<List<Table>> bulkLinkLoad(List<Table> entities) {
+		var futures = new ArrayList<CompletableFuture<List<Table>>>();
+		for (int i = 0; i < entities.size(); i += driver.maxBatchSize()) {
+			var keys = entities
+				.subList(i, Math.min(entities.size(), i + driver.maxBatchSize()))
+				.stream()
+				.map(entity -> (DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, entity.getClass(), entity.getId()))
+				.toList();
+			futures.add(driver.get(keys));
+		}
+		return TableCoreUtil
+			.all(futures)
+			.thenApply(batches -> {
+				var loaded = new ArrayList<Table>(entities.size());
+				batches.forEach(loaded::addAll);
+				for (int i = 0; i < loaded.size(); i++) {
+					// not stored yet, the link call reports that the same as it would outside a batch
+					if (loaded.get(i) == null) {
+						loaded.set(i, entities.get(i));
+					}
+				}
+				return loaded;
+			});
+	}
+
+	private final class BulkLinkSource {
+
+		private final Map<Class<? extends Table>, ? extends Collection<String>> targets;
+		private final Map<String, Set<String>> existing = new ConcurrentHashMap<>();
+		private Table entity;
+		private boolean stale;
+		private BulkLinkSource parent = this;
+
+		private BulkLinkSource(Table entity, Map<Class<? extends Table>, ? extends Collection<String>> targets) {
+			this.entity = entity;
+			this.targets = targets;
+		}
+
+		private String key() {
+			return TableCoreUtil.table(entity.getClass()) + ":" + entity.getId();
+		}
+
+		private CompletableFuture<Void> loadExisting() {
+			var futures = targets
+				.keySet()
+				.stream()
+				.map(type -> getLinkIdsAsync(entity, type).thenAccept(ids -> existing.put(TableCoreUtil.table(type), new HashSet<>(ids))))
+				.toArray(CompletableFuture<?>[]::new);
+			return CompletableFuture.allOf(futures);
+		}
+
+		private void forEachLinked(Consumer<String> action) {
+			for (var target : targets.entrySet()) {
+				var table = TableCoreUtil.table(target.getKey());
+				target.getValue().forEach(id -> action.accept(table + ":" + id));
+				existing.get(table).forEach(id -> action.accept(table + ":" + id));
+			}
+		}
+
+		// the other side of every link that changed now holds a new revision and, when it is in the batch, a new set to diff against
+		private void linked(Class<? extends Table> type, Set<String> before, Set<String> after, Map<String, BulkLinkSource> byKey) {
+			var source = TableCoreUtil.table(entity.getClass());
+			var target = TableCoreUtil.table(type);
+			existing.put(target, new HashSet<>(after));
+			var changed = new HashSet<>(before);
+			changed.addAll(after);
+			for (var id : changed) {
+				var other = byKey.get(target + ":" + id);
+				if (other == null || before.contains(id) == after.contains(id)) {
+					continue;
+				}
+				other.stale = true;
+				var links = other.existing.get(source);
+				if (links != null) {
+					if (after.contains(id)) {
+						links.add(entity.getId());
+					} else {
+						links.remove(entity.getId());
+					}
+				}
+			}
+		}
+
+		private BulkLinkSource root() {
+			var root = this;
+			while (root.parent != root) {
+				root = root.parent;
+			}
+			return root;
+		}
+
+		private void union(BulkLinkSource other) {
+			var a = root();
+			var b = other.root();
+			if (a != b) {
+				b.parent = a;
+			}
+		}
+	}
+
 	public <T extends Table> CompletableFuture<T> unlink(final T entity, final Class<? extends Table> clazz, final String targetId) {
 		return putAllow
 			.apply(entity)
@@ -405,15 +1154,45 @@ public class Database {
 				items.clear(key);
 				queries.clearAll();
 
-				for (final String id : getLinkIds(entity, clazz)) {
-					key = (DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, clazz, id);
-					items.clear(key);
+				return getLinkIdsAsync(entity, clazz)
+					.thenCompose(existing -> {
+						for (final String id : existing) {
+							items.clear((DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, clazz, id));
+						}
+
+						items.clear((DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, clazz, targetId));
+
+						return driver.unlink(organisationId, entity, clazz, targetId);
+					});
+			});
+	}
+
+	/**
+	 * Moves the inline links of one type into adjacency rows, for link types that have been marked with
+	 * {@link com.phocassoftware.graphql.database.manager.annotations.ExternalLinks}. Reads work across both forms so entities can be
+	 * migrated a few at a time, linking an entity also migrates it.
+	 *
+	 * @param <T> database entity type to migrate
+	 * @return entity with the inline links of that type removed
+	 */
+	public <T extends Table> CompletableFuture<T> migrateLinks(final T entity, final Class<? extends Table> type) {
+		return putAllow
+			.apply(entity)
+			.thenCompose(allow -> {
+				if (!allow) {
+					throw new ForbiddenWriteException("Link not allowed for " + TableCoreUtil.table(entity.getClass()) + " with id " + entity.getId());
 				}
 
-				key = (DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, clazz, targetId);
+				var key = (DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, entity.getClass(), entity.getId());
 				items.clear(key);
+				queries.clearAll();
 
-				return driver.unlink(organisationId, entity, clazz, targetId);
+				// only the inline links move, the targets holding the other side are the ones whose rows change
+				for (final String id : TableAccess.getTableLinks(entity).getOrDefault(TableCoreUtil.table(type), Set.of())) {
+					items.clear((DatabaseKey<Table>) KeyFactory.createDatabaseKey(organisationId, type, id));
+				}
+
+				return driver.migrateLinks(organisationId, entity, type);
 			});
 	}
 
@@ -440,6 +1219,9 @@ public class Database {
 		return organisationId;
 	}
 
+	/**
+	 * @return ids held on the entity itself; links kept in external adjacency rows need {@link #getLinkIdsAsync}
+	 */
 	public Set<String> getLinkIds(Table entity, Class<? extends Table> type) {
 		var links = TableAccess.getTableLinks(entity).get(TableCoreUtil.table(type));
 		if (links == null) {
@@ -448,6 +1230,13 @@ public class Database {
 		return Collections.unmodifiableSet(links);
 	}
 
+	/**
+	 * @return ids the entity links to of the given type, including those held in external adjacency rows
+	 */
+	public CompletableFuture<Set<String>> getLinkIdsAsync(Table entity, Class<? extends Table> type) {
+		return driver.linkedIds(organisationId, entity, type).thenApply(Collections::unmodifiableSet);
+	}
+
 	private CompletableFuture<?> handleFuture(CompletableFuture<?> future) {
 		if (future.isDone()) {
 			return future;
@@ -462,21 +1251,78 @@ public class Database {
 				}
 			} else {
 				if (submitted.compareAndSet(current, current + 1)) {
-					return future.thenApplyAsync(t -> t, VIRTUAL_THREAD_POOL);
+					var result = new CompletableFuture<Object>();
+					future
+						.whenComplete((value, failure) -> dispatch(() -> {
+							if (failure != null) {
+								result.completeExceptionally(failure);
+							} else {
+								result.complete(value);
+							}
+						}));
+					return result;
 				}
 			}
 		}
 	}
 
 	private void run() {
-		VIRTUAL_THREAD_POOL.submit(() -> {
+		Runnable dispatch = () -> {
 			var start = submitted.get();
 			start();
 			if (submitted.compareAndSet(start, 0)) {
 				return;
 			}
 			run();
-		});
+		};
+		dispatch(dispatch);
+	}
+
+	private void dispatch(Runnable task) {
+		try {
+			executors.executor(DatabaseExecutors.Workload.DISPATCH).execute(task);
+		} catch (RejectedExecutionException e) {
+			// queued loads would never be sent and finished ones never handed back, run it on this thread instead
+			task.run();
+		}
+	}
+
+	/**
+	 * Capacity consumed by every call made through this database and the databases derived from it with
+	 * {@link #withOrganisationId(String)}
+	 */
+	public CapacityUsage getConsumedCapacity() {
+		return consumedCapacity;
+	}
+
+	/**
+	 * The deadline the work of this database runs under, {@link Deadline#NONE} when it has none
+	 */
+	public Deadline getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * Starts recording a timeline of the work this database and the ones derived from it do, replacing any recording in progress
+	 */
+	public TraceRecorder startTrace() {
+		var started = new TraceRecorder();
+		recorder.set(started);
+		return started;
+	}
+
+	/**
+	 * @return the recording that was stopped, null when none was in progress
+	 */
+	public TraceRecorder stopTrace() {
+		return recorder.getAndSet(null);
+	}
+
+	/**
+	 * The recording in progress, null when the database is not recording
+	 */
+	public TraceRecorder getTraceRecorder() {
+		return recorder.get();
 	}
 
 	public Database withOrganisationId(String organisationId) {
@@ -488,7 +1334,12 @@ public class Database {
 			this.queryHistories,
 			this.put,
 			this.putAllow,
-			this.submitted
+			this.putAllowAll,
+			this.submitted,
+			this.consumedCapacity,
+			this.recorder,
+			this.deadline,
+			this.executors
 		);
 	}
 }
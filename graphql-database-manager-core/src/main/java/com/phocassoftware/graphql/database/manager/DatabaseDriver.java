@@ -18,8 +18,10 @@ import java.time.Instant;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 public abstract class DatabaseDriver {
 
@@ -31,8 +33,40 @@ public abstract class DatabaseDriver {
 
 	public abstract CompletableFuture<Void> bulkPut(List<PutValue> values);
 
+	/**
+	 * Writes only what the mutator changed. The driver captures the state of the entity before handing it to the mutator and the write
+	 * is conditional on the revision being unchanged.
+	 *
+	 * @return updated entity with the revision incremented by one CompletableFuture will fail with a RevisionMismatchException
+	 */
+	public abstract <T extends Table> CompletableFuture<T> update(String organisationId, T entity, Function<T, CompletableFuture<T>> mutator);
+
 	public abstract <T extends Table> CompletableFuture<List<T>> get(List<DatabaseKey<T>> keys);
 
+	/**
+	 * Atomically adds delta to a numeric field of an existing entity without a revision check.
+	 *
+	 * @return the entity as stored after the increment
+	 */
+	public abstract <T extends Table> CompletableFuture<T> increment(String organisationId, Class<T> type, String id, String field, long delta);
+
+	/**
+	 * Adds delta to one of shards counter rows kept beside the entity, so concurrent writers do not contend on a single item.
+	 */
+	public abstract <T extends Table> CompletableFuture<Void> incrementSharded(
+		String organisationId,
+		Class<T> type,
+		String id,
+		String field,
+		long delta,
+		int shards
+	);
+
+	/**
+	 * @return sum of every counter row written by {@link #incrementSharded}
+	 */
+	public abstract <T extends Table> CompletableFuture<Long> getShardedCounter(String organisationId, Class<T> type, String id, String field);
+
 	public abstract <T extends Table> CompletableFuture<List<T>> getViaLinks(
 		String organisationId,
 		Table entry,
@@ -40,6 +74,11 @@ public abstract class DatabaseDriver {
 		TableDataLoader<DatabaseKey<Table>> items
 	);
 
+	/**
+	 * @return every id the entry links to of the given type, in id order
+	 */
+	public abstract CompletableFuture<NavigableSet<String>> linkedIds(String organisationId, Table entry, Class<? extends Table> type);
+
 	public abstract <T extends Table> CompletableFuture<List<T>> query(DatabaseQueryKey<T> key);
 
 	public abstract CompletableFuture<Void> restoreBackup(List<BackupItem> entities);
@@ -56,15 +95,51 @@ public abstract class DatabaseDriver {
 
 	public abstract <T extends Table> CompletableFuture<List<T>> queryHistory(DatabaseQueryHistoryKey<T> key);
 
-	public abstract <T extends Table> CompletableFuture<List<T>> queryGlobal(Class<T> type, String value);
-
+	/**
+	 * @param indexName name given to the {@link com.phocassoftware.graphql.database.manager.annotations.GlobalIndex}, empty for the
+	 *                  unnamed index
+	 */
+	public abstract <T extends Table> CompletableFuture<List<T>> queryGlobal(Class<T> type, String indexName, String value);
+
+	/**
+	 * @param indexName      name given to the {@link com.phocassoftware.graphql.database.manager.annotations.SecondaryIndex}, empty
+	 *                       for the unnamed index
+	 * @param range          values of the index to match, {@link KeyRange#equalTo(String)} for a single value
+	 * @param consistentRead when false results may be served straight from the index and are primed into items
+	 */
 	public abstract <T extends Table> CompletableFuture<List<T>> querySecondary(
 		Class<T> type,
 		String organisationId,
-		String value,
+		String indexName,
+		KeyRange range,
+		boolean consistentRead,
+		TableDataLoader<DatabaseKey<Table>> items
+	);
+
+	/**
+	 * @param cursor returned by the previous page, when set the since time is ignored
+	 */
+	public abstract <T extends Table> CompletableFuture<Changes<T>> changedSince(
+		String organisationId,
+		Class<T> type,
+		Instant since,
+		String cursor,
+		int limit,
 		TableDataLoader<DatabaseKey<Table>> items
 	);
 
+	public abstract <T extends Table> QueryPlan explain(String organisationId, Query<T> query);
+
+	/**
+	 * @param count keys that are not already held by the loader
+	 */
+	public abstract QueryPlan explainGet(String organisationId, Class<? extends Table> type, int count);
+
+	/**
+	 * Requests made to find the ids linked from the entry, empty when they are held on the entity
+	 */
+	public abstract QueryPlan explainLinkedIds(String organisationId, Table entry, Class<? extends Table> type);
+
 	public abstract <T extends Table> CompletableFuture<T> link(String organisationId, T entry, Class<? extends Table> class1, List<String> groupIds);
 
 	public abstract <T extends Table> CompletableFuture<T> unlink(
@@ -74,6 +149,48 @@ public abstract class DatabaseDriver {
 		final String targetId
 	);
 
+	/**
+	 * Moves links of the given type that are still held inside the entity rows into the external adjacency rows used for types marked
+	 * with {@link com.phocassoftware.graphql.database.manager.annotations.ExternalLinks}.
+	 *
+	 * @return entity with the inline links of that type cleared
+	 */
+	public abstract <T extends Table> CompletableFuture<T> migrateLinks(String organisationId, T entity, Class<? extends Table> type);
+
+	/**
+	 * @return whether the entity still has links held in external adjacency rows, which its own link map does not show
+	 */
+	public abstract CompletableFuture<Boolean> hasExternalLinks(String organisationId, Table entity);
+
+	/**
+	 * A driver sharing this one's state that reports its calls to the listener. Drivers that cannot report return themselves.
+	 */
+	public DatabaseDriver monitored(DatabaseListener listener) {
+		return this;
+	}
+
+	/**
+	 * A driver sharing this one's state whose calls stop once the deadline ends. Drivers that cannot be stopped return themselves.
+	 */
+	public DatabaseDriver withDeadline(Deadline deadline) {
+		return this;
+	}
+
+	/**
+	 * A driver sharing this one's state that runs conversion on the executors' {@link DatabaseExecutors.Workload#CONVERSION} executor.
+	 * Drivers that convert inline return themselves.
+	 */
+	public DatabaseDriver withExecutors(DatabaseExecutors executors) {
+		return this;
+	}
+
+	/**
+	 * Whether the failure was the store refusing work for lack of capacity, such work can be sent again later
+	 */
+	protected boolean isThrottling(Throwable failure) {
+		return false;
+	}
+
 	public abstract int maxBatchSize();
 
 	public abstract String newId();
@@ -117,5 +234,20 @@ public abstract class DatabaseDriver {
 		return new DatabaseKey<>(organisationId, type, id);
 	}
 
-	protected abstract ScanResult startTableScan(TableScanQuery tableScanQuery, int segment, Object from);
+	/**
+	 * Tables a table scan reads, each is split into the query's parallelism segments
+	 */
+	protected abstract List<String> scanTables(TableScanQuery tableScanQuery);
+
+	/**
+	 * Reads one page of a segment of the table
+	 *
+	 * @param from where the page starts, the next of the previous page or null for the first
+	 */
+	protected abstract CompletableFuture<ScanResult> scanPage(
+		TableScanQuery tableScanQuery,
+		String table,
+		int segment,
+		Map<String, String> from
+	);
 }
@@ -0,0 +1,52 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Chooses where each kind of database work runs, so heavy background jobs can be capped with a {@link BoundedExecutor} without
+ * taking threads from interactive requests.
+ */
+public interface DatabaseExecutors {
+	enum Workload {
+		/** resolvers moved off the GraphQL thread by {@code VirtualDataRunner} */
+		FETCH,
+		/** driving the data loaders of a database, should not reject as waiting loads would never be sent */
+		DISPATCH,
+		/** turning rows returned by the store into entities */
+		CONVERSION,
+		/** updaters run by a table scan */
+		SCAN,
+		/** bulk imports */
+		IMPORT
+	}
+
+	/**
+	 * Every workload on an unbounded virtual thread per task, the behaviour before executors could be chosen
+	 */
+	DatabaseExecutors VIRTUAL = workload -> Database.VIRTUAL_THREAD_POOL;
+
+	Executor executor(Workload workload);
+
+	/**
+	 * Uses the given executors, workloads not in the map run on {@link #VIRTUAL}
+	 */
+	static DatabaseExecutors of(Map<Workload, ? extends Executor> executors) {
+		var copy = new EnumMap<Workload, Executor>(Workload.class);
+		copy.putAll(executors);
+		return workload -> copy.getOrDefault(workload, Database.VIRTUAL_THREAD_POOL);
+	}
+}
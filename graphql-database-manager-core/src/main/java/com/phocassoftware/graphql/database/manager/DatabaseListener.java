@@ -0,0 +1,48 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager;
+
+/**
+ * Told about the work a {@link Database} sends to the driver. Called on the thread that completed the call so implementations must
+ * be quick and thread safe, billing or throttling decisions should be handed off rather than made inline.
+ */
+public interface DatabaseListener {
+	DatabaseListener NONE = new DatabaseListener() {};
+
+	default void consumedCapacity(ConsumedCapacity capacity) {}
+
+	/**
+	 * A driver operation completed, successfully or not
+	 */
+	default void operation(OperationTrace trace) {}
+
+	default DatabaseListener and(DatabaseListener other) {
+		if (other == null || other == NONE) {
+			return this;
+		}
+		var self = this;
+		return new DatabaseListener() {
+			@Override
+			public void consumedCapacity(ConsumedCapacity capacity) {
+				self.consumedCapacity(capacity);
+				other.consumedCapacity(capacity);
+			}
+
+			@Override
+			public void operation(OperationTrace trace) {
+				self.operation(trace);
+				other.operation(trace);
+			}
+		};
+	}
+}
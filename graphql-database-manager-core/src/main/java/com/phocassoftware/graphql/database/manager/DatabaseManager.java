@@ -18,9 +18,27 @@ import java.util.function.Function;
 public abstract class DatabaseManager {
 
 	private final DatabaseDriver dynamoDb;
+	private final DatabaseListener listener;
+	private final DatabaseExecutors executors;
 
 	public DatabaseManager(DatabaseDriver dynamoDb) {
-		this.dynamoDb = dynamoDb;
+		this(dynamoDb, DatabaseListener.NONE);
+	}
+
+	/**
+	 * @param listener told about the calls of every database this manager hands out, on top of each database's own totals
+	 */
+	public DatabaseManager(DatabaseDriver dynamoDb, DatabaseListener listener) {
+		this(dynamoDb, listener, DatabaseExecutors.VIRTUAL);
+	}
+
+	/**
+	 * @param executors where the work of every database this manager hands out and its table scans runs
+	 */
+	public DatabaseManager(DatabaseDriver dynamoDb, DatabaseListener listener, DatabaseExecutors executors) {
+		this.dynamoDb = executors == DatabaseExecutors.VIRTUAL ? dynamoDb : dynamoDb.withExecutors(executors);
+		this.listener = listener;
+		this.executors = executors;
 	}
 
 	public Database getDatabase(String organisationId) {
@@ -28,7 +46,14 @@ public abstract class DatabaseManager {
 	}
 
 	public Database getDatabase(String organisationId, ModificationPermission putAllow) {
-		return new Database(organisationId, dynamoDb, putAllow);
+		return new Database(organisationId, dynamoDb, putAllow, listener, Deadline.NONE, executors);
+	}
+
+	/**
+	 * @param deadline ends the work of the request, cancel it when the client goes away
+	 */
+	public Database getDatabase(String organisationId, ModificationPermission putAllow, Deadline deadline) {
+		return new Database(organisationId, dynamoDb, putAllow, listener, deadline, executors);
 	}
 
 	public VirtualDatabase getVirtualDatabase(String organisationId) {
@@ -39,7 +64,30 @@ public abstract class DatabaseManager {
 		return new VirtualDatabase(getDatabase(organisationId, putAllow));
 	}
 
+	public VirtualDatabase getVirtualDatabase(String organisationId, ModificationPermission putAllow, Deadline deadline) {
+		return new VirtualDatabase(getDatabase(organisationId, putAllow, deadline));
+	}
+
+	// the database of a scan updater, its calls also count against the scan's capacity budgets
+	VirtualDatabase getVirtualDatabase(String organisationId, Deadline deadline, DatabaseListener scanListener) {
+		return new VirtualDatabase(
+			new Database(organisationId, dynamoDb, __ -> CompletableFuture.completedFuture(true), listener.and(scanListener), deadline, executors)
+		);
+	}
+
+	public DatabaseExecutors getExecutors() {
+		return executors;
+	}
+
 	public TableScanner startTableScan(Function<TableScanQueryBuilder, TableScanQueryBuilder> builder) {
-		return new TableScanner(builder.apply(new TableScanQueryBuilder()).build(), dynamoDb, this);
+		var query = builder.apply(new TableScanQueryBuilder()).build();
+		var limiter = new ScanRateLimiter(
+			query.readCapacity(),
+			query.writeCapacity(),
+			dynamoDb::isThrottling,
+			executors.executor(DatabaseExecutors.Workload.SCAN)
+		);
+		var driver = dynamoDb.monitored(listener.and(limiter));
+		return new TableScanner(query, driver.withDeadline(query.deadline()), this, limiter);
 	}
 }
@@ -0,0 +1,148 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Time budget and cancellation token for the work a request starts. The driver checks it before each page and retry, limits each
+ * call to the time left and cancels the calls still in flight when it expires or is cancelled, so abandoned requests stop using
+ * capacity.
+ */
+public final class Deadline {
+
+	/**
+	 * No time limit and can not be cancelled
+	 */
+	public static final Deadline NONE = new Deadline(Long.MAX_VALUE);
+
+	private final long expiresAtNanos;
+	private final AtomicReference<String> reason = new AtomicReference<>();
+	private final Set<CompletableFuture<?>> pending = ConcurrentHashMap.newKeySet();
+
+	private Deadline(long expiresAtNanos) {
+		this.expiresAtNanos = expiresAtNanos;
+	}
+
+	/**
+	 * Expires once the timeout has passed
+	 */
+	public static Deadline after(Duration timeout) {
+		if (timeout.isNegative()) {
+			throw new IllegalArgumentException("timeout can not be negative");
+		}
+		var deadline = new Deadline(System.nanoTime() + timeout.toNanos());
+		CompletableFuture.delayedExecutor(timeout.toNanos(), TimeUnit.NANOSECONDS).execute(() -> deadline.stop("deadline of " + timeout + " exceeded"));
+		return deadline;
+	}
+
+	/**
+	 * Only ends when cancelled
+	 */
+	public static Deadline cancellable() {
+		return new Deadline(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Stops the work running under this deadline, for when the client has gone away
+	 */
+	public void cancel() {
+		if (this == NONE) {
+			throw new IllegalStateException("NONE can not be cancelled");
+		}
+		stop("cancelled");
+	}
+
+	public boolean isCancelled() {
+		return "cancelled".equals(reason.get());
+	}
+
+	/**
+	 * @return true once expired or cancelled
+	 */
+	public boolean isDone() {
+		if (reason.get() != null) {
+			return true;
+		}
+		if (expiresAtNanos != Long.MAX_VALUE && System.nanoTime() - expiresAtNanos >= 0) {
+			stop("deadline exceeded");
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Time left, empty when there is no time limit
+	 */
+	public Optional<Duration> remaining() {
+		if (expiresAtNanos == Long.MAX_VALUE) {
+			return Optional.empty();
+		}
+		return Optional.of(Duration.ofNanos(Math.max(0, expiresAtNanos - System.nanoTime())));
+	}
+
+	/**
+	 * @throws DeadlineExceededException once expired or cancelled
+	 */
+	public void check() {
+		if (isDone()) {
+			throw exceeded();
+		}
+	}
+
+	/**
+	 * Checks there is still time to wait the delay before trying again
+	 *
+	 * @throws DeadlineExceededException when done or when the delay would outlast the time left
+	 */
+	public void check(Duration delay) {
+		check();
+		if (remaining().map(left -> left.compareTo(delay) < 0).orElse(false)) {
+			throw new DeadlineExceededException("deadline would be exceeded waiting " + delay + " to retry");
+		}
+	}
+
+	/**
+	 * Cancels the future if the deadline ends before it completes. The returned future fails with a {@link DeadlineExceededException}
+	 * when that happens.
+	 */
+	public <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+		if (this == NONE) {
+			return future;
+		}
+		pending.add(future);
+		// added before checking so a deadline ending in between still sees it
+		if (isDone()) {
+			future.cancel(true);
+		}
+		return future
+			.whenComplete((result, failure) -> pending.remove(future))
+			.exceptionallyCompose(failure -> CompletableFuture.failedFuture(reason.get() != null ? exceeded() : failure));
+	}
+
+	private DeadlineExceededException exceeded() {
+		return new DeadlineExceededException(reason.get());
+	}
+
+	private void stop(String why) {
+		if (reason.compareAndSet(null, why)) {
+			pending.forEach(future -> future.cancel(true));
+		}
+	}
+}
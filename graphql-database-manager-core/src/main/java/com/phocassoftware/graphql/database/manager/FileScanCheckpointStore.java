@@ -0,0 +1,161 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.phocassoftware.graphql.database.manager;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the checkpoints of each scan in a properties file in the directory. The file is replaced whole on every save so a
+ * crash leaves either the previous or the new checkpoints.
+ */
+public class FileScanCheckpointStore implements ScanCheckpointStore {
+
+	private static final String POSITION = "position.";
+
+	private final Path directory;
+	private final Executor executor;
+	private final ReentrantLock lock = new ReentrantLock();
+
+	public FileScanCheckpointStore(Path directory) {
+		this(directory, DatabaseExecutors.VIRTUAL.executor(DatabaseExecutors.Workload.SCAN));
+	}
+
+	/**
+	 * @param executor reads and writes the files, usually the scan executor of the manager the scan runs on
+	 */
+	public FileScanCheckpointStore(Path directory, Executor executor) {
+		this.directory = directory;
+		this.executor = executor;
+	}
+
+	@Override
+	public CompletableFuture<Map<Integer, ScanCheckpoint>> load(String checkpointId) {
+		var file = file(checkpointId);
+		return CompletableFuture
+			.supplyAsync(
+				() -> {
+					lock.lock();
+					try {
+						return read(file);
+					} finally {
+						lock.unlock();
+					}
+				},
+				executor
+			);
+	}
+
+	@Override
+	public CompletableFuture<Void> save(String checkpointId, int segment, ScanCheckpoint checkpoint) {
+		var file = file(checkpointId);
+		return CompletableFuture
+			.runAsync(
+				() -> {
+					lock.lock();
+					try {
+						var checkpoints = read(file);
+						checkpoints.put(segment, checkpoint);
+						write(file, checkpoints);
+					} finally {
+						lock.unlock();
+					}
+				},
+				executor
+			);
+	}
+
+	private Path file(String checkpointId) {
+		if (checkpointId.isEmpty() || !checkpointId.matches("[A-Za-z0-9_.-]+") || checkpointId.startsWith(".")) {
+			throw new IllegalArgumentException("checkpoint id can only contain letters, digits, '_', '-' and '.' " + checkpointId);
+		}
+		return directory.resolve(checkpointId + ".properties");
+	}
+
+	private static Map<Integer, ScanCheckpoint> read(Path file) {
+		var checkpoints = new HashMap<Integer, ScanCheckpoint>();
+		if (!Files.exists(file)) {
+			return checkpoints;
+		}
+		var properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(file)) {
+			properties.load(reader);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		var segments = new HashMap<Integer, Map<String, String>>();
+		for (var name : properties.stringPropertyNames()) {
+			var dot = name.indexOf('.');
+			segments
+				.computeIfAbsent(Integer.parseInt(name.substring(0, dot)), __ -> new HashMap<>())
+				.put(name.substring(dot + 1), properties.getProperty(name));
+		}
+		segments.forEach((segment, values) -> {
+			Map<String, String> position = null;
+			for (var entry : values.entrySet()) {
+				if (entry.getKey().startsWith(POSITION)) {
+					if (position == null) {
+						position = new HashMap<>();
+					}
+					position.put(entry.getKey().substring(POSITION.length()), entry.getValue());
+				}
+			}
+			checkpoints
+				.put(
+					segment,
+					new ScanCheckpoint(
+						Integer.parseInt(values.get("segments")),
+						values.get("table"),
+						position,
+						Boolean.parseBoolean(values.get("complete"))
+					)
+				);
+		});
+		return checkpoints;
+	}
+
+	private static void write(Path file, Map<Integer, ScanCheckpoint> checkpoints) {
+		var properties = new Properties();
+		checkpoints.forEach((segment, checkpoint) -> {
+			properties.setProperty(segment + ".segments", Integer.toString(checkpoint.segments()));
+			properties.setProperty(segment + ".complete", Boolean.toString(checkpoint.complete()));
+			if (checkpoint.table() != null) {
+				properties.setProperty(segment + ".table", checkpoint.table());
+			}
+			if (checkpoint.position() != null) {
+				checkpoint.position().forEach((name, value) -> properties.setProperty(segment + "." + POSITION + name, value));
+			}
+		});
+		try {
+			Files.createDirectories(file.getParent());
+			var temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+			try (Writer writer = Files.newBufferedWriter(temp)) {
+				properties.store(writer, null);
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.phocassoftware.graphql.database.manager;
+
+import java.util.function.BiConsumer;
+
+public class ImportQueryBuilder {
+
+	private int batchSize = 100;
+	private int parallelism = 4;
+	private boolean check = true;
+	private BiConsumer<Table, Throwable> onFailure = (entity, failure) -> {};
+
+	/**
+	 * @param batchSize number of entities pulled from the source and sent to the writer at a time
+	 */
+	public ImportQueryBuilder batchSize(int batchSize) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("Batch size must be greater than 0");
+		}
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	/**
+	 * @param parallelism number of batches allowed to be written at once, the source is not read while this many are outstanding
+	 */
+	public ImportQueryBuilder parallelism(int parallelism) {
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException("Parallelism must be greater than 0");
+		}
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * @param check Will only pass if the entity revision matches what is currently in the database
+	 */
+	public ImportQueryBuilder check(boolean check) {
+		this.check = check;
+		return this;
+	}
+
+	/**
+	 * @param onFailure called for each entity that was not written, including entities rejected by the modification permission
+	 */
+	public ImportQueryBuilder onFailure(BiConsumer<Table, Throwable> onFailure) {
+		this.onFailure = onFailure;
+		return this;
+	}
+
+	public ImportQuery build() {
+		return new ImportQuery(batchSize, parallelism, check, onFailure);
+	}
+}
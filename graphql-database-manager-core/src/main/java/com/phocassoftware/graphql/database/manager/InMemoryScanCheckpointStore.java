@@ -0,0 +1,35 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.phocassoftware.graphql.database.manager;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps checkpoints for the life of the process, for scans that are resumed after a failure rather than a restart
+ */
+public class InMemoryScanCheckpointStore implements ScanCheckpointStore {
+
+	private final Map<String, Map<Integer, ScanCheckpoint>> checkpoints = new ConcurrentHashMap<>();
+
+	@Override
+	public CompletableFuture<Map<Integer, ScanCheckpoint>> load(String checkpointId) {
+		return CompletableFuture.completedFuture(Map.copyOf(checkpoints.getOrDefault(checkpointId, Map.of())));
+	}
+
+	@Override
+	public CompletableFuture<Void> save(String checkpointId, int segment, ScanCheckpoint checkpoint) {
+		checkpoints.computeIfAbsent(checkpointId, __ -> new ConcurrentHashMap<>()).put(segment, checkpoint);
+		return CompletableFuture.completedFuture(null);
+	}
+}
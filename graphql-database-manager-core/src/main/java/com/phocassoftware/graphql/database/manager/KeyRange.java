@@ -0,0 +1,66 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.phocassoftware.graphql.database.manager;
+
+/**
+ * Bounds on a sort key, either an entity id or the value of a secondary index. Values are compared as strings, a null end is
+ * left open.
+ */
+public record KeyRange(String from, boolean fromInclusive, String to, boolean toInclusive) {
+	public KeyRange {
+		if (from == null && to == null) {
+			throw new IllegalArgumentException("range must have at least one bound");
+		}
+		if (from != null && to != null && from.compareTo(to) > 0) {
+			throw new IllegalArgumentException("range start " + from + " is after its end " + to);
+		}
+	}
+
+	public static KeyRange equalTo(String value) {
+		return new KeyRange(value, true, value, true);
+	}
+
+	/**
+	 * Both ends are included
+	 */
+	public static KeyRange between(String from, String to) {
+		return new KeyRange(from, true, to, true);
+	}
+
+	public static KeyRange greaterThan(String from) {
+		return new KeyRange(from, false, null, false);
+	}
+
+	public static KeyRange lessThan(String to) {
+		return new KeyRange(null, false, to, false);
+	}
+
+	public boolean isEquality() {
+		return fromInclusive && toInclusive && from.equals(to);
+	}
+
+	public boolean includes(String value) {
+		if (from != null) {
+			var compare = value.compareTo(from);
+			if (compare < 0 || (compare == 0 && !fromInclusive)) {
+				return false;
+			}
+		}
+		if (to != null) {
+			var compare = value.compareTo(to);
+			if (compare > 0 || (compare == 0 && !toInclusive)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
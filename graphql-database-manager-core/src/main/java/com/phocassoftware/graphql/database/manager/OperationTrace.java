@@ -0,0 +1,227 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager;
+
+import com.phocassoftware.graphql.database.manager.instrumentation.AccessScope;
+import java.time.Instant;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What one driver operation did, filled in by the driver as the operation runs and handed to
+ * {@link DatabaseListener#operation(OperationTrace)} once it completes
+ */
+public final class OperationTrace {
+
+	/**
+	 * A single call to the store
+	 *
+	 * @param operation   store call such as Query or BatchGetItem, every page of a query is its own call
+	 * @param index       null when the call read the table itself
+	 * @param startNanos  {@link System#nanoTime()} when the request was sent
+	 * @param items       items returned or written
+	 * @param unprocessed keys or writes the store handed back to be retried
+	 */
+	public record Call(
+		String operation,
+		String table,
+		String index,
+		long startNanos,
+		long elapsedNanos,
+		int items,
+		int unprocessed,
+		double capacityUnits
+	) {
+		public long elapsedMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+		}
+	}
+
+	/**
+	 * Work the driver did between calls: merge, conversion or a retry sleep
+	 */
+	public record Step(String name, long startNanos, long elapsedNanos) {}
+
+	private final String operation;
+	private final String organisationId;
+	private final String type;
+	private final Instant started;
+	private final long startNanos;
+	private final AccessScope scope;
+	private final Queue<Call> calls = new ConcurrentLinkedQueue<>();
+	private final Queue<Step> steps = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger retries = new AtomicInteger();
+	private final LongAdder mergeNanos = new LongAdder();
+	private final LongAdder conversionNanos = new LongAdder();
+	private volatile long elapsedNanos = -1;
+	private volatile Throwable failure;
+
+	public OperationTrace(String operation, String organisationId, String type) {
+		this.operation = operation;
+		this.organisationId = organisationId;
+		this.type = type;
+		this.started = Instant.now();
+		this.startNanos = System.nanoTime();
+		this.scope = AccessScope.current();
+	}
+
+	public void call(Call call) {
+		calls.add(call);
+	}
+
+	/**
+	 * @param delayMillis how long the driver waits before sending the retry
+	 */
+	public void retry(long delayMillis) {
+		retries.incrementAndGet();
+		steps.add(new Step("retry", System.nanoTime(), TimeUnit.MILLISECONDS.toNanos(delayMillis)));
+	}
+
+	/**
+	 * Merging that started at startNanos and has just finished
+	 */
+	public void merge(long startNanos) {
+		var elapsed = System.nanoTime() - startNanos;
+		mergeNanos.add(elapsed);
+		steps.add(new Step("merge", startNanos, elapsed));
+	}
+
+	/**
+	 * Conversion that started at startNanos and has just finished
+	 */
+	public void conversion(long startNanos) {
+		var elapsed = System.nanoTime() - startNanos;
+		conversionNanos.add(elapsed);
+		steps.add(new Step("conversion", startNanos, elapsed));
+	}
+
+	public void finish(Throwable failure) {
+		this.failure = failure;
+		this.elapsedNanos = System.nanoTime() - startNanos;
+	}
+
+	public String getOperation() {
+		return operation;
+	}
+
+	public String getOrganisationId() {
+		return organisationId;
+	}
+
+	/**
+	 * Table name of the entity type the operation was for, null when it covered several
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * The field being resolved when the operation started, null outside of a detected execution
+	 */
+	public AccessScope getScope() {
+		return scope;
+	}
+
+	public Instant getStarted() {
+		return started;
+	}
+
+	public long getStartNanos() {
+		return startNanos;
+	}
+
+	/**
+	 * Time from the start to the completion of the operation, or so far while it is still running
+	 */
+	public long getElapsedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(getElapsedNanos());
+	}
+
+	public long getElapsedNanos() {
+		var elapsed = elapsedNanos;
+		return elapsed < 0 ? System.nanoTime() - startNanos : elapsed;
+	}
+
+	public boolean isFinished() {
+		return elapsedNanos >= 0;
+	}
+
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	public List<Call> getCalls() {
+		return List.copyOf(calls);
+	}
+
+	public List<Step> getSteps() {
+		return List.copyOf(steps);
+	}
+
+	public int getPages() {
+		return (int) calls.stream().filter(call -> call.operation().equals("Query") || call.operation().equals("Scan")).count();
+	}
+
+	public int getRetries() {
+		return retries.get();
+	}
+
+	public int getUnprocessed() {
+		return calls.stream().mapToInt(Call::unprocessed).sum();
+	}
+
+	/**
+	 * Time spent combining the rows of overlaid tables and organisations
+	 */
+	public long getMergeMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(mergeNanos.sum());
+	}
+
+	/**
+	 * Time spent turning stored rows into entities
+	 */
+	public long getConversionMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(conversionNanos.sum());
+	}
+
+	@Override
+	public String toString() {
+		return (
+			"OperationTrace{" +
+			"operation='" +
+			operation +
+			'\'' +
+			", organisationId='" +
+			organisationId +
+			'\'' +
+			", type='" +
+			type +
+			'\'' +
+			", elapsedMillis=" +
+			getElapsedMillis() +
+			", calls=" +
+			calls +
+			", retries=" +
+			retries +
+			", mergeMillis=" +
+			getMergeMillis() +
+			", conversionMillis=" +
+			getConversionMillis() +
+			'}'
+		);
+	}
+}
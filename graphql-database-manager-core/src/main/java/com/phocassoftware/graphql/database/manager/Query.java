@@ -18,12 +18,26 @@ public class Query<T extends Table> {
 	private final Class<T> type;
 	private final String startsWith;
 	private final String after;
+	private final String before;
 	private final Integer limit;
 	private final Integer threadCount;
 	private final Integer threadIndex;
 	private final Boolean scanIndexForward;
-
-	Query(Class<T> type, String startsWith, String after, Integer limit, Integer threadCount, Integer threadIndex, Boolean scanIndexForward) {
+	private final KeyRange range;
+	private final QueryFilter filter;
+
+	Query(
+		Class<T> type,
+		String startsWith,
+		String after,
+		String before,
+		Integer limit,
+		Integer threadCount,
+		Integer threadIndex,
+		Boolean scanIndexForward,
+		KeyRange range,
+		QueryFilter filter
+	) {
 		if (type == null) {
 			throw new RuntimeException("type can not be null, did you forget to call .on(Table::class)?");
 		}
@@ -36,13 +50,32 @@ public class Query<T extends Table> {
 			throw new RuntimeException("Thread count and thread index must both be defined if you are doing a parallel request");
 		}
 
+		if (after != null && before != null) {
+			throw new RuntimeException("A query can page after or before an id but not both");
+		}
+
+		if (before != null && Boolean.TRUE.equals(scanIndexForward)) {
+			throw new RuntimeException("Paging before an id reads in reverse and can not scan forward");
+		}
+
+		if (range != null && startsWith != null) {
+			throw new RuntimeException("A range can not be combined with startsWith");
+		}
+
+		if (range != null && threadCount != null) {
+			throw new RuntimeException("A range can not be used on a parallel request");
+		}
+
 		this.type = type;
 		this.startsWith = startsWith;
 		this.after = after;
+		this.before = before;
 		this.limit = limit;
 		this.threadCount = threadCount;
 		this.threadIndex = threadIndex;
 		this.scanIndexForward = scanIndexForward;
+		this.range = range;
+		this.filter = filter;
 	}
 
 	public Class<T> getType() {
@@ -57,6 +90,10 @@ public class Query<T extends Table> {
 		return after;
 	}
 
+	public String getBefore() {
+		return before;
+	}
+
 	public Integer getLimit() {
 		return limit;
 	}
@@ -73,13 +110,21 @@ public class Query<T extends Table> {
 		return scanIndexForward;
 	}
 
+	public KeyRange getRange() {
+		return range;
+	}
+
+	public QueryFilter getFilter() {
+		return filter;
+	}
+
 	public boolean hasLimit() {
 		return getLimit() != null;
 	}
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(after, limit, startsWith, type, threadIndex, threadCount, scanIndexForward);
+		return Objects.hash(after, before, limit, startsWith, type, threadIndex, threadCount, scanIndexForward, range, filter);
 	}
 
 	@Override
@@ -89,12 +134,15 @@ public class Query<T extends Table> {
 		if (getClass() != obj.getClass()) return false;
 		Query other = (Query) obj;
 		return (Objects.equals(after, other.after) &&
+			Objects.equals(before, other.before) &&
 			Objects.equals(limit, other.limit) &&
 			Objects.equals(startsWith, other.startsWith) &&
 			Objects.equals(type, other.type) &&
 			Objects.equals(threadCount, other.threadCount) &&
 			Objects.equals(threadIndex, other.threadIndex)) &&
-			Objects.equals(scanIndexForward, other.scanIndexForward);
+			Objects.equals(scanIndexForward, other.scanIndexForward) &&
+			Objects.equals(range, other.range) &&
+			Objects.equals(filter, other.filter);
 	}
 
 	static boolean isPowerOfTwo(int n) {
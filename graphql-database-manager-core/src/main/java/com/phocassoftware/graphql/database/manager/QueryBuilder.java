@@ -18,10 +18,13 @@ public class QueryBuilder<V extends Table> {
 	private final Class<V> type;
 	private String startsWith;
 	private String after;
+	private String before;
 	private Integer limit;
 	private Integer threadIndex;
 	private Integer threadCount;
 	private Boolean scanIndexForward;
+	private KeyRange range;
+	private QueryFilter filter;
 
 	private QueryBuilder(Class<V> type) {
 		this.type = type;
@@ -42,6 +45,24 @@ public class QueryBuilder<V extends Table> {
 		return this;
 	}
 
+	/**
+	 * Entities with ids before this one, nearest first
+	 */
+	public QueryBuilder<V> before(String to) {
+		this.before = to;
+		this.scanIndexForward = false;
+		return this;
+	}
+
+	/**
+	 * The last {@code count} entities, newest id first
+	 */
+	public QueryBuilder<V> last(Integer count) {
+		this.limit = count;
+		this.scanIndexForward = false;
+		return this;
+	}
+
 	public QueryBuilder<V> threadCount(Integer threadCount) {
 		this.threadCount = threadCount;
 		return this;
@@ -57,13 +78,39 @@ public class QueryBuilder<V extends Table> {
 		return this;
 	}
 
+	/**
+	 * Only ids from {@code from} to {@code to} inclusive. A query holds one range, so this replaces any greaterThan or lessThan
+	 */
+	public QueryBuilder<V> between(String from, String to) {
+		this.range = KeyRange.between(from, to);
+		return this;
+	}
+
+	public QueryBuilder<V> greaterThan(String from) {
+		this.range = KeyRange.greaterThan(from);
+		return this;
+	}
+
+	public QueryBuilder<V> lessThan(String to) {
+		this.range = KeyRange.lessThan(to);
+		return this;
+	}
+
+	/**
+	 * Only entities matching the filter are returned, calling this again combines the filters with and
+	 */
+	public QueryBuilder<V> filter(QueryFilter filter) {
+		this.filter = this.filter == null ? filter : this.filter.and(filter);
+		return this;
+	}
+
 	public QueryBuilder<V> applyMutation(Consumer<QueryBuilder<V>> mutator) {
 		mutator.accept((QueryBuilder<V>) this);
 		return (QueryBuilder<V>) this;
 	}
 
 	public Query<V> build() {
-		return new Query<V>(type, startsWith, after, limit, threadCount, threadIndex, scanIndexForward);
+		return new Query<V>(type, startsWith, after, before, limit, threadCount, threadIndex, scanIndexForward, range, filter);
 	}
 
 	public static <V extends Table> QueryBuilder<V> create(Class<V> type) {
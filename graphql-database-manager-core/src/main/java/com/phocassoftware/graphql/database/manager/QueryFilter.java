@@ -0,0 +1,159 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.phocassoftware.graphql.database.manager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Condition on the stored properties of an entity, paths are property names separated by dots. Filters are evaluated by the
+ * driver after the key condition so they save transfer and deserialisation but not read capacity.
+ */
+public sealed interface QueryFilter {
+	enum Operator {
+		EQ,
+		NE,
+		LT,
+		LE,
+		GT,
+		GE
+	}
+
+	record Compare(String path, Operator operator, Object value) implements QueryFilter {
+		public Compare {
+			checkPath(path);
+			checkValue(value);
+			if (operator != Operator.EQ && operator != Operator.NE && !(value instanceof Number)) {
+				throw new IllegalArgumentException("only numbers can be compared with " + operator);
+			}
+		}
+	}
+
+	record In(String path, List<Object> values) implements QueryFilter {
+		public In {
+			checkPath(path);
+			if (values.isEmpty()) {
+				throw new IllegalArgumentException("in requires at least one value");
+			}
+			values.forEach(QueryFilter::checkValue);
+			values = List.copyOf(values);
+		}
+	}
+
+	record Exists(String path, boolean exists) implements QueryFilter {
+		public Exists {
+			checkPath(path);
+		}
+	}
+
+	record BeginsWith(String path, String prefix) implements QueryFilter {
+		public BeginsWith {
+			checkPath(path);
+			if (prefix == null || prefix.isEmpty()) {
+				throw new IllegalArgumentException("begins with requires a prefix");
+			}
+		}
+	}
+
+	record And(List<QueryFilter> filters) implements QueryFilter {
+		public And {
+			filters = List.copyOf(filters);
+		}
+	}
+
+	record Or(List<QueryFilter> filters) implements QueryFilter {
+		public Or {
+			filters = List.copyOf(filters);
+		}
+	}
+
+	record Not(QueryFilter filter) implements QueryFilter {}
+
+	default QueryFilter and(QueryFilter other) {
+		List<QueryFilter> filters = new ArrayList<>();
+		if (this instanceof And and) {
+			filters.addAll(and.filters());
+		} else {
+			filters.add(this);
+		}
+		filters.add(other);
+		return new And(filters);
+	}
+
+	default QueryFilter or(QueryFilter other) {
+		return new Or(List.of(this, other));
+	}
+
+	static QueryFilter eq(String path, Object value) {
+		return new Compare(path, Operator.EQ, value);
+	}
+
+	static QueryFilter ne(String path, Object value) {
+		return new Compare(path, Operator.NE, value);
+	}
+
+	static QueryFilter lessThan(String path, Number value) {
+		return new Compare(path, Operator.LT, value);
+	}
+
+	static QueryFilter lessThanOrEqual(String path, Number value) {
+		return new Compare(path, Operator.LE, value);
+	}
+
+	static QueryFilter greaterThan(String path, Number value) {
+		return new Compare(path, Operator.GT, value);
+	}
+
+	static QueryFilter greaterThanOrEqual(String path, Number value) {
+		return new Compare(path, Operator.GE, value);
+	}
+
+	static QueryFilter in(String path, Object... values) {
+		return new In(path, List.of(values));
+	}
+
+	static QueryFilter exists(String path) {
+		return new Exists(path, true);
+	}
+
+	static QueryFilter notExists(String path) {
+		return new Exists(path, false);
+	}
+
+	static QueryFilter beginsWith(String path, String prefix) {
+		return new BeginsWith(path, prefix);
+	}
+
+	static QueryFilter all(QueryFilter... filters) {
+		return new And(List.of(filters));
+	}
+
+	static QueryFilter any(QueryFilter... filters) {
+		return new Or(List.of(filters));
+	}
+
+	static QueryFilter not(QueryFilter filter) {
+		return new Not(filter);
+	}
+
+	private static void checkPath(String path) {
+		if (path == null || path.isEmpty() || path.startsWith(".") || path.endsWith(".") || path.contains("..")) {
+			throw new IllegalArgumentException("invalid filter path " + path);
+		}
+	}
+
+	private static void checkValue(Object value) {
+		if (!(value instanceof String || value instanceof Number || value instanceof Boolean)) {
+			throw new IllegalArgumentException("filter values must be strings, numbers or booleans but got " + value);
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.phocassoftware.graphql.database.manager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The requests a read would send to the driver without sending them. Capacity is an estimate from the key conditions and an
+ * assumed item size, reads that are not bounded by a limit are estimated as a single page.
+ *
+ * @param actual what happened when the read was run, null when it was only planned
+ */
+public record QueryPlan(List<Request> requests, Actual actual) {
+	/**
+	 * @param operation      driver call such as Query or BatchGetItem
+	 * @param table          every table a batch read asks, comma separated
+	 * @param index          null when reading the table itself
+	 * @param keyCondition   key condition or the number of keys for batch reads
+	 * @param expectedItems  items that can come back, null when unbounded
+	 */
+	public record Request(
+		String operation,
+		String table,
+		String index,
+		String organisationId,
+		String keyCondition,
+		String filter,
+		boolean consistentRead,
+		Integer expectedItems,
+		double estimatedReadCapacity
+	) {}
+
+	public record Actual(int items, long elapsedMillis) {}
+
+	public QueryPlan(List<Request> requests) {
+		this(List.copyOf(requests), null);
+	}
+
+	public int fanOut() {
+		return requests.size();
+	}
+
+	public double estimatedReadCapacity() {
+		return requests.stream().mapToDouble(Request::estimatedReadCapacity).sum();
+	}
+
+	public QueryPlan withActual(Actual actual) {
+		return new QueryPlan(requests, actual);
+	}
+
+	public QueryPlan plus(QueryPlan other) {
+		var all = new ArrayList<>(requests);
+		all.addAll(other.requests);
+		return new QueryPlan(all);
+	}
+}
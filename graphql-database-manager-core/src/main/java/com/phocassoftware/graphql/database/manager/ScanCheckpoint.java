@@ -0,0 +1,28 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.phocassoftware.graphql.database.manager;
+
+import java.util.Map;
+
+/**
+ * Where a segment of a table scan got to. Everything before the position has been handed to the updaters.
+ *
+ * @param segments the parallelism of the scan, a checkpoint only applies to a scan split the same way
+ * @param table    the table the segment was reading
+ * @param position where the segment continues in that table, null for the start of it
+ * @param complete the segment has read every table
+ */
+public record ScanCheckpoint(int segments, String table, Map<String, String> position, boolean complete) {
+	public static ScanCheckpoint complete(int segments) {
+		return new ScanCheckpoint(segments, null, null, true);
+	}
+}
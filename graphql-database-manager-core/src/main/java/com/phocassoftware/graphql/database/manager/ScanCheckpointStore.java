@@ -0,0 +1,28 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.phocassoftware.graphql.database.manager;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Keeps the checkpoints of table scans so a scan that stopped can resume. A segment only saves once the save before it has
+ * completed.
+ */
+public interface ScanCheckpointStore {
+	/**
+	 * @return the last checkpoint of each segment saved under the id, empty if there are none
+	 */
+	CompletableFuture<Map<Integer, ScanCheckpoint>> load(String checkpointId);
+
+	CompletableFuture<Void> save(String checkpointId, int segment, ScanCheckpoint checkpoint);
+}
@@ -0,0 +1,228 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.phocassoftware.graphql.database.manager;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Shares read and write capacity budgets, in units a second, between the segments of a table scan. Each budget is a token bucket
+ * refilled at its rate and charged with the capacity the store reports, so it can go into debt and segments wait until it is paid
+ * off. When the store throttles, the rate halves and then climbs back towards the budget. Without a budget nothing waits until the
+ * store first throttles, the rate then starts from half of what was being consumed.
+ */
+public class ScanRateLimiter implements DatabaseListener {
+
+	private final Bucket read;
+	private final Bucket write;
+	private final Predicate<Throwable> throttling;
+
+	/**
+	 * @param throttling whether a failure was the store refusing work for lack of capacity
+	 */
+	public ScanRateLimiter(double readCapacity, double writeCapacity, Predicate<Throwable> throttling) {
+		this(readCapacity, writeCapacity, throttling, DatabaseExecutors.VIRTUAL.executor(DatabaseExecutors.Workload.SCAN));
+	}
+
+	/**
+	 * @param executor resumes the segments that waited for capacity
+	 */
+	public ScanRateLimiter(double readCapacity, double writeCapacity, Predicate<Throwable> throttling, Executor executor) {
+		this(readCapacity, writeCapacity, throttling, executor, System::nanoTime);
+	}
+
+	ScanRateLimiter(double readCapacity, double writeCapacity, Predicate<Throwable> throttling, Executor executor, LongSupplier nanoTime) {
+		this.read = new Bucket(readCapacity, executor, nanoTime);
+		this.write = new Bucket(writeCapacity, executor, nanoTime);
+		this.throttling = throttling;
+	}
+
+	@Override
+	public void consumedCapacity(ConsumedCapacity capacity) {
+		read.charge(capacity.readCapacityUnits());
+		write.charge(capacity.writeCapacityUnits());
+	}
+
+	// operations other than put are reads
+	@Override
+	public void operation(OperationTrace trace) {
+		for (var call : trace.getCalls()) {
+			if (call.unprocessed() > 0) {
+				bucket(call.operation().contains("Write")).throttled();
+			}
+		}
+		if (trace.getFailure() != null && isThrottling(trace.getFailure())) {
+			bucket("put".equals(trace.getOperation())).throttled();
+		}
+	}
+
+	public boolean isThrottling(Throwable failure) {
+		while (failure instanceof CompletionException && failure.getCause() != null) {
+			failure = failure.getCause();
+		}
+		return throttling.test(failure);
+	}
+
+	/**
+	 * Completes once the read budget has room, holding back the usual cost of a read until {@link #releaseRead(double)}
+	 *
+	 * @return the units held back
+	 */
+	public CompletableFuture<Double> acquireRead() {
+		return read.acquire(true);
+	}
+
+	/**
+	 * Call once the read has completed, its real cost has been charged by then
+	 */
+	public void releaseRead(double units) {
+		read.release(units);
+	}
+
+	/**
+	 * Completes once the write budget is out of debt
+	 */
+	public CompletableFuture<Void> acquireWrite() {
+		return write.acquire(false).thenAccept(__ -> {});
+	}
+
+	public void throttled(boolean write) {
+		bucket(write).throttled();
+	}
+
+	/**
+	 * @return units a second reads are held to now, infinite until throttled when there is no budget
+	 */
+	public double getReadRate() {
+		return read.rate();
+	}
+
+	public double getWriteRate() {
+		return write.rate();
+	}
+
+	private Bucket bucket(boolean write) {
+		return write ? this.write : this.read;
+	}
+
+	private static final class Bucket {
+
+		private static final double MIN_RATE = 1;
+		private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+		private final double budget;
+		private final Executor executor;
+		private final LongSupplier nanoTime;
+		private double rate;
+		private double tokens;
+		private double average;
+		private long refilled;
+		private long throttled;
+		private long windowStart;
+		private double windowUnits;
+		private double observed;
+
+		private Bucket(double budget, Executor executor, LongSupplier nanoTime) {
+			this.budget = budget;
+			this.executor = executor;
+			this.nanoTime = nanoTime;
+			this.rate = budget;
+			this.tokens = Double.isFinite(budget) ? budget : 0;
+			this.refilled = nanoTime.getAsLong();
+			this.windowStart = refilled;
+		}
+
+		private synchronized double rate() {
+			refill(nanoTime.getAsLong());
+			return rate;
+		}
+
+		private synchronized void charge(double units) {
+			if (units <= 0) {
+				return;
+			}
+			var now = nanoTime.getAsLong();
+			refill(now);
+			average = average == 0 ? units : average * 0.9 + units * 0.1;
+			windowUnits += units;
+			if (now - windowStart >= SECOND) {
+				observed = windowUnits * SECOND / (now - windowStart);
+				windowUnits = 0;
+				windowStart = now;
+			}
+			if (Double.isFinite(rate)) {
+				tokens -= units;
+			}
+		}
+
+		// a reservation larger than what the read cost is only given back up to a full bucket
+		private synchronized void release(double units) {
+			tokens = Math.min(rate, tokens + units);
+		}
+
+		// several segments see the same throttling, only the first report in a second lowers the rate
+		private synchronized void throttled() {
+			var now = nanoTime.getAsLong();
+			if (throttled != 0 && now - throttled < SECOND) {
+				return;
+			}
+			refill(now);
+			var base = Double.isFinite(rate) ? rate : Math.max(observed, windowUnits);
+			rate = Math.max(MIN_RATE, base / 2);
+			tokens = Math.min(tokens, 0) - rate / 10;
+			throttled = now;
+		}
+
+		private CompletableFuture<Double> acquire(boolean reserve) {
+			long wait;
+			double reserved = 0;
+			synchronized (this) {
+				refill(nanoTime.getAsLong());
+				wait = waitNanos();
+				if (wait == 0 && reserve && Double.isFinite(rate)) {
+					reserved = average;
+					tokens -= reserved;
+				}
+			}
+			if (wait == 0) {
+				return CompletableFuture.completedFuture(reserved);
+			}
+			var delay = CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS, executor);
+			return CompletableFuture.runAsync(() -> {}, delay).thenCompose(__ -> acquire(reserve));
+		}
+
+		private long waitNanos() {
+			if (!Double.isFinite(rate) || tokens >= 0) {
+				return 0;
+			}
+			return Math.max(1, (long) (-tokens / rate * SECOND));
+		}
+
+		private void refill(long now) {
+			var elapsed = now - refilled;
+			refilled = now;
+			if (!Double.isFinite(rate)) {
+				return;
+			}
+			// climbs back a twentieth of the budget a second once a second has passed without throttling
+			if (rate < budget && now - throttled >= SECOND) {
+				var step = Double.isFinite(budget) ? budget / 20 : rate / 20;
+				rate = Math.min(budget, rate + step * elapsed / SECOND);
+			}
+			tokens = Math.min(rate, tokens + rate * elapsed / SECOND);
+		}
+	}
+}
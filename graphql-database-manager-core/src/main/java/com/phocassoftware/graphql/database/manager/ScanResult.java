@@ -12,8 +12,19 @@
 package com.phocassoftware.graphql.database.manager;
 
 import java.util.ArrayList;
+import java.util.Map;
 import java.util.function.Consumer;
 
-public record ScanResult(ArrayList<Item<?>> items, Object next) {
-	public record Item<T extends Table>(String organisationId, T entity, Consumer<T> replace, Consumer<T> delete) {}
+/**
+ * @param next where the following page starts, null after the last page. Plain strings so it can be saved in a checkpoint.
+ */
+public record ScanResult(ArrayList<Item<?>> items, Map<String, String> next) {
+	/**
+	 * @param history true for a revision read from the history table rather than the current entity
+	 */
+	public record Item<T extends Table>(String organisationId, T entity, Consumer<T> replace, Consumer<T> delete, boolean history) {
+		public Item(String organisationId, T entity, Consumer<T> replace, Consumer<T> delete) {
+			this(organisationId, entity, replace, delete, false);
+		}
+	}
 }
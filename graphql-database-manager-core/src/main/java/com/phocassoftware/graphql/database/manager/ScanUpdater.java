@@ -36,5 +36,12 @@ public record ScanUpdater<T extends Table>(Class<?> type, BiConsumer<ScanContext
 		public void replace(T entity) {
 			item.replace().accept(entity);
 		}
+
+		/**
+		 * True when the entity is a revision from the history table, replace and delete then change that revision only
+		 */
+		public boolean isHistory() {
+			return item.history();
+		}
 	}
 }
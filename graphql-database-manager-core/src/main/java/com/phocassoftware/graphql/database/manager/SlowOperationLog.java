@@ -0,0 +1,138 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the most recent driver operations that took longer than a threshold, with their breakdown, in a bounded ring buffer.
+ * Register it as a {@link DatabaseListener}. Once more than {@code burst} slow operations arrive within a second only a sample of
+ * the rest are kept so a struggling table does not push everything else out of the buffer.
+ */
+public class SlowOperationLog implements DatabaseListener {
+
+	private static final int CAPACITY = 256;
+	private static final int BURST = 20;
+	private static final double SAMPLE_RATE = 0.1;
+
+	private final long thresholdMillis;
+	private final int burst;
+	private final double sampleRate;
+
+	private final OperationTrace[] buffer;
+	private int next;
+	private int size;
+
+	private long window;
+	private int inWindow;
+
+	private final AtomicLong slow = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	public SlowOperationLog(Duration threshold) {
+		this(threshold, CAPACITY, BURST, SAMPLE_RATE);
+	}
+
+	/**
+	 * @param capacity   operations kept before the oldest is overwritten
+	 * @param burst      slow operations per second that are all kept
+	 * @param sampleRate fraction kept of the slow operations beyond the burst
+	 */
+	public SlowOperationLog(Duration threshold, int capacity, int burst, double sampleRate) {
+		if (threshold.isNegative()) {
+			throw new IllegalArgumentException("threshold can not be negative");
+		}
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be at least 1");
+		}
+		if (burst < 0) {
+			throw new IllegalArgumentException("burst can not be negative");
+		}
+		if (sampleRate < 0 || sampleRate > 1) {
+			throw new IllegalArgumentException("sample rate must be between 0 and 1");
+		}
+		this.thresholdMillis = threshold.toMillis();
+		this.burst = burst;
+		this.sampleRate = sampleRate;
+		this.buffer = new OperationTrace[capacity];
+	}
+
+	@Override
+	public void operation(OperationTrace trace) {
+		if (trace.getElapsedMillis() < thresholdMillis) {
+			return;
+		}
+		slow.incrementAndGet();
+		synchronized (this) {
+			var second = System.nanoTime() / 1_000_000_000L;
+			if (second != window) {
+				window = second;
+				inWindow = 0;
+			}
+			if (inWindow >= burst && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+				dropped.incrementAndGet();
+				return;
+			}
+			inWindow++;
+			buffer[next] = trace;
+			next = (next + 1) % buffer.length;
+			size = Math.min(size + 1, buffer.length);
+		}
+	}
+
+	/**
+	 * Kept operations, newest first
+	 */
+	public synchronized List<OperationTrace> entries() {
+		var entries = new ArrayList<OperationTrace>(size);
+		for (int i = 1; i <= size; i++) {
+			entries.add(buffer[Math.floorMod(next - i, buffer.length)]);
+		}
+		return entries;
+	}
+
+	public List<OperationTrace> entries(Predicate<OperationTrace> filter) {
+		return entries().stream().filter(filter).toList();
+	}
+
+	public List<OperationTrace> slowest(int count) {
+		return entries().stream().sorted(Comparator.comparingLong(OperationTrace::getElapsedMillis).reversed()).limit(count).toList();
+	}
+
+	/**
+	 * Operations over the threshold since the log was created, including the ones not kept
+	 */
+	public long getSlowCount() {
+		return slow.get();
+	}
+
+	/**
+	 * Slow operations left out by sampling
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	public synchronized void clear() {
+		Arrays.fill(buffer, null);
+		next = 0;
+		size = 0;
+	}
+}
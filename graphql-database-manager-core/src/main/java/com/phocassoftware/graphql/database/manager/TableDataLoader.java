@@ -11,6 +11,8 @@
  */
 package com.phocassoftware.graphql.database.manager;
 
+import com.phocassoftware.graphql.database.manager.instrumentation.AccessScope;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
@@ -21,27 +23,61 @@ public class TableDataLoader<K> {
 
 	private final DataLoader<K, ?> loader;
 	private final Function<CompletableFuture<?>, CompletableFuture<?>> handleFuture;
+	private final AccessScope scope;
 
 	TableDataLoader(DataLoader<K, ?> loader, Function<CompletableFuture<?>, CompletableFuture<?>> handleFuture) {
+		this(loader, handleFuture, null);
+	}
+
+	private TableDataLoader(DataLoader<K, ?> loader, Function<CompletableFuture<?>, CompletableFuture<?>> handleFuture, AccessScope scope) {
 		this.loader = loader;
 		this.handleFuture = handleFuture;
+		this.scope = scope;
+	}
+
+	/**
+	 * The same loader with its loads attributed to the scope, for loads made after the resolver's thread has moved on
+	 */
+	TableDataLoader<K> scoped(AccessScope scope) {
+		if (scope == null) {
+			return this;
+		}
+		return new TableDataLoader<>(loader, handleFuture, scope);
 	}
 
 	public <T> CompletableFuture<T> load(K key) {
-		var future = loader.load(key);
+		var scope = scope(1);
+		var future = ((DataLoader<K, Object>) loader).load(key, scope);
 		return (CompletableFuture<T>) this.handleFuture.apply(future);
 	}
 
 	public <T> CompletableFuture<List<T>> loadMany(List<K> keys) {
+		var scope = scope(keys.size());
 		// annoying waste of memory/cpu to get around cast :(
-		var future = loader.loadMany(keys).thenApply(r -> r.stream().map(t -> (T) t).collect(Collectors.toList()));
+		var future = loader.loadMany(keys, Collections.nCopies(keys.size(), scope)).thenApply(r -> r.stream().map(t -> (T) t).collect(Collectors.toList()));
 		return (CompletableFuture<List<T>>) this.handleFuture.apply(future);
 	}
 
+	private AccessScope scope(int loads) {
+		var current = scope != null ? scope : AccessScope.current();
+		if (current != null && current.detector() != null) {
+			current.detector().load(current.path(), loads);
+		}
+		return current;
+	}
+
+	public boolean isLoaded(K key) {
+		return loader.getIfPresent(key).isPresent();
+	}
+
 	public void clear(K key) {
 		loader.clear(key);
 	}
 
+	public void prime(K key, Object value) {
+		((DataLoader<K, Object>) loader).prime(key, value);
+	}
+
 	public void clearAll() {
 		loader.clearAll();
 	}
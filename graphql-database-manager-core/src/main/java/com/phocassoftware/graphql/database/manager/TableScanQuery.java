@@ -11,9 +11,34 @@
  */
 package com.phocassoftware.graphql.database.manager;
 
+import java.time.Duration;
 import java.util.List;
 
-public record TableScanQuery(TableScanMonitor monitor, Integer parallelism, List<ScanUpdater<?>> updaters) {
+/**
+ * @param parallelism        segments each table is split into and scanned at once
+ * @param batchSize          items of a segment handed to updaters at once
+ * @param history            also scan the history table
+ * @param checkpoints        where segments save how far they got, null to not save
+ * @param checkpointId       the id checkpoints are saved under
+ * @param resume             continue each segment from the checkpoints already saved under the id
+ * @param checkpointInterval least time between the saves of a segment
+ * @param readCapacity       read units a second the scan may consume, infinite for no limit
+ * @param writeCapacity      write units a second the scan and its updaters may consume, infinite for no limit
+ */
+public record TableScanQuery(
+	TableScanMonitor monitor,
+	Integer parallelism,
+	List<ScanUpdater<?>> updaters,
+	Deadline deadline,
+	int batchSize,
+	boolean history,
+	ScanCheckpointStore checkpoints,
+	String checkpointId,
+	boolean resume,
+	Duration checkpointInterval,
+	double readCapacity,
+	double writeCapacity
+) {
 	interface TableScanMonitor {
 		public void onScanSegmentStart(int segment, int itemCount, Object from);
 
@@ -13,6 +13,7 @@ package com.phocassoftware.graphql.database.manager;
 
 import com.phocassoftware.graphql.database.manager.ScanUpdater.ScanContext;
 import com.phocassoftware.graphql.database.manager.TableScanQuery.TableScanMonitor;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.BiConsumer;
@@ -22,8 +23,20 @@ public class TableScanQueryBuilder {
 	private int parallelism = Runtime.getRuntime().availableProcessors() * 5;
 	private List<ScanUpdater<?>> updaters = new ArrayList<>();
 	private TableScanMonitor monitor;
+	private Deadline deadline = Deadline.NONE;
+	private int batchSize = 25;
+	private boolean history = false;
+	private ScanCheckpointStore checkpoints;
+	private String checkpointId;
+	private boolean resume = false;
+	private Duration checkpointInterval = Duration.ofSeconds(30);
+	private double readCapacity = Double.POSITIVE_INFINITY;
+	private double writeCapacity = Double.POSITIVE_INFINITY;
 
 	public TableScanQueryBuilder parallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be at least 1");
+		}
 		this.parallelism = parallelism;
 		return this;
 	}
@@ -38,7 +51,106 @@ public class TableScanQueryBuilder {
 		return this;
 	}
 
+	/**
+	 * Stops the scan and the updaters it runs once the deadline ends
+	 */
+	public TableScanQueryBuilder deadline(Deadline deadline) {
+		this.deadline = deadline;
+		return this;
+	}
+
+	/**
+	 * Items of a segment handed to updaters at once, the next page is fetched while they run
+	 */
+	public TableScanQueryBuilder batchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batch size must be at least 1");
+		}
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	/**
+	 * Also hands every revision in the history table to the updaters
+	 */
+	public TableScanQueryBuilder history(boolean history) {
+		this.history = history;
+		return this;
+	}
+
+	/**
+	 * Saves how far each segment got under the id, so the scan can be resumed with {@link #resumeFrom(String)}
+	 */
+	public TableScanQueryBuilder checkpoints(ScanCheckpointStore checkpoints, String checkpointId) {
+		this.checkpoints = checkpoints;
+		this.checkpointId = checkpointId;
+		return this;
+	}
+
+	/**
+	 * Continues every segment from its last checkpoint saved under the id, and keeps saving under it. The scan must have the same
+	 * parallelism. Items after the last checkpoint of a segment are handed to the updaters again, so updaters need to be idempotent.
+	 */
+	public TableScanQueryBuilder resumeFrom(String checkpointId) {
+		this.checkpointId = checkpointId;
+		this.resume = true;
+		return this;
+	}
+
+	/**
+	 * Least time between checkpoints of a segment, a segment also saves whenever it moves on to the next table
+	 */
+	public TableScanQueryBuilder checkpointInterval(Duration checkpointInterval) {
+		if (checkpointInterval.isNegative()) {
+			throw new IllegalArgumentException("checkpoint interval can not be negative");
+		}
+		this.checkpointInterval = checkpointInterval;
+		return this;
+	}
+
+	/**
+	 * Read units a second shared by all segments, pages wait once it is used up. Without it the scan reads as fast as the table
+	 * allows and only slows down once throttled.
+	 */
+	public TableScanQueryBuilder readCapacity(double unitsPerSecond) {
+		if (!(unitsPerSecond > 0)) {
+			throw new IllegalArgumentException("read capacity must be greater than 0");
+		}
+		this.readCapacity = unitsPerSecond;
+		return this;
+	}
+
+	/**
+	 * Write units a second shared by all segments, including the writes of updaters, batches wait once it is used up
+	 */
+	public TableScanQueryBuilder writeCapacity(double unitsPerSecond) {
+		if (!(unitsPerSecond > 0)) {
+			throw new IllegalArgumentException("write capacity must be greater than 0");
+		}
+		this.writeCapacity = unitsPerSecond;
+		return this;
+	}
+
 	public TableScanQuery build() {
-		return new TableScanQuery(monitor, parallelism, updaters);
+		if (resume && checkpoints == null) {
+			throw new IllegalArgumentException("resuming a scan needs a checkpoint store");
+		}
+		if (checkpoints != null && checkpointId == null) {
+			throw new IllegalArgumentException("checkpoints need an id to be saved under");
+		}
+		return new TableScanQuery(
+			monitor,
+			parallelism,
+			updaters,
+			deadline,
+			batchSize,
+			history,
+			checkpoints,
+			checkpointId,
+			resume,
+			checkpointInterval,
+			readCapacity,
+			writeCapacity
+		);
 	}
 }
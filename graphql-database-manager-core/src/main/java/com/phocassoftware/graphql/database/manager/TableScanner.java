@@ -14,28 +14,191 @@ package com.phocassoftware.graphql.database.manager;
 import com.phocassoftware.graphql.database.manager.ScanResult.Item;
 import com.phocassoftware.graphql.database.manager.ScanUpdater.ScanContext;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.function.Supplier;
 
+/**
+ * Scans every table the driver reports, each split into segments read at once. A segment fetches its next page while the updaters
+ * work through the current one, a batch at a time, so at most one page and one batch per segment are held. Nothing blocks while
+ * waiting on the store. With a checkpoint store each segment saves how far it got, see
+ * {@link TableScanQueryBuilder#resumeFrom(String)}. Reads and batches of updates wait on the shared {@link ScanRateLimiter}.
+ */
 public class TableScanner {
 
 	private final TableScanQuery query;
 	private final DatabaseDriver driver;
 	private final DatabaseManager databaseManager;
+	private final ScanRateLimiter limiter;
 
-	public TableScanner(TableScanQuery query, DatabaseDriver driver, DatabaseManager databaseManager) {
+	/**
+	 * @param limiter must also be listening to the driver so it is charged for the calls of the scan
+	 */
+	public TableScanner(TableScanQuery query, DatabaseDriver driver, DatabaseManager databaseManager, ScanRateLimiter limiter) {
 		this.query = query;
 		this.driver = driver;
 		this.databaseManager = databaseManager;
+		this.limiter = limiter;
+	}
+
+	public ScanRateLimiter getRateLimiter() {
+		return limiter;
 	}
 
 	public CompletableFuture<Void> start() {
-		var workers = new ArrayList<CompletableFuture<ScannerWorker>>();
-		for (int i = 0; i < query.parallelism(); i++) {
-			var segment = i;
-			workers.add(CompletableFuture.supplyAsync(new ScannerWorker(segment), Database.VIRTUAL_THREAD_POOL));
+		var tables = driver.scanTables(query);
+		CompletableFuture<Map<Integer, ScanCheckpoint>> checkpoints = query.resume()
+			? query.checkpoints().load(query.checkpointId())
+			: CompletableFuture.completedFuture(Map.of());
+		return checkpoints.thenCompose(saved -> {
+			var segments = new ArrayList<CompletableFuture<Void>>();
+			for (int i = 0; i < query.parallelism(); i++) {
+				segments.add(segment(tables, i, saved.get(i)));
+			}
+			return CompletableFuture.allOf(segments.toArray(CompletableFuture[]::new));
+		});
+	}
+
+	private CompletableFuture<Void> segment(List<String> tables, int segment, ScanCheckpoint checkpoint) {
+		var first = 0;
+		Map<String, String> from = null;
+		if (checkpoint != null) {
+			if (checkpoint.segments() != query.parallelism()) {
+				throw new IllegalStateException(
+					"checkpoint " + query.checkpointId() + " was taken with parallelism " + checkpoint.segments() + " not " + query.parallelism()
+				);
+			}
+			if (checkpoint.complete()) {
+				first = tables.size();
+			} else {
+				first = tables.indexOf(checkpoint.table());
+				if (first == -1) {
+					throw new IllegalStateException("checkpoint " + query.checkpointId() + " is in table " + checkpoint.table() + " which is not scanned");
+				}
+				from = checkpoint.position();
+			}
+		}
+
+		var state = new Segment(segment);
+		// a segment reads the tables one after another so the parallelism holds across tables
+		var done = CompletableFuture.<Void>completedFuture(null);
+		for (int i = first; i < tables.size(); i++) {
+			var table = tables.get(i);
+			var start = i == first ? from : null;
+			var following = i + 1 < tables.size()
+				? new ScanCheckpoint(query.parallelism(), tables.get(i + 1), null, false)
+				: ScanCheckpoint.complete(query.parallelism());
+			done = done.thenCompose(__ -> scan(state, table, start)).thenCompose(__ -> save(state, following));
 		}
-		return CompletableFuture.allOf(workers.toArray(CompletableFuture[]::new));
+		return done
+			.thenRun(() -> {
+				if (query.monitor() != null) {
+					query.monitor().onScanSegmentComplete(segment);
+				}
+			});
+	}
+
+	private CompletableFuture<Void> scan(Segment segment, String table, Map<String, String> from) {
+		var done = new CompletableFuture<Void>();
+		next(segment, table, fetch(table, segment.index, from), from, done);
+		return done;
+	}
+
+	// a throttled page is read again once the lowered budget allows rather than failing the segment
+	private CompletableFuture<ScanResult> fetch(String table, int segment, Map<String, String> from) {
+		return limiter
+			.acquireRead()
+			.thenCompose(reserved -> page(table, segment, from).whenComplete((result, failure) -> limiter.releaseRead(reserved)))
+			.exceptionallyCompose(failure -> {
+				if (limiter.isThrottling(failure)) {
+					limiter.throttled(false);
+					return fetch(table, segment, from);
+				}
+				return CompletableFuture.failedFuture(failure);
+			});
+	}
+
+	private CompletableFuture<ScanResult> page(String table, int segment, Map<String, String> from) {
+		try {
+			query.deadline().check();
+			return driver.scanPage(query, table, segment, from);
+		} catch (RuntimeException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	// loops through the pages without growing the stack or a chain of futures
+	private void next(
+		Segment segment,
+		String table,
+		CompletableFuture<ScanResult> fetching,
+		Map<String, String> from,
+		CompletableFuture<Void> done
+	) {
+		fetching
+			.thenCompose(page -> {
+				if (query.monitor() != null) {
+					query.monitor().onScanSegmentStart(segment.index, page.items().size(), from);
+				}
+				var following = page.next() == null ? null : fetch(table, segment.index, page.next());
+				return update(page.items(), 0)
+					.thenCompose(__ -> {
+						// only once every item of the page is updated, so a resumed scan never skips one
+						if (page.next() != null && segment.due()) {
+							return save(segment, new ScanCheckpoint(query.parallelism(), table, page.next(), false));
+						}
+						return CompletableFuture.completedFuture(null);
+					})
+					.thenApply(__ -> new Following(following, page.next()));
+			})
+			// segment workers only page and wait, their number is already capped by the parallelism
+			.whenCompleteAsync(
+				(following, failure) -> {
+					if (failure != null) {
+						done.completeExceptionally(failure);
+					} else if (following.fetching() == null) {
+						done.complete(null);
+					} else {
+						next(segment, table, following.fetching(), following.from(), done);
+					}
+				},
+				databaseManager.getExecutors().executor(DatabaseExecutors.Workload.SCAN)
+			);
+	}
+
+	private CompletableFuture<Void> save(Segment segment, ScanCheckpoint checkpoint) {
+		if (query.checkpoints() == null) {
+			return CompletableFuture.completedFuture(null);
+		}
+		segment.saved = System.nanoTime();
+		return query.checkpoints().save(query.checkpointId(), segment.index, checkpoint);
+	}
+
+	private final class Segment {
+
+		private final int index;
+		private long saved = System.nanoTime();
+
+		private Segment(int index) {
+			this.index = index;
+		}
+
+		private boolean due() {
+			return query.checkpoints() != null && System.nanoTime() - saved >= query.checkpointInterval().toNanos();
+		}
+	}
+
+	private record Following(CompletableFuture<ScanResult> fetching, Map<String, String> from) {}
+
+	private CompletableFuture<Void> update(List<Item<?>> items, int from) {
+		if (from >= items.size()) {
+			return CompletableFuture.completedFuture(null);
+		}
+		var to = Math.min(from + query.batchSize(), items.size());
+		return limiter
+			.acquireWrite()
+			.thenCompose(__ -> CompletableFuture.allOf(items.subList(from, to).stream().map(this::process).toArray(CompletableFuture[]::new)))
+			.thenCompose(__ -> update(items, to));
 	}
 
 	private <T extends Table> CompletableFuture<Void> process(Item<T> item) {
@@ -46,46 +209,13 @@ public class TableScanner {
 				return CompletableFuture
 					.runAsync(
 						() -> {
-							var virtualDatabase = databaseManager.getVirtualDatabase(item.organisationId());
+							var virtualDatabase = databaseManager.getVirtualDatabase(item.organisationId(), query.deadline(), limiter);
 							update.updater().accept(new ScanContext<T>(virtualDatabase, item), item.entity());
 						},
-						Database.VIRTUAL_THREAD_POOL
+						databaseManager.getExecutors().executor(DatabaseExecutors.Workload.SCAN)
 					);
 			}
 		}
 		return CompletableFuture.completedFuture(null);
 	}
-
-	private class ScannerWorker implements Supplier<ScannerWorker> {
-
-		private final int segment;
-
-		public ScannerWorker(int segment) {
-			this.segment = segment;
-		}
-
-		@Override
-		public ScannerWorker get() {
-			Object from = null;
-			do {
-				var scan = driver.startTableScan(query, segment, from);
-				if (query.monitor() != null) {
-					query.monitor().onScanSegmentStart(segment, scan.items().size(), from);
-				}
-				from = scan.next();
-
-				var workers = new ArrayList<CompletableFuture<Void>>();
-				for (var item : scan.items()) {
-					workers.add(process(item));
-				}
-
-				CompletableFuture.allOf(workers.toArray(CompletableFuture[]::new)).join();
-			} while (from != null);
-			if (query.monitor() != null) {
-				query.monitor().onScanSegmentComplete(segment);
-			}
-
-			return this;
-		}
-	}
 }
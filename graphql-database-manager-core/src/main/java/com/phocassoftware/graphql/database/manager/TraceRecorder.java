@@ -0,0 +1,219 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager;
+
+import com.phocassoftware.graphql.database.manager.instrumentation.AccessScope;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timeline of the work a {@link Database} did while recording: loader dispatches, driver operations with each store call, merge and
+ * conversion steps, retry sleeps and permission checks. Each event carries the GraphQL field path that caused it when the execution
+ * was instrumented with field paths, see {@code DatabaseInstrumentationBuilder.trace}. Export with {@link #toChromeTrace()} and open in {@code chrome://tracing} or Perfetto.
+ */
+public class TraceRecorder implements DatabaseListener {
+
+	private static final int MAX_EVENTS = 100_000;
+
+	/**
+	 * @param path  field path the event belongs to, null when it did not come from a resolver
+	 * @param args  details shown with the event
+	 */
+	public record Event(String name, String category, String path, long startNanos, long elapsedNanos, Map<String, Object> args) {}
+
+	private final Instant origin = Instant.now();
+	private final long originNanos = System.nanoTime();
+	private final int maxEvents;
+	private final Queue<Event> events = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicLong dropped = new AtomicLong();
+
+	public TraceRecorder() {
+		this(MAX_EVENTS);
+	}
+
+	/**
+	 * @param maxEvents events kept, later ones are counted as dropped
+	 */
+	public TraceRecorder(int maxEvents) {
+		if (maxEvents < 1) {
+			throw new IllegalArgumentException("max events must be at least 1");
+		}
+		this.maxEvents = maxEvents;
+	}
+
+	public void record(Event event) {
+		if (size.incrementAndGet() > maxEvents) {
+			size.decrementAndGet();
+			dropped.incrementAndGet();
+			return;
+		}
+		events.add(event);
+	}
+
+	/**
+	 * Records work that started at startNanos and has just finished
+	 */
+	public void record(String name, String category, String path, long startNanos, Map<String, Object> args) {
+		record(new Event(name, category, path, startNanos, System.nanoTime() - startNanos, args));
+	}
+
+	/**
+	 * The field being resolved on this thread, null outside of a resolver
+	 */
+	public static String currentPath() {
+		var scope = AccessScope.current();
+		return scope == null ? null : scope.path();
+	}
+
+	@Override
+	public void operation(OperationTrace trace) {
+		var scope = trace.getScope();
+		var path = scope == null ? null : scope.path();
+		var args = new LinkedHashMap<String, Object>();
+		args.put("organisationId", trace.getOrganisationId());
+		args.put("type", trace.getType());
+		args.put("retries", trace.getRetries());
+		if (trace.getFailure() != null) {
+			args.put("failure", String.valueOf(trace.getFailure()));
+		}
+		record(new Event(trace.getOperation(), "operation", path, trace.getStartNanos(), trace.getElapsedNanos(), args));
+		for (var call : trace.getCalls()) {
+			var callArgs = new LinkedHashMap<String, Object>();
+			callArgs.put("table", call.table());
+			callArgs.put("index", call.index());
+			callArgs.put("items", call.items());
+			callArgs.put("unprocessed", call.unprocessed());
+			callArgs.put("capacityUnits", call.capacityUnits());
+			record(new Event(call.operation(), "dynamodb", path, call.startNanos(), call.elapsedNanos(), callArgs));
+		}
+		for (var step : trace.getSteps()) {
+			record(new Event(step.name(), step.name(), path, step.startNanos(), step.elapsedNanos(), Map.of()));
+		}
+	}
+
+	/**
+	 * Events in start order
+	 */
+	public List<Event> events() {
+		var sorted = new ArrayList<>(events);
+		sorted.sort(Comparator.comparingLong(Event::startNanos));
+		return sorted;
+	}
+
+	public Instant getOrigin() {
+		return origin;
+	}
+
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * The events in the Chrome trace event format, one lane per field path
+	 */
+	public String toChromeTrace() {
+		var lanes = new LinkedHashMap<String, Integer>();
+		lanes.put("database", 1);
+		var out = new StringBuilder("{\"traceEvents\":[");
+		var first = true;
+		for (var event : events()) {
+			var lane = lanes.computeIfAbsent(event.path() == null ? "database" : event.path(), __ -> lanes.size() + 1);
+			first = separator(out, first);
+			out.append("{\"name\":");
+			string(out, event.name());
+			out.append(",\"cat\":");
+			string(out, event.category());
+			out.append(",\"ph\":\"X\",\"pid\":1,\"tid\":").append(lane);
+			out.append(",\"ts\":").append(micros(event.startNanos() - originNanos));
+			out.append(",\"dur\":").append(micros(event.elapsedNanos()));
+			out.append(",\"args\":{");
+			var firstArg = true;
+			for (var arg : event.args().entrySet()) {
+				if (arg.getValue() == null) {
+					continue;
+				}
+				firstArg = separator(out, firstArg);
+				string(out, arg.getKey());
+				out.append(':');
+				value(out, arg.getValue());
+			}
+			out.append("}}");
+		}
+		for (var lane : lanes.entrySet()) {
+			first = separator(out, first);
+			out.append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":").append(lane.getValue()).append(",\"args\":{\"name\":");
+			string(out, lane.getKey());
+			out.append("}}");
+		}
+		out.append("],\"displayTimeUnit\":\"ms\",\"otherData\":{\"origin\":");
+		string(out, origin.toString());
+		out.append(",\"dropped\":").append(dropped.get()).append("}}");
+		return out.toString();
+	}
+
+	public void writeChromeTrace(Path file) throws IOException {
+		Files.writeString(file, toChromeTrace());
+	}
+
+	private static boolean separator(StringBuilder out, boolean first) {
+		if (!first) {
+			out.append(',');
+		}
+		return false;
+	}
+
+	private static String micros(long nanos) {
+		return String.valueOf(nanos / 1000.0);
+	}
+
+	private static void value(StringBuilder out, Object value) {
+		if (value instanceof Number || value instanceof Boolean) {
+			out.append(value);
+		} else {
+			string(out, String.valueOf(value));
+		}
+	}
+
+	private static void string(StringBuilder out, String value) {
+		out.append('"');
+		for (var c : value.toCharArray()) {
+			switch (c) {
+				case '"' -> out.append("\\\"");
+				case '\\' -> out.append("\\\\");
+				case '\n' -> out.append("\\n");
+				case '\r' -> out.append("\\r");
+				case '\t' -> out.append("\\t");
+				default -> {
+					if (c < 0x20) {
+						out.append(String.format("\\u%04x", (int) c));
+					} else {
+						out.append(c);
+					}
+				}
+			}
+		}
+		out.append('"');
+	}
+}
@@ -15,9 +15,14 @@ package com.phocassoftware.graphql.database.manager;
 import com.phocassoftware.graphql.builder.annotations.Context;
 import com.phocassoftware.graphql.database.manager.util.BackupItem;
 import com.phocassoftware.graphql.database.manager.util.HistoryBackupItem;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Flow;
 import java.util.function.Function;
 
 @Context
@@ -41,6 +46,10 @@ public class VirtualDatabase {
 		return database.getLinks(entry, target).join();
 	}
 
+	public <T extends Table> List<T> getLinks(Table entry, Class<T> target, String after, int limit) {
+		return database.getLinks(entry, target, after, limit).join();
+	}
+
 	public Boolean destroyOrganisation(final String organisationId) {
 		return database.destroyOrganisation(organisationId).join();
 	}
@@ -81,6 +90,14 @@ public class VirtualDatabase {
 		return database.links(entity, class1, targetIds).join();
 	}
 
+	public <T extends Table> T migrateLinks(T entity, Class<? extends Table> type) {
+		return database.migrateLinks(entity, type).join();
+	}
+
+	public List<Table> bulkLinks(Map<? extends Table, ? extends Map<Class<? extends Table>, ? extends Collection<String>>> links) {
+		return database.bulkLinks(links).join();
+	}
+
 	public String newId() {
 		return database.newId();
 	}
@@ -93,6 +110,38 @@ public class VirtualDatabase {
 		return database.put(entity, check).join();
 	}
 
+	public <T extends Table> ImportResult importStream(Iterator<T> entities) {
+		return database.importStream(entities).join();
+	}
+
+	public <T extends Table> ImportResult importStream(Iterator<T> entities, Function<ImportQueryBuilder, ImportQueryBuilder> builder) {
+		return database.importStream(entities, builder).join();
+	}
+
+	public <T extends Table> ImportResult importStream(Flow.Publisher<T> entities) {
+		return database.importStream(entities).join();
+	}
+
+	public <T extends Table> ImportResult importStream(Flow.Publisher<T> entities, Function<ImportQueryBuilder, ImportQueryBuilder> builder) {
+		return database.importStream(entities, builder).join();
+	}
+
+	public <T extends Table> T update(Class<T> type, String id, Function<T, T> mutator) {
+		return database.update(type, id, mutator).join();
+	}
+
+	public <T extends Table> T increment(Class<T> type, String id, String field, long delta) {
+		return database.increment(type, id, field, delta).join();
+	}
+
+	public <T extends Table> Void incrementSharded(Class<T> type, String id, String field, long delta, int shards) {
+		return database.incrementSharded(type, id, field, delta, shards).join();
+	}
+
+	public <T extends Table> Long getShardedCounter(Class<T> type, String id, String field) {
+		return database.getShardedCounter(type, id, field).join();
+	}
+
 	public <T extends Table> T putGlobal(T entity) {
 		return database.putGlobal(entity).join();
 	}
@@ -113,10 +162,34 @@ public class VirtualDatabase {
 		return database.queryGlobal(type, id).join();
 	}
 
+	public <T extends Table> List<T> queryGlobal(Class<T> type, String indexName, String value) {
+		return database.queryGlobal(type, indexName, value).join();
+	}
+
 	public <T extends Table> T queryGlobalUnique(Class<T> type, String id) {
 		return database.queryGlobalUnique(type, id).join();
 	}
 
+	public <T extends Table> QueryPlan explain(Query<T> query) {
+		return database.explain(query);
+	}
+
+	public <T extends Table> QueryPlan explain(Class<T> type, Function<QueryBuilder<T>, QueryBuilder<T>> func) {
+		return database.explain(type, func);
+	}
+
+	public <T extends Table> QueryPlan analyze(Query<T> query) {
+		return database.analyze(query).join();
+	}
+
+	public <T extends Table> QueryPlan explainGet(Class<T> type, Collection<String> ids) {
+		return database.explainGet(type, ids);
+	}
+
+	public QueryPlan explainGetLinks(Table entry, Class<? extends Table> type) {
+		return database.explainGetLinks(entry, type).join();
+	}
+
 	public <T extends Table> List<T> queryHistory(QueryHistory<T> query) {
 		return database.queryHistory(query).join();
 	}
@@ -125,6 +198,26 @@ public class VirtualDatabase {
 		return database.querySecondary(type, id).join();
 	}
 
+	public <T extends Table> List<T> querySecondary(Class<T> type, String id, boolean consistentRead) {
+		return database.querySecondary(type, id, consistentRead).join();
+	}
+
+	public <T extends Table> List<T> querySecondary(Class<T> type, String indexName, String value) {
+		return database.querySecondary(type, indexName, value).join();
+	}
+
+	public <T extends Table> List<T> querySecondary(Class<T> type, String indexName, KeyRange range) {
+		return database.querySecondary(type, indexName, range).join();
+	}
+
+	public <T extends Table> Changes<T> changedSince(Class<T> type, Instant since, String cursor) {
+		return database.changedSince(type, since, cursor).join();
+	}
+
+	public <T extends Table> Changes<T> changedSince(Class<T> type, Instant since, String cursor, int limit) {
+		return database.changedSince(type, since, cursor, limit).join();
+	}
+
 	public <T extends Table> T querySecondaryUnique(Class<T> type, String id) {
 		return database.querySecondaryUnique(type, id).join();
 	}
@@ -168,4 +261,24 @@ public class VirtualDatabase {
 	public String getOrganisationId() {
 		return database.getOrganisationId();
 	}
+
+	public CapacityUsage getConsumedCapacity() {
+		return database.getConsumedCapacity();
+	}
+
+	public Deadline getDeadline() {
+		return database.getDeadline();
+	}
+
+	public TraceRecorder startTrace() {
+		return database.startTrace();
+	}
+
+	public TraceRecorder stopTrace() {
+		return database.stopTrace();
+	}
+
+	public TraceRecorder getTraceRecorder() {
+		return database.getTraceRecorder();
+	}
 }
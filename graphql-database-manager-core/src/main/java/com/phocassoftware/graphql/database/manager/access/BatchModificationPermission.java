@@ -0,0 +1,35 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager.access;
+
+import com.phocassoftware.graphql.database.manager.Table;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A permission that is cheaper to check for many entities at once, for example when it has to read the database. Bulk puts and
+ * imports check each batch with a single call instead of once per entity.
+ */
+@FunctionalInterface
+public interface BatchModificationPermission extends ModificationPermission {
+	/**
+	 * @return whether each entity may be modified, one result per entity in the order given
+	 */
+	@Override
+	CompletableFuture<List<Boolean>> applyAll(List<? extends Table> entities);
+
+	@Override
+	default CompletableFuture<Boolean> apply(Table entity) {
+		return applyAll(List.of(entity)).thenApply(List::getFirst);
+	}
+}
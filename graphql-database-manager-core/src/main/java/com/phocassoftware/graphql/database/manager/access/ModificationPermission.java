@@ -13,7 +13,18 @@
 package com.phocassoftware.graphql.database.manager.access;
 
 import com.phocassoftware.graphql.database.manager.Table;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 
-public interface ModificationPermission extends Function<Table, CompletableFuture<Boolean>> {}
+public interface ModificationPermission extends Function<Table, CompletableFuture<Boolean>> {
+	/**
+	 * Checks each entity on its own, implement {@link BatchModificationPermission} to check them together
+	 *
+	 * @return whether each entity may be modified, in the order given
+	 */
+	default CompletableFuture<List<Boolean>> applyAll(List<? extends Table> entities) {
+		var allowed = entities.stream().map(this::apply).toList();
+		return CompletableFuture.allOf(allowed.toArray(CompletableFuture[]::new)).thenApply(__ -> allowed.stream().map(CompletableFuture::join).toList());
+	}
+}
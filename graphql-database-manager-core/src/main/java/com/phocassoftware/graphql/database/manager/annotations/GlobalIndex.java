@@ -18,6 +18,12 @@ import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
 
+/**
+ * Indexes the getter value across every organisation. Without a name it uses the single secondaryGlobal index, named indexes are
+ * separate indexes so a table can have more than one.
+ */
 @Retention(RUNTIME)
 @Target(ElementType.METHOD)
-public @interface GlobalIndex {}
+public @interface GlobalIndex {
+	String name() default "";
+}
@@ -18,6 +18,12 @@ import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
 
+/**
+ * Indexes the getter value within the organisation. Without a name it uses the single secondaryOrganisation index, named indexes
+ * are separate indexes so a table can have more than one.
+ */
 @Retention(RUNTIME)
 @Target(ElementType.METHOD)
-public @interface SecondaryIndex {}
+public @interface SecondaryIndex {
+	String name() default "";
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager.instrumentation;
+
+import com.phocassoftware.graphql.database.manager.DatabaseListener;
+import com.phocassoftware.graphql.database.manager.OperationTrace;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts, per field path of one execution, the resolves and the database work they caused. A field is flagged when it was resolved
+ * for at least {@code minimumParents} parents and needed a round trip to the store for each of them, the calls then grow with the
+ * size of the parent list instead of being batched.
+ */
+public class AccessPatternDetector {
+
+	/**
+	 * Routes completed driver operations to the detector of the field that started them
+	 */
+	public static final DatabaseListener OPERATIONS = new DatabaseListener() {
+		@Override
+		public void operation(OperationTrace trace) {
+			var scope = trace.getScope();
+			if (scope != null && scope.detector() != null) {
+				scope.detector().operation(scope, trace);
+			}
+		}
+	};
+
+	private static class Counters {
+
+		private final AtomicInteger resolves = new AtomicInteger();
+		private final AtomicInteger loads = new AtomicInteger();
+		private final AtomicInteger dispatches = new AtomicInteger();
+		private final AtomicInteger batchKeys = new AtomicInteger();
+		private final AtomicInteger operations = new AtomicInteger();
+		private final AtomicInteger calls = new AtomicInteger();
+	}
+
+	private final int minimumParents;
+	private final Map<String, Counters> fields = new ConcurrentHashMap<>();
+
+	public AccessPatternDetector(int minimumParents) {
+		if (minimumParents < 2) {
+			throw new IllegalArgumentException("minimum parents must be at least 2");
+		}
+		this.minimumParents = minimumParents;
+	}
+
+	public void resolve(String path) {
+		counters(path).resolves.incrementAndGet();
+	}
+
+	public void load(String path, int count) {
+		counters(path).loads.addAndGet(count);
+	}
+
+	public void dispatch(String path, int keys) {
+		var counters = counters(path);
+		counters.dispatches.incrementAndGet();
+		counters.batchKeys.addAndGet(keys);
+	}
+
+	public void operation(AccessScope scope, OperationTrace trace) {
+		var counters = counters(scope.path());
+		if (!scope.dispatch()) {
+			counters.operations.incrementAndGet();
+		}
+		counters.calls.addAndGet(trace.getCalls().size());
+	}
+
+	/**
+	 * Fields that touched the database, flagged ones first
+	 */
+	public List<FieldAccess> fields() {
+		return fields
+			.entrySet()
+			.stream()
+			.filter(entry -> entry.getValue().loads.get() > 0 || entry.getValue().dispatches.get() > 0 || entry.getValue().operations.get() > 0)
+			.map(entry -> {
+				var counters = entry.getValue();
+				var resolves = counters.resolves.get();
+				var roundTrips = counters.dispatches.get() + counters.operations.get();
+				return new FieldAccess(
+					entry.getKey(),
+					resolves,
+					counters.loads.get(),
+					counters.dispatches.get(),
+					counters.batchKeys.get(),
+					counters.operations.get(),
+					counters.calls.get(),
+					resolves >= minimumParents && roundTrips >= resolves
+				);
+			})
+			.sorted(Comparator.comparing(FieldAccess::flagged).reversed().thenComparing(FieldAccess::path))
+			.toList();
+	}
+
+	public List<FieldAccess> flagged() {
+		return fields().stream().filter(FieldAccess::flagged).toList();
+	}
+
+	private Counters counters(String path) {
+		return fields.computeIfAbsent(path, __ -> new Counters());
+	}
+}
@@ -0,0 +1,26 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager.instrumentation;
+
+import java.util.List;
+
+/**
+ * Told about the fields of an execution that needed a round trip to the store for every parent
+ */
+@FunctionalInterface
+public interface AccessPatternListener {
+	/**
+	 * @param operation name of the executed operation, null when the document has a single unnamed one
+	 */
+	void flagged(String operation, List<FieldAccess> fields);
+}
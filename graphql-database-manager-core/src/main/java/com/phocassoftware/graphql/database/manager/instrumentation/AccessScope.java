@@ -0,0 +1,81 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager.instrumentation;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * The field a resolver is running for, so the database work it starts can be attributed to that field. Held per thread and carried
+ * onto the virtual threads resolvers are moved to.
+ *
+ * @param detector null when the field is only tracked for traces
+ * @param path     field path without list indices such as {@code orders/customer}
+ * @param dispatch set while a loader batch holding only this field's keys is sent
+ */
+public record AccessScope(AccessPatternDetector detector, String path, boolean dispatch) {
+	private static final ThreadLocal<AccessScope> CURRENT = new ThreadLocal<>();
+
+	public static AccessScope current() {
+		return CURRENT.get();
+	}
+
+	public static <T> T run(AccessScope scope, Callable<T> callable) throws Exception {
+		if (scope == null && CURRENT.get() == null) {
+			return callable.call();
+		}
+		var previous = CURRENT.get();
+		CURRENT.set(scope);
+		try {
+			return callable.call();
+		} finally {
+			if (previous == null) {
+				CURRENT.remove();
+			} else {
+				CURRENT.set(previous);
+			}
+		}
+	}
+
+	/**
+	 * Records a loader batch against the fields whose keys are in it and sends it. The batch runs in the scope of its field when only
+	 * one field contributed so the store calls are attributed too.
+	 *
+	 * @param contexts the scope each key was loaded in, null for keys loaded outside a resolver
+	 */
+	public static <T> T dispatch(List<Object> contexts, Supplier<T> send) {
+		var fields = new LinkedHashMap<AccessScope, Integer>();
+		for (var context : contexts) {
+			if (context instanceof AccessScope scope && scope.detector() != null) {
+				fields.merge(new AccessScope(scope.detector(), scope.path(), false), 1, Integer::sum);
+			}
+		}
+		if (fields.isEmpty()) {
+			return send.get();
+		}
+		fields.forEach((scope, keys) -> scope.detector().dispatch(scope.path(), keys));
+		if (fields.size() == 1 && fields.values().iterator().next() == contexts.size()) {
+			var scope = fields.keySet().iterator().next();
+			try {
+				return run(new AccessScope(scope.detector(), scope.path(), true), send::get);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+		return send.get();
+	}
+}
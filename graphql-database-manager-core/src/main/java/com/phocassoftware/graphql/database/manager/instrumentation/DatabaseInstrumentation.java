@@ -0,0 +1,261 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager.instrumentation;
+
+import com.phocassoftware.graphql.database.manager.CapacityUsage;
+import com.phocassoftware.graphql.database.manager.Database;
+import com.phocassoftware.graphql.database.manager.TraceRecorder;
+import com.phocassoftware.graphql.database.manager.VirtualDatabase;
+import graphql.ExecutionResult;
+import graphql.GraphQLContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimplePerformantInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationCreateStateParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationExecutionParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationFieldFetchParameters;
+import graphql.schema.DataFetcher;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * Adds what the databases used by an operation cost to the {@code extensions} of the result. The databases are found in the
+ * {@link graphql.GraphQLContext} or the local context of the execution input.
+ * <p>
+ * Built with {@link #builder()} it can also detect fields whose database round trips grow with the number of parents. Those fields
+ * are reported under {@code accessPatterns} and to an {@link AccessPatternListener}. With {@code trace} turned on the database work
+ * is tagged with the field that caused it and resolvers are added to the timeline of any database that is recording a trace.
+ */
+public class DatabaseInstrumentation extends SimplePerformantInstrumentation {
+
+	public static final String CONSUMED_CAPACITY = "consumedCapacity";
+	public static final String ACCESS_PATTERNS = "accessPatterns";
+
+	private static final int MINIMUM_PARENTS = 3;
+
+	private final boolean consumedCapacity;
+	private final boolean accessPatterns;
+	private final int minimumParents;
+	private final AccessPatternListener accessPatternListener;
+	private final boolean trace;
+
+	public DatabaseInstrumentation() {
+		this(true, false, MINIMUM_PARENTS, null, false);
+	}
+
+	private DatabaseInstrumentation(
+		boolean consumedCapacity,
+		boolean accessPatterns,
+		int minimumParents,
+		AccessPatternListener accessPatternListener,
+		boolean trace
+	) {
+		this.consumedCapacity = consumedCapacity;
+		this.accessPatterns = accessPatterns;
+		this.minimumParents = minimumParents;
+		this.accessPatternListener = accessPatternListener;
+		this.trace = trace;
+	}
+
+	public static DatabaseInstrumentationBuilder builder() {
+		return new DatabaseInstrumentationBuilder();
+	}
+
+	private static class ExecutionState implements InstrumentationState {
+
+		private final AccessPatternDetector detector;
+		private final List<Object> databases;
+
+		ExecutionState(AccessPatternDetector detector, List<Object> databases) {
+			this.detector = detector;
+			this.databases = databases;
+		}
+
+		private List<TraceRecorder> recorders() {
+			return databases
+				.stream()
+				.map(value -> value instanceof Database database ? database.getTraceRecorder() : ((VirtualDatabase) value).getTraceRecorder())
+				.filter(Objects::nonNull)
+				.distinct()
+				.toList();
+		}
+	}
+
+	@Override
+	public InstrumentationState createState(InstrumentationCreateStateParameters parameters) {
+		var input = parameters.getExecutionInput();
+		var databases = trace
+			? values(input.getGraphQLContext(), input.getLocalContext())
+				.filter(value -> value instanceof Database || value instanceof VirtualDatabase)
+				.toList()
+			: List.of();
+		return new ExecutionState(accessPatterns ? new AccessPatternDetector(minimumParents) : null, databases);
+	}
+
+	@Override
+	public CompletableFuture<InstrumentationState> createStateAsync(InstrumentationCreateStateParameters parameters) {
+		return CompletableFuture.completedFuture(createState(parameters));
+	}
+
+	@Override
+	public DataFetcher<?> instrumentDataFetcher(DataFetcher<?> dataFetcher, InstrumentationFieldFetchParameters parameters, InstrumentationState state) {
+		if (!(state instanceof ExecutionState execution) || (execution.detector == null && !trace) || parameters.isTrivialDataFetcher()) {
+			return dataFetcher;
+		}
+		var detector = execution.detector;
+		return env -> {
+			var path = String.join("/", env.getExecutionStepInfo().getPath().getKeysOnly());
+			if (detector != null) {
+				detector.resolve(path);
+			}
+			var recorders = execution.recorders();
+			if (recorders.isEmpty()) {
+				return AccessScope.run(new AccessScope(detector, path, false), () -> dataFetcher.get(env));
+			}
+			var start = System.nanoTime();
+			Object result = AccessScope.run(new AccessScope(detector, path, false), () -> dataFetcher.get(env));
+			if (result instanceof CompletableFuture<?> future) {
+				return future.whenComplete((value, failure) -> resolved(recorders, path, start));
+			}
+			resolved(recorders, path, start);
+			return result;
+		};
+	}
+
+	private static void resolved(List<TraceRecorder> recorders, String path, long start) {
+		var field = path.substring(path.lastIndexOf('/') + 1);
+		recorders.forEach(recorder -> recorder.record("resolve " + field, "resolve", path, start, Map.of()));
+	}
+
+	@Override
+	public CompletableFuture<ExecutionResult> instrumentExecutionResult(
+		ExecutionResult executionResult,
+		InstrumentationExecutionParameters parameters,
+		InstrumentationState state
+	) {
+		Map<String, Object> extensions = new LinkedHashMap<>();
+		if (consumedCapacity) {
+			var usage = new CapacityUsage();
+			databases(parameters).forEach(database -> database.entries().forEach(usage::consumedCapacity));
+			if (!usage.isEmpty()) {
+				extensions.put(CONSUMED_CAPACITY, usage.toMap());
+			}
+		}
+		if (state instanceof ExecutionState execution && execution.detector != null) {
+			var fields = execution.detector.fields();
+			if (!fields.isEmpty()) {
+				extensions.put(ACCESS_PATTERNS, fields.stream().map(DatabaseInstrumentation::toMap).toList());
+			}
+			var flagged = fields.stream().filter(FieldAccess::flagged).toList();
+			if (!flagged.isEmpty() && accessPatternListener != null) {
+				accessPatternListener.flagged(parameters.getOperation(), flagged);
+			}
+		}
+		if (extensions.isEmpty()) {
+			return CompletableFuture.completedFuture(executionResult);
+		}
+		return CompletableFuture.completedFuture(executionResult.transform(builder -> extensions.forEach(builder::addExtension)));
+	}
+
+	private static Map<String, Object> toMap(FieldAccess field) {
+		var map = new LinkedHashMap<String, Object>();
+		map.put("path", field.path());
+		map.put("resolves", field.resolves());
+		map.put("loads", field.loads());
+		map.put("dispatches", field.dispatches());
+		map.put("averageBatchSize", field.averageBatchSize());
+		map.put("operations", field.operations());
+		map.put("calls", field.calls());
+		map.put("flagged", field.flagged());
+		return map;
+	}
+
+	// databases derived with withOrganisationId share their totals so each is only counted once
+	private static Stream<CapacityUsage> databases(InstrumentationExecutionParameters parameters) {
+		Set<CapacityUsage> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+		var input = parameters.getExecutionInput();
+		return values(parameters.getGraphQLContext(), input.getLocalContext())
+			.map(value -> {
+				if (value instanceof Database database) {
+					return database.getConsumedCapacity();
+				}
+				if (value instanceof VirtualDatabase database) {
+					return database.getConsumedCapacity();
+				}
+				return null;
+			})
+			.filter(Objects::nonNull)
+			.filter(seen::add);
+	}
+
+	private static Stream<Object> values(GraphQLContext graphQLContext, Object localContext) {
+		return Stream.concat(graphQLContext.stream().map(Map.Entry::getValue), Stream.of(localContext)).filter(Objects::nonNull);
+	}
+
+	public static class DatabaseInstrumentationBuilder {
+
+		private boolean consumedCapacity = true;
+		private boolean accessPatterns = false;
+		private int minimumParents = MINIMUM_PARENTS;
+		private AccessPatternListener accessPatternListener;
+		private boolean trace = false;
+
+		public DatabaseInstrumentationBuilder consumedCapacity(boolean consumedCapacity) {
+			this.consumedCapacity = consumedCapacity;
+			return this;
+		}
+
+		public DatabaseInstrumentationBuilder accessPatterns(boolean accessPatterns) {
+			this.accessPatterns = accessPatterns;
+			return this;
+		}
+
+		/**
+		 * Parents a field must be resolved for before it can be flagged
+		 */
+		public DatabaseInstrumentationBuilder minimumParents(int minimumParents) {
+			if (minimumParents < 2) {
+				throw new IllegalArgumentException("minimum parents must be at least 2");
+			}
+			this.minimumParents = minimumParents;
+			return this;
+		}
+
+		/**
+		 * Turns on access pattern detection and reports flagged fields to the listener
+		 */
+		public DatabaseInstrumentationBuilder accessPatternListener(AccessPatternListener accessPatternListener) {
+			this.accessPatterns = true;
+			this.accessPatternListener = accessPatternListener;
+			return this;
+		}
+
+		/**
+		 * Tags database work with the field that caused it and records resolvers into databases that are recording a trace
+		 */
+		public DatabaseInstrumentationBuilder trace(boolean trace) {
+			this.trace = trace;
+			return this;
+		}
+
+		public DatabaseInstrumentation build() {
+			return new DatabaseInstrumentation(consumedCapacity, accessPatterns, minimumParents, accessPatternListener, trace);
+		}
+	}
+}
@@ -0,0 +1,37 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager.instrumentation;
+
+/**
+ * The database work one field path caused during an execution
+ *
+ * @param resolves    times the field was resolved, one per parent
+ * @param loads       keys and queries the resolvers asked the database for, including ones already cached
+ * @param dispatches  loader batches that carried this field's keys
+ * @param batchKeys   keys this field put into those batches
+ * @param operations  driver operations started directly by the resolvers rather than through a loader batch
+ * @param calls       store calls attributed to the field
+ * @param flagged     the round trips grew with the number of parents, an N+1 pattern
+ */
+public record FieldAccess(String path, int resolves, int loads, int dispatches, int batchKeys, int operations, int calls, boolean flagged) {
+	/**
+	 * Loader batches and direct operations, each one waits on the store
+	 */
+	public int roundTrips() {
+		return dispatches + operations;
+	}
+
+	public double averageBatchSize() {
+		return dispatches == 0 ? 0 : (double) batchKeys / dispatches;
+	}
+}
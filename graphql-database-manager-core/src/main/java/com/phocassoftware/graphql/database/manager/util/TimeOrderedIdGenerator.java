@@ -0,0 +1,166 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager.util;
+
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Ids that sort by creation time, in the ULID layout: 10 characters of millisecond timestamp followed by 16 random characters, both
+ * Crockford base32 so string order is time order. Ids made by one thread in the same millisecond count up from the last, so a thread
+ * never sees its ids go backwards. Each thread keeps its own state so nothing is locked.
+ * <p>
+ * Writes of new ids all land at the end of the key range. With more than one shard each id starts with a shard so writes are spread
+ * over that many ranges; ids then sort by time within a shard, and recent data is read with one range per shard.
+ */
+public class TimeOrderedIdGenerator implements Supplier<String> {
+
+	private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+	private static final int TIME_LENGTH = 10;
+	private static final int RANDOM_LENGTH = 16;
+	private static final int MAX_SHARDS = 1024;
+
+	private static final class State {
+
+		private long millis = -1;
+		private int high; // top 16 of the 80 random bits
+		private long low;
+	}
+
+	private final int shards;
+	private final int shardLength;
+	private final ThreadLocal<State> state = ThreadLocal.withInitial(State::new);
+
+	public TimeOrderedIdGenerator() {
+		this(1);
+	}
+
+	/**
+	 * @param shards number of key ranges new ids are spread over, 1 for no shard prefix
+	 */
+	public TimeOrderedIdGenerator(int shards) {
+		if (shards < 1 || shards > MAX_SHARDS) {
+			throw new IllegalArgumentException("shards must be between 1 and " + MAX_SHARDS);
+		}
+		this.shards = shards;
+		this.shardLength = shards == 1 ? 0 : shards <= ALPHABET.length ? 1 : 2;
+	}
+
+	@Override
+	public String get() {
+		var current = state.get();
+		var now = Math.max(System.currentTimeMillis(), current.millis);
+		if (now == current.millis) {
+			current.low++;
+			if (current.low == 0) {
+				current.high = (current.high + 1) & 0xFFFF;
+				if (current.high == 0) {
+					// used up the millisecond, borrow the next one
+					now++;
+					reseed(current);
+				}
+			}
+		} else {
+			reseed(current);
+		}
+		current.millis = now;
+
+		var id = new char[shardLength + TIME_LENGTH + RANDOM_LENGTH];
+		if (shardLength > 0) {
+			encode(ThreadLocalRandom.current().nextInt(shards), id, 0, shardLength);
+		}
+		encode(now, id, shardLength, TIME_LENGTH);
+		for (int i = 0; i < RANDOM_LENGTH; i++) {
+			var shift = 75 - 5 * i;
+			long bits;
+			if (shift >= 64) {
+				bits = current.high >>> (shift - 64);
+			} else {
+				bits = current.low >>> shift;
+				if (shift > 59) {
+					bits |= (long) current.high << (64 - shift);
+				}
+			}
+			id[shardLength + TIME_LENGTH + i] = ALPHABET[(int) (bits & 31)];
+		}
+		return new String(id);
+	}
+
+	// the top random bit starts clear so a millisecond has room to count up before borrowing the next
+	private void reseed(State current) {
+		var random = ThreadLocalRandom.current();
+		current.high = random.nextInt() & 0x7FFF;
+		current.low = random.nextLong();
+	}
+
+	public int getShards() {
+		return shards;
+	}
+
+	/**
+	 * The lowest id of the shard that could be made at time, for reading everything created since with an after or range query
+	 */
+	public String idAt(int shard, Instant time) {
+		if (shard < 0 || shard >= shards) {
+			throw new IllegalArgumentException("shard must be between 0 and " + (shards - 1));
+		}
+		var id = new char[shardLength + TIME_LENGTH + RANDOM_LENGTH];
+		if (shardLength > 0) {
+			encode(shard, id, 0, shardLength);
+		}
+		encode(time.toEpochMilli(), id, shardLength, TIME_LENGTH);
+		for (int i = shardLength + TIME_LENGTH; i < id.length; i++) {
+			id[i] = ALPHABET[0];
+		}
+		return new String(id);
+	}
+
+	public String idAt(Instant time) {
+		return idAt(0, time);
+	}
+
+	/**
+	 * When an id made by this generator was created
+	 */
+	public Instant timeOf(String id) {
+		if (id.length() != shardLength + TIME_LENGTH + RANDOM_LENGTH) {
+			throw new IllegalArgumentException("not a time ordered id " + id);
+		}
+		long millis = 0;
+		for (int i = shardLength; i < shardLength + TIME_LENGTH; i++) {
+			var value = decode(id.charAt(i));
+			if (value < 0) {
+				throw new IllegalArgumentException("not a time ordered id " + id);
+			}
+			millis = (millis << 5) | value;
+		}
+		return Instant.ofEpochMilli(millis);
+	}
+
+	private static void encode(long value, char[] into, int offset, int length) {
+		for (int i = offset + length - 1; i >= offset; i--) {
+			into[i] = ALPHABET[(int) (value & 31)];
+			value >>>= 5;
+		}
+	}
+
+	private static int decode(char c) {
+		for (int i = 0; i < ALPHABET.length; i++) {
+			if (ALPHABET[i] == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -14,26 +14,43 @@ package com.phocassoftware.graphql.database.manager.virtual;
 
 import com.phocassoftware.graphql.builder.DataFetcherRunner;
 import com.phocassoftware.graphql.builder.annotations.Context;
-import com.phocassoftware.graphql.database.manager.Database;
+import com.phocassoftware.graphql.database.manager.DatabaseExecutors;
 import com.phocassoftware.graphql.database.manager.VirtualDatabase;
+import com.phocassoftware.graphql.database.manager.instrumentation.AccessScope;
 import graphql.schema.DataFetcher;
 import java.lang.reflect.Method;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 
 public class VirtualDataRunner implements DataFetcherRunner {
 
+	private final Executor executor;
+
+	public VirtualDataRunner() {
+		this(DatabaseExecutors.VIRTUAL);
+	}
+
+	/**
+	 * @param executors resolvers run on the {@link DatabaseExecutors.Workload#FETCH} executor
+	 */
+	public VirtualDataRunner(DatabaseExecutors executors) {
+		this.executor = executors.executor(DatabaseExecutors.Workload.FETCH);
+	}
+
 	@Override
 	public DataFetcher<?> manage(Method method, DataFetcher<?> fetcher) {
 		for (var parameter : method.getParameterTypes()) {
 			if (parameter.isAssignableFrom(VirtualDatabase.class) || hasContext(parameter)) {
 				var isCompletableFuture = CompletionStage.class.isAssignableFrom(method.getReturnType());
 				return env -> {
+					// the field being resolved moves onto the virtual thread with the resolver
+					var scope = AccessScope.current();
 					var result = CompletableFuture
 						.supplyAsync(
 							() -> {
 								try {
-									return fetcher.get(env);
+									return AccessScope.run(scope, () -> fetcher.get(env));
 								} catch (Exception e) {
 									if (e instanceof RuntimeException runtime) {
 										throw runtime;
@@ -41,7 +58,7 @@ public class VirtualDataRunner implements DataFetcherRunner {
 									throw new RuntimeException(e);
 								}
 							},
-							Database.VIRTUAL_THREAD_POOL
+							executor
 						);
 
 					if (isCompletableFuture) {
@@ -0,0 +1,104 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.phocassoftware.graphql.database.manager.BoundedExecutor.RejectionPolicy;
+import com.phocassoftware.graphql.database.manager.DatabaseExecutors.Workload;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class BoundedExecutorTest {
+
+	@Test
+	public void testConcurrencyCap() throws InterruptedException {
+		var executor = new BoundedExecutor("scan", 2, 10, RejectionPolicy.ABORT);
+		var release = new CountDownLatch(1);
+		var running = new AtomicInteger();
+		var highest = new AtomicInteger();
+		var tasks = new ArrayList<CompletableFuture<Void>>();
+		for (int i = 0; i < 6; i++) {
+			tasks
+				.add(
+					CompletableFuture
+						.runAsync(
+							() -> {
+								highest.accumulateAndGet(running.incrementAndGet(), Math::max);
+								try {
+									release.await();
+								} catch (InterruptedException e) {
+									throw new RuntimeException(e);
+								}
+								running.decrementAndGet();
+							},
+							executor
+						)
+				);
+		}
+		while (executor.getActive() + executor.getQueued() < 6) {
+			Thread.sleep(1);
+		}
+		assertEquals(2, executor.getActive());
+		assertEquals(4, executor.getQueued());
+
+		release.countDown();
+		tasks.forEach(CompletableFuture::join);
+		assertEquals(2, highest.get());
+		assertEquals(6, executor.getCompletedCount());
+		assertEquals(0, executor.getQueued());
+	}
+
+	@Test
+	public void testRejection() {
+		var release = new CountDownLatch(1);
+		Runnable blocked = () -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		};
+
+		var abort = new BoundedExecutor("import", 1, 0, RejectionPolicy.ABORT);
+		abort.execute(blocked);
+		assertThrows(RejectedExecutionException.class, () -> abort.execute(() -> {}));
+		assertEquals(1, abort.getRejectedCount());
+
+		var callerRuns = new BoundedExecutor("fetch", 1, 0, RejectionPolicy.CALLER_RUNS);
+		callerRuns.execute(blocked);
+		var thread = new Thread[1];
+		callerRuns.execute(() -> thread[0] = Thread.currentThread());
+		assertSame(Thread.currentThread(), thread[0]);
+		assertEquals(1, callerRuns.getRejectedCount());
+		release.countDown();
+	}
+
+	@Test
+	public void testExecutors() {
+		var scan = new BoundedExecutor("scan", 1, 1, RejectionPolicy.ABORT);
+		var executors = DatabaseExecutors.of(Map.of(Workload.SCAN, scan));
+		assertSame(scan, executors.executor(Workload.SCAN));
+		assertSame(Database.VIRTUAL_THREAD_POOL, executors.executor(Workload.DISPATCH));
+		assertTrue(scan.toString().startsWith("scan[active=0"));
+		assertThrows(IllegalArgumentException.class, () -> new BoundedExecutor("scan", 0, 1, RejectionPolicy.ABORT));
+	}
+}
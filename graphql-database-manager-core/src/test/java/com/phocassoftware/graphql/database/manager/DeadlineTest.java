@@ -0,0 +1,77 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.junit.jupiter.api.Test;
+
+public class DeadlineTest {
+
+	@Test
+	public void testCancel() {
+		var deadline = Deadline.cancellable();
+		var call = new CompletableFuture<String>();
+		var tracked = deadline.track(call);
+		deadline.check();
+		assertTrue(deadline.remaining().isEmpty());
+
+		deadline.cancel();
+		assertTrue(call.isCancelled());
+		assertTrue(deadline.isCancelled());
+		var failure = assertThrows(CompletionException.class, tracked::join);
+		assertInstanceOf(DeadlineExceededException.class, failure.getCause());
+		assertThrows(DeadlineExceededException.class, deadline::check);
+
+		// calls started after the end are cancelled straight away
+		assertTrue(deadline.track(new CompletableFuture<>()).isCompletedExceptionally());
+	}
+
+	@Test
+	public void testExpires() {
+		var deadline = Deadline.after(Duration.ofMillis(50));
+		var tracked = deadline.track(new CompletableFuture<String>());
+		assertFalse(deadline.isDone());
+		assertThrows(DeadlineExceededException.class, () -> deadline.check(Duration.ofSeconds(5)));
+
+		var failure = assertThrows(CompletionException.class, tracked::join);
+		assertInstanceOf(DeadlineExceededException.class, failure.getCause());
+		assertTrue(deadline.isDone());
+		assertFalse(deadline.isCancelled());
+		assertEquals(Duration.ZERO, deadline.remaining().orElseThrow());
+	}
+
+	@Test
+	public void testCompleted() {
+		var deadline = Deadline.cancellable();
+		var tracked = deadline.track(CompletableFuture.completedFuture("done"));
+		deadline.cancel();
+		assertEquals("done", tracked.join());
+	}
+
+	@Test
+	public void testNone() {
+		var call = new CompletableFuture<String>();
+		assertSame(call, Deadline.NONE.track(call));
+		assertThrows(IllegalStateException.class, Deadline.NONE::cancel);
+		assertThrows(IllegalArgumentException.class, () -> Deadline.after(Duration.ofMillis(-1)));
+	}
+}
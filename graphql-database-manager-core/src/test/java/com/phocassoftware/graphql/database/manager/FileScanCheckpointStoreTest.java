@@ -0,0 +1,51 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.phocassoftware.graphql.database.manager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class FileScanCheckpointStoreTest {
+
+	@Test
+	public void testSaveAndLoad() throws IOException {
+		var directory = Files.createTempDirectory("checkpoints");
+		var store = new FileScanCheckpointStore(directory);
+		assertTrue(store.load("nightly").join().isEmpty());
+
+		var position = Map.of("organisationId", "S:org", "id", "S:cat:1", "idRevision", "B:AAE=");
+		store.save("nightly", 0, new ScanCheckpoint(2, "entities", position, false)).join();
+		store.save("nightly", 1, ScanCheckpoint.complete(2)).join();
+		store.save("nightly", 0, new ScanCheckpoint(2, "history", null, false)).join();
+
+		// a new store sees what the previous process saved
+		var loaded = new FileScanCheckpointStore(directory).load("nightly").join();
+		assertEquals(Map.of(0, new ScanCheckpoint(2, "history", null, false), 1, ScanCheckpoint.complete(2)), loaded);
+
+		store.save("other", 0, new ScanCheckpoint(1, "entities", position, false)).join();
+		assertEquals(Map.of(0, new ScanCheckpoint(1, "entities", position, false)), store.load("other").join());
+		assertEquals(2, store.load("nightly").join().size());
+	}
+
+	@Test
+	public void testRejectsPaths() throws IOException {
+		var store = new FileScanCheckpointStore(Files.createTempDirectory("checkpoints"));
+		assertThrows(IllegalArgumentException.class, () -> store.load("../nightly"));
+		assertThrows(IllegalArgumentException.class, () -> store.save("a/b", 0, ScanCheckpoint.complete(1)));
+	}
+}
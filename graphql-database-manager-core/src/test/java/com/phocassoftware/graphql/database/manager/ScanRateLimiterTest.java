@@ -0,0 +1,90 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.phocassoftware.graphql.database.manager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+public class ScanRateLimiterTest {
+
+	private static final RuntimeException THROTTLED = new RuntimeException("throttled");
+
+	@Test
+	public void testWaitsForDebt() throws Exception {
+		var now = new AtomicLong();
+		var limiter = new ScanRateLimiter(100, 100, failure -> failure == THROTTLED, Runnable::run, now::get);
+		assertTrue(limiter.acquireWrite().isDone());
+
+		// a burst well past the budget has to be paid off before the next batch, 20 units over at 100 a second
+		limiter.consumedCapacity(new ConsumedCapacity("org", "table", null, 0, 120));
+		var pending = limiter.acquireWrite();
+		assertFalse(pending.isDone());
+
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(150));
+		assertFalse(limiter.acquireWrite().isDone());
+
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(60));
+		assertTrue(limiter.acquireWrite().isDone());
+		pending.get(5, TimeUnit.SECONDS);
+
+		// reads have their own budget
+		assertTrue(limiter.acquireRead().isDone());
+	}
+
+	@Test
+	public void testReleaseFillsAtMostTheBucket() {
+		var limiter = new ScanRateLimiter(10, 10, failure -> false, Runnable::run, () -> 0);
+		// a reservation far larger than the read cost does not leave credit for a later burst
+		limiter.releaseRead(50);
+		limiter.consumedCapacity(new ConsumedCapacity("org", "table", null, 15, 0));
+		assertFalse(limiter.acquireRead().isDone());
+	}
+
+	@Test
+	public void testReservesUsualReadCost() {
+		var limiter = new ScanRateLimiter(10, 10, failure -> false);
+		limiter.consumedCapacity(new ConsumedCapacity("org", "table", null, 8, 0));
+		limiter.releaseRead(8);
+
+		var reserved = limiter.acquireRead().join();
+		assertEquals(8, reserved, 0.01);
+		assertTrue(limiter.acquireRead().isDone());
+		// two reads in flight have spent the budget, a third segment waits for them to be paid for
+		assertFalse(limiter.acquireRead().isDone());
+	}
+
+	@Test
+	public void testThrottlingLowersRate() {
+		var limiter = new ScanRateLimiter(100, Double.POSITIVE_INFINITY, failure -> failure == THROTTLED);
+		assertTrue(limiter.isThrottling(new CompletionException(THROTTLED)));
+
+		limiter.throttled(false);
+		assertEquals(50, limiter.getReadRate(), 0.5);
+		// the segments report the same throttling, the rate is only lowered once
+		limiter.throttled(false);
+		assertEquals(50, limiter.getReadRate(), 0.5);
+		assertFalse(limiter.acquireRead().isDone());
+
+		// without a budget the rate starts from what was being consumed
+		assertEquals(Double.POSITIVE_INFINITY, limiter.getWriteRate());
+		assertTrue(limiter.acquireWrite().isDone());
+		limiter.consumedCapacity(new ConsumedCapacity("org", "table", null, 0, 40));
+		limiter.throttled(true);
+		assertEquals(20, limiter.getWriteRate(), 0.5);
+	}
+}
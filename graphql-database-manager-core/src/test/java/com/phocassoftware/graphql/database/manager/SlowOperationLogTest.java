@@ -0,0 +1,73 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+public class SlowOperationLogTest {
+
+	private static OperationTrace trace(String operation) {
+		var trace = new OperationTrace(operation, "org", "tickets");
+		trace.call(new OperationTrace.Call("Query", "entities", null, System.nanoTime(), 1_000_000, 10, 0, 0.5));
+		trace.finish(null);
+		return trace;
+	}
+
+	@Test
+	public void testThreshold() {
+		var log = new SlowOperationLog(Duration.ofHours(1));
+		log.operation(trace("get"));
+		assertTrue(log.entries().isEmpty());
+		assertEquals(0, log.getSlowCount());
+	}
+
+	@Test
+	public void testRingBuffer() {
+		var log = new SlowOperationLog(Duration.ZERO, 3, 10, 1);
+		for (int i = 0; i < 5; i++) {
+			log.operation(trace("query" + i));
+		}
+		assertEquals(5, log.getSlowCount());
+		assertEquals(3, log.entries().size());
+		assertEquals("query4", log.entries().getFirst().getOperation());
+		assertEquals("query2", log.entries().getLast().getOperation());
+		assertEquals(1, log.entries(trace -> trace.getOperation().equals("query3")).size());
+		assertEquals(1, log.entries().getFirst().getPages());
+
+		log.clear();
+		assertTrue(log.entries().isEmpty());
+	}
+
+	@Test
+	public void testSampling() {
+		var log = new SlowOperationLog(Duration.ZERO, 10, 2, 0);
+		for (int i = 0; i < 5; i++) {
+			log.operation(trace("put"));
+		}
+		// the burst allowance restarts each second so a slow machine may keep a few more
+		assertTrue(log.getDroppedCount() > 0);
+		assertEquals(5, log.entries().size() + log.getDroppedCount());
+	}
+
+	@Test
+	public void testInvalid() {
+		assertThrows(IllegalArgumentException.class, () -> new SlowOperationLog(Duration.ofMillis(-1)));
+		assertThrows(IllegalArgumentException.class, () -> new SlowOperationLog(Duration.ZERO, 0, 1, 1));
+		assertThrows(IllegalArgumentException.class, () -> new SlowOperationLog(Duration.ZERO, 1, 1, 2));
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.phocassoftware.graphql.database.manager.instrumentation.AccessScope;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class TraceRecorderTest {
+
+	@Test
+	public void testOperation() throws Exception {
+		var recorder = new TraceRecorder();
+		var trace = AccessScope.run(new AccessScope(null, "tickets/0/owner", false), () -> new OperationTrace("load", "org", "users"));
+		var start = System.nanoTime();
+		trace.call(new OperationTrace.Call("BatchGetItem", "entities", null, start, 2_000_000, 3, 1, 1.5));
+		trace.retry(100);
+		trace.conversion(start);
+		trace.finish(null);
+		recorder.operation(trace);
+
+		var events = recorder.events();
+		assertEquals(4, events.size());
+		assertEquals("load", events.getFirst().name());
+		assertTrue(events.stream().allMatch(event -> "tickets/0/owner".equals(event.path())));
+		assertEquals(1, events.stream().filter(event -> event.category().equals("dynamodb")).count());
+		assertEquals(1, events.stream().filter(event -> event.category().equals("retry")).count());
+		assertEquals(1, events.stream().filter(event -> event.category().equals("conversion")).count());
+	}
+
+	@Test
+	public void testChromeTrace() {
+		var recorder = new TraceRecorder();
+		recorder.record("dispatch items", "dispatch", null, System.nanoTime(), Map.of("keys", 4));
+		recorder.record("permission", "permission", "tickets", System.nanoTime(), Map.of("type", "tickets \"open\""));
+
+		var json = recorder.toChromeTrace();
+		assertTrue(json.startsWith("{\"traceEvents\":["));
+		assertTrue(json.contains("\"name\":\"dispatch items\",\"cat\":\"dispatch\",\"ph\":\"X\",\"pid\":1,\"tid\":1"));
+		assertTrue(json.contains("\"tid\":2"));
+		assertTrue(json.contains("\"keys\":4"));
+		assertTrue(json.contains("\"type\":\"tickets \\\"open\\\"\""));
+		assertTrue(json.contains("\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":2,\"args\":{\"name\":\"tickets\"}"));
+	}
+
+	@Test
+	public void testLimit() {
+		var recorder = new TraceRecorder(2);
+		for (int i = 0; i < 5; i++) {
+			recorder.record("put", "operation", null, System.nanoTime(), Map.of());
+		}
+		assertEquals(2, recorder.events().size());
+		assertEquals(3, recorder.getDroppedCount());
+		assertThrows(IllegalArgumentException.class, () -> new TraceRecorder(0));
+	}
+}
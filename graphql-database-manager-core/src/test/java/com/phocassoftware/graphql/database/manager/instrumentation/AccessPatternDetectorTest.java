@@ -0,0 +1,88 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager.instrumentation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.phocassoftware.graphql.database.manager.OperationTrace;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class AccessPatternDetectorTest {
+
+	@Test
+	public void testBatched() throws Exception {
+		var detector = new AccessPatternDetector(3);
+		List<Object> contexts = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			detector.resolve("orders/customer");
+			var scope = new AccessScope(detector, "orders/customer", false);
+			AccessScope.run(scope, () -> {
+				detector.load(AccessScope.current().path(), 1);
+				contexts.add(AccessScope.current());
+				return null;
+			});
+		}
+		AccessScope.dispatch(contexts, () -> operation());
+		assertNull(AccessScope.current());
+
+		var field = detector.fields().getFirst();
+		assertEquals(5, field.resolves());
+		assertEquals(5, field.loads());
+		assertEquals(1, field.dispatches());
+		assertEquals(5.0, field.averageBatchSize());
+		assertEquals(0, field.operations());
+		assertEquals(1, field.calls());
+		assertFalse(field.flagged());
+	}
+
+	@Test
+	public void testPerParent() throws Exception {
+		var detector = new AccessPatternDetector(3);
+		for (int i = 0; i < 4; i++) {
+			detector.resolve("orders/lines");
+			AccessScope.run(new AccessScope(detector, "orders/lines", false), () -> operation());
+		}
+		detector.resolve("orders");
+		AccessScope.run(new AccessScope(detector, "orders", false), () -> operation());
+
+		var flagged = detector.flagged();
+		assertEquals(1, flagged.size());
+		assertEquals("orders/lines", flagged.getFirst().path());
+		assertEquals(4, flagged.getFirst().roundTrips());
+		assertTrue(detector.fields().stream().anyMatch(field -> field.path().equals("orders") && !field.flagged()));
+	}
+
+	@Test
+	public void testMixedBatch() {
+		var detector = new AccessPatternDetector(3);
+		List<Object> contexts = List.of(new AccessScope(detector, "a", false), new AccessScope(detector, "b", false));
+		AccessScope.dispatch(contexts, () -> operation());
+		// a shared batch can not be split between the fields so only the dispatch is counted for each
+		assertEquals(List.of("a", "b"), detector.fields().stream().map(FieldAccess::path).toList());
+		assertTrue(detector.fields().stream().allMatch(field -> field.dispatches() == 1 && field.calls() == 0));
+	}
+
+	// what a monitored driver does when an operation completes
+	private static OperationTrace operation() {
+		var trace = new OperationTrace("get", "org", "tickets");
+		trace.call(new OperationTrace.Call("BatchGetItem", "entities", null, System.nanoTime(), 1_000_000, 1, 0, 1));
+		trace.finish(null);
+		AccessPatternDetector.OPERATIONS.operation(trace);
+		return trace;
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+public class TimeOrderedIdGeneratorTest {
+
+	@Test
+	public void testMonotonic() {
+		var generator = new TimeOrderedIdGenerator();
+		var ids = new ArrayList<String>();
+		for (int i = 0; i < 100_000; i++) {
+			ids.add(generator.get());
+		}
+		for (int i = 1; i < ids.size(); i++) {
+			assertTrue(ids.get(i - 1).compareTo(ids.get(i)) < 0);
+		}
+		assertEquals(26, ids.getFirst().length());
+	}
+
+	@Test
+	public void testUniqueAcrossThreads() {
+		var generator = new TimeOrderedIdGenerator();
+		var ids = ConcurrentHashMap.<String>newKeySet();
+		var threads = IntStream
+			.range(0, 8)
+			.mapToObj(__ -> CompletableFuture.runAsync(() -> IntStream.range(0, 10_000).forEach(i -> ids.add(generator.get()))))
+			.toList();
+		threads.forEach(CompletableFuture::join);
+		assertEquals(80_000, ids.size());
+	}
+
+	@Test
+	public void testTime() {
+		var generator = new TimeOrderedIdGenerator();
+		var before = Instant.now().minusMillis(1);
+		var id = generator.get();
+		var created = generator.timeOf(id);
+		assertTrue(!created.isBefore(before) && created.isBefore(Instant.now().plusSeconds(1)));
+
+		assertTrue(generator.idAt(before).compareTo(id) < 0);
+		assertTrue(generator.idAt(Instant.now().plus(Duration.ofMinutes(1))).compareTo(id) > 0);
+		assertEquals(before.toEpochMilli(), generator.timeOf(generator.idAt(before)).toEpochMilli());
+	}
+
+	@Test
+	public void testShards() {
+		var generator = new TimeOrderedIdGenerator(8);
+		var prefixes = new HashSet<Character>();
+		for (int i = 0; i < 1_000; i++) {
+			var id = generator.get();
+			assertEquals(27, id.length());
+			prefixes.add(id.charAt(0));
+		}
+		assertEquals(8, prefixes.size());
+		assertTrue(generator.idAt(3, Instant.now()).startsWith("3"));
+		assertEquals(28, new TimeOrderedIdGenerator(64).get().length());
+
+		assertThrows(IllegalArgumentException.class, () -> new TimeOrderedIdGenerator(0));
+		assertThrows(IllegalArgumentException.class, () -> generator.idAt(8, Instant.now()));
+		assertThrows(IllegalArgumentException.class, () -> generator.timeOf("not an id"));
+	}
+}
@@ -15,20 +15,28 @@ package com.phocassoftware.graphql.database.manager.dynamo;
 import static com.phocassoftware.graphql.database.manager.util.TableCoreUtil.table;
 
 import tools.jackson.databind.ObjectMapper;
+import com.phocassoftware.graphql.database.manager.Changes;
 import com.phocassoftware.graphql.database.manager.DatabaseDriver;
+import com.phocassoftware.graphql.database.manager.DatabaseExecutors;
 import com.phocassoftware.graphql.database.manager.DatabaseKey;
+import com.phocassoftware.graphql.database.manager.DatabaseListener;
+import com.phocassoftware.graphql.database.manager.OperationTrace;
 import com.phocassoftware.graphql.database.manager.DatabaseQueryHistoryKey;
 import com.phocassoftware.graphql.database.manager.DatabaseQueryKey;
+import com.phocassoftware.graphql.database.manager.Deadline;
 import com.phocassoftware.graphql.database.manager.KeyFactory;
+import com.phocassoftware.graphql.database.manager.KeyRange;
 import com.phocassoftware.graphql.database.manager.PutValue;
 import com.phocassoftware.graphql.database.manager.Query;
 import com.phocassoftware.graphql.database.manager.QueryBuilder;
+import com.phocassoftware.graphql.database.manager.QueryPlan;
 import com.phocassoftware.graphql.database.manager.RevisionMismatchException;
 import com.phocassoftware.graphql.database.manager.ScanResult;
 import com.phocassoftware.graphql.database.manager.ScanResult.Item;
 import com.phocassoftware.graphql.database.manager.Table;
 import com.phocassoftware.graphql.database.manager.TableDataLoader;
 import com.phocassoftware.graphql.database.manager.TableScanQuery;
+import com.phocassoftware.graphql.database.manager.annotations.ExternalLinks;
 import com.phocassoftware.graphql.database.manager.annotations.Hash;
 import com.phocassoftware.graphql.database.manager.annotations.Hash.HashExtractor;
 import com.phocassoftware.graphql.database.manager.annotations.HashLocator;
@@ -43,40 +51,59 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.hash.Hashing;
 import graphql.VisibleForTesting;
+import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import io.github.classgraph.ClassGraph;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.exception.SdkServiceException;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeAction;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValueUpdate;
-import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
-import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
 import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
 import software.amazon.awssdk.services.dynamodb.model.DeleteRequest;
 import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
 import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
 import software.amazon.awssdk.services.dynamodb.model.QueryRequest.Builder;
+import software.amazon.awssdk.services.dynamodb.model.RequestLimitExceededException;
 import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
 import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
 import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
 
@@ -85,6 +112,12 @@ public class DynamoDb extends DatabaseDriver {
 	private static final AttributeValue REVISION_INCREMENT = AttributeValue.builder().n("1").build();
 	private static final int BATCH_WRITE_SIZE = 25;
 	private static final int MAX_RETRY = 20;
+	private static final int MAX_TRANSACTION_ITEMS = 100;
+	private static final String DELETED_PREFIX = reservedPrefix("deleted");
+	static final Duration DELETED_RETENTION = Duration.ofDays(35);
+	// reads are charged per 4KB, plans assume this size as the real items are not known until they are read
+	private static final int ASSUMED_ITEM_BYTES = 1024;
+	private static final int READ_UNIT_BYTES = 4096;
 
 	private final List<String> entityTables; // is in reverse order so easy to override as we go through
 	private final String historyTable;
@@ -94,13 +127,21 @@ public class DynamoDb extends DatabaseDriver {
 	private final Supplier<String> idGenerator;
 	private final int batchWriteSize;
 	private final int maxRetry;
+	private final Map<Class<? extends Table>, Set<String>> externalLinkTables;
 	private final boolean globalEnabled;
 	private final boolean hash;
 	private final String classPath;
 
 	private final String parallelHashIndex;
+	private final Clock clock;
+	private final Duration deletedRetention;
 
-	private final ConcurrentHashMap<Class<? extends Table>, Optional<Hash.HashExtractor>> extractorCache = new ConcurrentHashMap<>();
+	private final DatabaseListener listener; // set once monitored, operations are then traced
+	private final OperationTrace trace; // set on the copy running a single traced operation
+	private final Deadline deadline;
+	private final Executor conversionExecutor; // null converts on the thread the response completed on
+
+	private final ConcurrentHashMap<Class<? extends Table>, Optional<Hash.HashExtractor>> extractorCache;
 
 	private enum BackupTableType {
 		Entity,
@@ -137,6 +178,43 @@ public class DynamoDb extends DatabaseDriver {
 		boolean hash,
 		String classPath,
 		String parallelHashIndex
+	) {
+		this(
+			mapper,
+			entityTables,
+			historyTable,
+			client,
+			idGenerator,
+			batchWriteSize,
+			maxRetry,
+			globalEnabled,
+			hash,
+			classPath,
+			parallelHashIndex,
+			Clock.systemUTC(),
+			DELETED_RETENTION
+		);
+	}
+
+	/**
+	 * @param clock            stamps created, updated and changed times
+	 * @param deletedRetention how long the deletions of tracked types are kept for changedSince, a cursor older than this has to
+	 *                         start again
+	 */
+	public DynamoDb(
+		ObjectMapper mapper,
+		List<String> entityTables,
+		String historyTable,
+		DynamoDbAsyncClient client,
+		Supplier<String> idGenerator,
+		int batchWriteSize,
+		int maxRetry,
+		boolean globalEnabled,
+		boolean hash,
+		String classPath,
+		String parallelHashIndex,
+		Clock clock,
+		Duration deletedRetention
 	) {
 		this.mapper = mapper;
 		this.entityTables = entityTables;
@@ -150,6 +228,14 @@ public class DynamoDb extends DatabaseDriver {
 		this.hash = hash;
 		this.classPath = classPath;
 		this.parallelHashIndex = parallelHashIndex;
+		this.clock = clock;
+		this.deletedRetention = deletedRetention;
+		this.listener = null;
+		this.trace = null;
+		this.deadline = Deadline.NONE;
+		this.conversionExecutor = null;
+		this.externalLinkTables = new ConcurrentHashMap<>();
+		this.extractorCache = new ConcurrentHashMap<>();
 
 		if (classPath != null) {
 			java.util.List<Class<Table>> tableObjects;
@@ -186,6 +272,96 @@ public class DynamoDb extends DatabaseDriver {
 		}
 	}
 
+	// shares everything with the source, only the client and what it reports to differ
+	private DynamoDb(
+		DynamoDb source,
+		DynamoDbAsyncClient client,
+		DatabaseListener listener,
+		OperationTrace trace,
+		Deadline deadline,
+		Executor conversionExecutor
+	) {
+		this.mapper = source.mapper;
+		this.entityTables = source.entityTables;
+		this.historyTable = source.historyTable;
+		this.entityTable = source.entityTable;
+		this.client = client;
+		this.idGenerator = source.idGenerator;
+		this.batchWriteSize = source.batchWriteSize;
+		this.maxRetry = source.maxRetry;
+		this.globalEnabled = source.globalEnabled;
+		this.hash = source.hash;
+		this.classPath = source.classPath;
+		this.parallelHashIndex = source.parallelHashIndex;
+		this.clock = source.clock;
+		this.deletedRetention = source.deletedRetention;
+		this.listener = listener;
+		this.trace = trace;
+		this.deadline = deadline;
+		this.conversionExecutor = conversionExecutor;
+		this.externalLinkTables = source.externalLinkTables;
+		this.extractorCache = source.extractorCache;
+		this.hashKeyExpander = source.hashKeyExpander;
+		this.classes = source.classes;
+	}
+
+	@Override
+	public DatabaseDriver monitored(DatabaseListener listener) {
+		return new DynamoDb(this, new RecordingClient(client, listener), listener, null, deadline, conversionExecutor);
+	}
+
+	@Override
+	public DatabaseDriver withDeadline(Deadline deadline) {
+		if (deadline == Deadline.NONE) {
+			return this;
+		}
+		var recording = client instanceof RecordingClient existing ? existing : new RecordingClient(client, DatabaseListener.NONE);
+		return new DynamoDb(this, recording.withDeadline(deadline), listener, trace, deadline, conversionExecutor);
+	}
+
+	@Override
+	public DatabaseDriver withExecutors(DatabaseExecutors executors) {
+		return new DynamoDb(this, client, listener, trace, deadline, executors.executor(DatabaseExecutors.Workload.CONVERSION));
+	}
+
+	// runs the operation on a copy whose calls are added to a new trace, the listener gets the trace once it completes
+	private <R> CompletableFuture<R> traced(String operation, String organisationId, String type, Function<DynamoDb, CompletableFuture<R>> run) {
+		if (listener == null || trace != null || !(client instanceof RecordingClient recording)) {
+			return run.apply(this);
+		}
+		var operationTrace = new OperationTrace(operation, organisationId, type);
+		CompletableFuture<R> future;
+		try {
+			future = run.apply(new DynamoDb(this, recording.tracing(operationTrace), listener, operationTrace, deadline, conversionExecutor));
+		} catch (RuntimeException e) {
+			future = CompletableFuture.failedFuture(e);
+		}
+		return future
+			.whenComplete((result, failure) -> {
+				operationTrace.finish(failure);
+				listener.operation(operationTrace);
+			});
+	}
+
+	private void merged(long start) {
+		if (trace != null) {
+			trace.merge(start);
+		}
+	}
+
+	private <A, B> CompletableFuture<B> converting(CompletableFuture<A> future, Function<A, B> conversion) {
+		return conversionExecutor == null ? future.thenApply(conversion) : future.thenApplyAsync(conversion, conversionExecutor);
+	}
+
+	private <T extends Table> List<T> convert(Class<T> type, List<DynamoItem> rows) {
+		var start = System.nanoTime();
+		var converted = Flattener.convert(mapper, type, rows);
+		if (trace != null) {
+			trace.conversion(start);
+		}
+		return converted;
+	}
+
 	public <T extends Table> CompletableFuture<List<T>> delete(String organisationId, Class<T> clazz) {
 		if (getExtractor(clazz).isPresent()) {
 			throw new UnsupportedOperationException("hashed types can not be deleted by type");
@@ -228,9 +404,7 @@ public class DynamoDb extends DatabaseDriver {
 							}
 						})
 				)
-				.thenApply(response -> {
-					return entity;
-				})
+				.thenCompose(response -> recordDeletion(organisationId, entity))
 				.exceptionally(failure -> {
 					if (failure.getCause() instanceof ConditionalCheckFailedException) {
 						throw new RevisionMismatchException(failure.getCause());
@@ -242,6 +416,9 @@ public class DynamoDb extends DatabaseDriver {
 			// we mark as deleted not actual delete
 			Map<String, AttributeValue> item = mapWithKeys(organisationId, entity, true);
 			item.put("deleted", AttributeValue.builder().bool(true).build());
+			if (tracksChanges(entity.getClass())) {
+				item.put(TableUtil.CHANGED_AT, TableUtil.changedAt(entity.getClass(), clock.instant()));
+			}
 
 			return client
 				.putItem(request -> request.tableName(entityTable).item(item))
@@ -251,6 +428,26 @@ public class DynamoDb extends DatabaseDriver {
 		}
 	}
 
+	// the entity row is gone, so a tracked type leaves a marker behind for changedSince to report
+	private <T extends Table> CompletableFuture<T> recordDeletion(String organisationId, T entity) {
+		if (!tracksChanges(entity.getClass())) {
+			return CompletableFuture.completedFuture(entity);
+		}
+		Map<String, AttributeValue> item = new HashMap<>();
+		item.put("organisationId", AttributeValue.builder().s(organisationId).build());
+		item.put("id", AttributeValue.builder().s(DELETED_PREFIX + table(entity.getClass()) + ":" + entity.getId()).build());
+		item.put("deleted", AttributeValue.builder().bool(true).build());
+		var now = clock.instant();
+		item.put(TableUtil.CHANGED_AT, TableUtil.changedAt(entity.getClass(), now));
+		// the table's time to live removes the marker once no cursor may still need it
+		item.put("ttl", AttributeValue.builder().n(Long.toString(now.plus(deletedRetention).getEpochSecond())).build());
+		return client.putItem(request -> request.tableName(entityTable).item(item)).thenApply(response -> entity);
+	}
+
+	private boolean tracksChanges(Class<? extends Table> type) {
+		return TableUtil.tracksChanges(type) && getExtractor(type).isEmpty();
+	}
+
 	private CompletableFuture<?> conditionalBulkWrite(List<PutValue> items) {
 		var all = items
 			.stream()
@@ -345,7 +542,8 @@ public class DynamoDb extends DatabaseDriver {
 		if (count > maxRetry) {
 			throw new RuntimeException("Failed to put items into dynamo after " + maxRetry + " attempts");
 		}
-		var delay = CompletableFuture.delayedExecutor(100 * count * count, TimeUnit.MILLISECONDS);
+		deadline.check(Duration.ofMillis(retryDelay(count)));
+		var delay = CompletableFuture.delayedExecutor(retryDelay(count), TimeUnit.MILLISECONDS);
 		return CompletableFuture
 			.supplyAsync(
 				() -> {
@@ -353,7 +551,11 @@ public class DynamoDb extends DatabaseDriver {
 						.batchWriteItem(builder -> builder.requestItems(data))
 						.thenCompose(response -> {
 							if (!response.unprocessedItems().isEmpty()) {
-								return putItems(count + 1, response.unprocessedItems());
+								var next = count + 1;
+								if (trace != null) {
+									trace.retry(retryDelay(next));
+								}
+								return putItems(next, response.unprocessedItems());
 							} else {
 								return CompletableFuture.completedFuture(null);
 							}
@@ -366,6 +568,18 @@ public class DynamoDb extends DatabaseDriver {
 
 	@Override
 	public CompletableFuture<Void> bulkPut(List<PutValue> values) {
+		var organisationIds = values.stream().map(value -> value.getOrganisationId()).distinct().toList();
+		var types = values.stream().map(value -> table(value.getEntity().getClass())).distinct().toList();
+		return traced(
+			"put",
+			organisationIds.size() == 1 ? organisationIds.getFirst() : null,
+			types.size() == 1 ? types.getFirst() : null,
+			db -> db.write(values)
+		);
+	}
+
+	@SuppressWarnings("rawtypes")
+	private CompletableFuture<Void> write(List<PutValue> values) {
 		try {
 			var conditional = Lists.partition(values.stream().filter(v -> v.getCheck()).collect(Collectors.toList()), batchWriteSize);
 			var nonConditional = values.stream().filter(v -> !v.getCheck()).collect(Collectors.toList());
@@ -388,12 +602,12 @@ public class DynamoDb extends DatabaseDriver {
 		if (update) {
 			if (entity.getId() == null) {
 				entity.setId(idGenerator.get());
-				setCreatedAt(entity, Instant.now());
+				setCreatedAt(entity, clock.instant());
 			}
 			if (entity.getCreatedAt() == null) {
-				setCreatedAt(entity, Instant.now()); // if missing for what ever reason
+				setCreatedAt(entity, clock.instant()); // if missing for what ever reason
 			}
-			setUpdatedAt(entity, Instant.now());
+			setUpdatedAt(entity, clock.instant());
 			revision++;
 		}
 		Map<String, AttributeValue> item = mapWithKeys(organisationId, entity, true);
@@ -417,22 +631,20 @@ public class DynamoDb extends DatabaseDriver {
 		item.put("links", AttributeValue.builder().m(links).build());
 		setSource(entity, entityTable, getLinks(entity), organisationId);
 
-		String secondaryOrganisation = TableUtil.getSecondaryOrganisation(entity);
-		String secondaryGlobal = TableUtil.getSecondaryGlobal(entity);
-
-		if (secondaryGlobal != null) {
-			var index = AttributeValue.builder().s(table(entity.getClass()) + ":" + secondaryGlobal).build();
-			item.put("secondaryGlobal", index);
-		}
-		if (secondaryOrganisation != null) {
-			var index = AttributeValue.builder().s(table(entity.getClass()) + ":" + secondaryOrganisation).build();
-			item.put("secondaryOrganisation", index);
-		}
+		TableUtil
+			.getIndexes(entity)
+			.forEach((attribute, value) -> {
+				item.put(attribute, AttributeValue.builder().s(table(entity.getClass()) + ":" + value).build());
+			});
 
 		var timeToLive = TableUtil.getTimeToLive(entity);
 		if (timeToLive != null) {
 			item.put("ttl", AttributeValue.builder().n(Long.toString(timeToLive.getEpochSecond())).build());
 		}
+
+		if (entity.getUpdatedAt() != null && tracksChanges(entity.getClass())) {
+			item.put(TableUtil.CHANGED_AT, TableUtil.changedAt(entity.getClass(), entity.getUpdatedAt()));
+		}
 		return item;
 	}
 
@@ -480,6 +692,271 @@ public class DynamoDb extends DatabaseDriver {
 			.thenApply(response -> entity);
 	}
 
+	@Override
+	public <T extends Table> CompletableFuture<T> update(String organisationId, T entity, Function<T, CompletableFuture<T>> mutator) {
+		final long revision = entity.getRevision();
+		final String id = entity.getId();
+		String sourceTable = getSourceTable(entity);
+		String sourceOrganisationId = getSourceOrganisationId(entity);
+
+		// a delta only makes sense against the row we are writing to, anything inherited from another table or global gets written in full
+		boolean delta = entityTable.equals(sourceTable) && organisationId.equals(sourceOrganisationId) && revision != 0;
+
+		var before = TableUtil.toAttributes(mapper, entity);
+		var indexes = TableUtil.getIndexes(entity);
+		var timeToLive = TableUtil.getTimeToLive(entity);
+
+		return mutator
+			.apply(entity)
+			.thenCompose(updated -> {
+				if (!Objects.equals(id, updated.getId()) || !updated.getClass().equals(entity.getClass())) {
+					throw new IllegalArgumentException("update can not change the id or type of " + table(entity.getClass()) + " " + id);
+				}
+				updated.setRevision(revision);
+				if (!delta) {
+					return put(organisationId, updated, true, true)
+						.thenApply(r -> {
+							updated.setRevision(revision + 1);
+							return updated;
+						});
+				}
+				setUpdatedAt(updated, clock.instant());
+
+				var after = TableUtil.toAttributes(mapper, updated);
+				after.remove("revision");
+				before.remove("revision");
+
+				Map<String, String> names = new HashMap<>();
+				Map<String, AttributeValue> values = new HashMap<>();
+				List<String> set = new ArrayList<>();
+				List<String> remove = new ArrayList<>();
+
+				after.forEach((field, value) -> {
+					if (!value.equals(before.get(field))) {
+						var name = "#f" + names.size();
+						var placeholder = ":v" + values.size();
+						names.put(name, field);
+						values.put(placeholder, value);
+						set.add("item." + name + " = " + placeholder);
+					}
+				});
+				before.keySet().forEach(field -> {
+					if (!after.containsKey(field)) {
+						var name = "#f" + names.size();
+						names.put(name, field);
+						remove.add("item." + name);
+					}
+				});
+
+				var updatedIndexes = TableUtil.getIndexes(updated);
+				var attributes = new HashSet<>(indexes.keySet());
+				attributes.addAll(updatedIndexes.keySet());
+				for (var attribute : attributes) {
+					updateIndex(attribute, indexes.get(attribute), updatedIndexes.get(attribute), updated, values, set, remove);
+				}
+
+				var updatedTimeToLive = TableUtil.getTimeToLive(updated);
+				if (!Objects.equals(timeToLive, updatedTimeToLive)) {
+					if (updatedTimeToLive == null) {
+						remove.add("ttl");
+					} else {
+						values.put(":ttl", AttributeValue.builder().n(Long.toString(updatedTimeToLive.getEpochSecond())).build());
+						set.add("ttl = :ttl");
+					}
+				}
+
+				if (tracksChanges(updated.getClass())) {
+					values.put(":changedAt", TableUtil.changedAt(updated.getClass(), updated.getUpdatedAt()));
+					set.add(TableUtil.CHANGED_AT + " = :changedAt");
+				}
+
+				values.put(":revision", AttributeValue.builder().n(Long.toString(revision)).build());
+				values.put(":revisionIncrement", REVISION_INCREMENT);
+
+				var expression = new StringBuilder();
+				if (!set.isEmpty()) {
+					expression.append("SET ").append(String.join(", ", set)).append(" ");
+				}
+				if (!remove.isEmpty()) {
+					expression.append("REMOVE ").append(String.join(", ", remove)).append(" ");
+				}
+				expression.append("ADD revision :revisionIncrement");
+
+				return client
+					.updateItem(
+						request -> request
+							.tableName(entityTable)
+							.key(mapWithKeys(organisationId, updated))
+							.conditionExpression("revision = :revision")
+							.updateExpression(expression.toString())
+							.applyMutation(mutation -> {
+								if (!names.isEmpty()) {
+									mutation.expressionAttributeNames(names);
+								}
+							})
+							.expressionAttributeValues(values)
+							.returnValues(ReturnValue.UPDATED_NEW)
+					)
+					.thenApply(response -> {
+						updated.setRevision(Long.parseLong(response.attributes().get("revision").n()));
+						return updated;
+					})
+					.exceptionally(failure -> {
+						if (failure.getCause() instanceof ConditionalCheckFailedException) {
+							throw new RevisionMismatchException(failure.getCause());
+						}
+						Throwables.throwIfUnchecked(failure);
+						throw new RuntimeException(failure);
+					});
+			});
+	}
+
+	private void updateIndex(
+		String attribute,
+		String before,
+		String after,
+		Table entity,
+		Map<String, AttributeValue> values,
+		List<String> set,
+		List<String> remove
+	) {
+		if (Objects.equals(before, after)) {
+			return;
+		}
+		if (after == null) {
+			remove.add(attribute);
+		} else {
+			values.put(":" + attribute, AttributeValue.builder().s(table(entity.getClass()) + ":" + after).build());
+			set.add(attribute + " = :" + attribute);
+		}
+	}
+
+	@Override
+	public <T extends Table> CompletableFuture<T> increment(String organisationId, Class<T> type, String id, String field, long delta) {
+		return addDelta(organisationId, type, id, field, delta)
+			.exceptionallyCompose(failure -> {
+				if (!(failure.getCause() instanceof ConditionalCheckFailedException)) {
+					return CompletableFuture.failedFuture(failure);
+				}
+				// only a lower table or global holds the entity, copy it up with the delta applied, if another increment copied it first add to that
+				return copyWithDelta(organisationId, type, id, field, delta)
+					.exceptionallyCompose(copyFailure -> {
+						if (copyFailure.getCause() instanceof ConditionalCheckFailedException) {
+							return addDelta(organisationId, type, id, field, delta);
+						}
+						return CompletableFuture.failedFuture(copyFailure);
+					});
+			})
+			.exceptionally(failure -> {
+				Throwables.throwIfUnchecked(failure);
+				throw new RuntimeException(failure);
+			});
+	}
+
+	private <T extends Table> CompletableFuture<T> addDelta(String organisationId, Class<T> type, String id, String field, long delta) {
+		var now = clock.instant();
+		Map<String, AttributeValue> values = new HashMap<>();
+		values.put(":delta", AttributeValue.builder().n(Long.toString(delta)).build());
+		values.put(":revisionIncrement", REVISION_INCREMENT);
+		values.put(":updatedAt", TableUtil.toAttribute(mapper.valueToTree(now)));
+		var set = "item.updatedAt = :updatedAt";
+		if (tracksChanges(type)) {
+			values.put(":changedAt", TableUtil.changedAt(type, now));
+			set += ", " + TableUtil.CHANGED_AT + " = :changedAt";
+		}
+		var expression = "SET " + set + " ADD item.#field :delta, revision :revisionIncrement";
+
+		return client
+			.updateItem(
+				request -> request
+					.tableName(entityTable)
+					.key(mapWithKeys(organisationId, type, id))
+					.conditionExpression("attribute_exists(item)")
+					.updateExpression(expression)
+					.expressionAttributeNames(Map.of("#field", field))
+					.expressionAttributeValues(values)
+					.returnValues(ReturnValue.ALL_NEW)
+			)
+			.thenApply(response -> new DynamoItem(entityTable, response.attributes()).convertTo(mapper, type));
+	}
+
+	private <T extends Table> CompletableFuture<T> copyWithDelta(String organisationId, Class<T> type, String id, String field, long delta) {
+		return get(List.of(createDatabaseKey(organisationId, type, id)))
+			.thenCompose(found -> {
+				var entity = found.getFirst();
+				if (entity == null) {
+					throw new IllegalArgumentException("Can not increment " + table(type) + " with id " + id + " as it does not exist");
+				}
+				var item = buildPutEntity(organisationId, entity, true);
+				var entries = new HashMap<>(item.get("item").m());
+				var current = entries.get(field);
+				var total = current == null ? BigDecimal.ZERO : new BigDecimal(current.n());
+				entries.put(field, AttributeValue.builder().n(total.add(BigDecimal.valueOf(delta)).toPlainString()).build());
+				item.put("item", AttributeValue.builder().m(entries).build());
+
+				return client
+					.putItem(request -> request.tableName(entityTable).item(item).conditionExpression("attribute_not_exists(id)"))
+					.thenApply(response -> new DynamoItem(entityTable, item).convertTo(mapper, type));
+			});
+	}
+
+	@Override
+	public <T extends Table> CompletableFuture<Void> incrementSharded(
+		String organisationId,
+		Class<T> type,
+		String id,
+		String field,
+		long delta,
+		int shards
+	) {
+		var shard = ThreadLocalRandom.current().nextInt(shards);
+		Map<String, AttributeValue> key = new HashMap<>();
+		key.put("organisationId", AttributeValue.builder().s(organisationId).build());
+		key.put("id", AttributeValue.builder().s(counterPrefix(type, id, field) + shard).build());
+
+		return client
+			.updateItem(
+				request -> request
+					.tableName(entityTable)
+					.key(key)
+					.updateExpression("ADD #value :delta")
+					.expressionAttributeNames(Map.of("#value", "value"))
+					.expressionAttributeValues(Map.of(":delta", AttributeValue.builder().n(Long.toString(delta)).build()))
+			)
+			.thenApply(response -> null);
+	}
+
+	@Override
+	public <T extends Table> CompletableFuture<Long> getShardedCounter(String organisationId, Class<T> type, String id, String field) {
+		Map<String, AttributeValue> keyConditions = new HashMap<>();
+		keyConditions.put(":organisationId", AttributeValue.builder().s(organisationId).build());
+		keyConditions.put(":prefix", AttributeValue.builder().s(counterPrefix(type, id, field)).build());
+
+		var total = new AtomicLong();
+		return client
+			.queryPaginator(
+				r -> r
+					.tableName(entityTable)
+					.consistentRead(true)
+					.keyConditionExpression("organisationId = :organisationId AND begins_with(id, :prefix)")
+					.expressionAttributeValues(keyConditions)
+			)
+			.subscribe(response -> {
+				response.items().forEach(item -> total.addAndGet(Long.parseLong(item.get("value").n())));
+			})
+			.thenApply(__ -> total.get());
+	}
+
+	// counter shards, deletion markers and adjacency rows share the organisation partition, the # keeps them clear of entity ids which
+	// always start with a table name
+	private static String reservedPrefix(String kind) {
+		return "#" + kind + ":";
+	}
+
+	private String counterPrefix(Class<? extends Table> type, String id, String field) {
+		return reservedPrefix("counter") + table(type) + ":" + id + ":" + field + ":";
+	}
+
 	@Override
 	public int maxBatchSize() {
 		int size = 100 / entityTables.size();
@@ -491,6 +968,12 @@ public class DynamoDb extends DatabaseDriver {
 
 	@Override
 	public <T extends Table> CompletableFuture<List<T>> get(List<DatabaseKey<T>> keys) {
+		var first = keys.getFirst();
+		var mixed = keys.stream().anyMatch(key -> !key.getType().equals(first.getType()));
+		return traced("get", first.getOrganisationId(), mixed ? null : table(first.getType()), db -> db.load(keys));
+	}
+
+	private <T extends Table> CompletableFuture<List<T>> load(List<DatabaseKey<T>> keys) {
 		List<Map<String, AttributeValue>> entries = new ArrayList<>(keys.size() * 2);
 
 		keys.forEach(key -> {
@@ -509,8 +992,10 @@ public class DynamoDb extends DatabaseDriver {
 		for (String table : this.entityTables) {
 			items.put(table, KeysAndAttributes.builder().keys(entries).consistentRead(true).build());
 		}
-		return getItems(0, items, Flattener.create(this.entityTables, false))
-			.thenApply(flattener -> {
+		return converting(
+			getItems(0, items, Flattener.create(this.entityTables, false)),
+			flattener -> {
+				var start = System.nanoTime();
 				var toReturn = new ArrayList<T>();
 				for (var key : keys) {
 					var item = flattener.get(getExtractor(key.getType()), key.getType(), key.getId());
@@ -520,28 +1005,44 @@ public class DynamoDb extends DatabaseDriver {
 						toReturn.add(item.convertTo(mapper, key.getType()));
 					}
 				}
+				if (trace != null) {
+					trace.conversion(start);
+				}
 				return toReturn;
-			});
+			}
+		);
+	}
+
+	private static long retryDelay(int count) {
+		return 100L * count * count;
 	}
 
 	private CompletableFuture<Flattener> getItems(int count, Map<String, KeysAndAttributes> items, Flattener flattener) {
 		if (count > maxRetry) {
 			throw new RuntimeException("Failed to get keys from dynamo after " + maxRetry + " attempts");
 		}
-		var delay = CompletableFuture.delayedExecutor(100 * count * count, TimeUnit.MILLISECONDS);
+		deadline.check(Duration.ofMillis(retryDelay(count)));
+		var delay = CompletableFuture.delayedExecutor(retryDelay(count), TimeUnit.MILLISECONDS);
 		return CompletableFuture
 			.supplyAsync(
 				() -> {
 					return client
 						.batchGetItem(builder -> builder.requestItems(items))
 						.thenCompose(response -> {
+							var start = System.nanoTime();
 							var responseItems = response.responses();
 							entityTables.forEach(table -> {
 								flattener.add(table, responseItems.get(table));
 							});
+							merged(start);
 
 							if (!response.unprocessedKeys().isEmpty()) {
-								return getItems(count, response.unprocessedKeys(), flattener);
+								// back off before asking for what the table could not serve this time
+								var next = count + 1;
+								if (trace != null) {
+									trace.retry(retryDelay(next));
+								}
+								return getItems(next, response.unprocessedKeys(), flattener);
 							} else {
 								return CompletableFuture.completedFuture(flattener);
 							}
@@ -559,41 +1060,80 @@ public class DynamoDb extends DatabaseDriver {
 		Class<T> type,
 		TableDataLoader<DatabaseKey<Table>> items
 	) {
+		Class<Table> query = (Class<Table>) type;
+		return traced(
+			"getViaLinks",
+			organisationId,
+			table(type),
+			db -> db
+				.linkedIds(organisationId, entry, type)
+				.thenCompose(ids -> {
+					List<DatabaseKey<Table>> keys = ids.stream().map(link -> createDatabaseKey(organisationId, query, link)).collect(Collectors.toList());
+					return items.loadMany(keys);
+				})
+		);
+	}
+
+	@Override
+	public CompletableFuture<NavigableSet<String>> linkedIds(String organisationId, Table entry, Class<? extends Table> type) {
 		String tableTarget = table(type);
 		var links = getLinks(entry).get(tableTarget);
-		if (links == null) {
-			links = Collections.emptySet();
+		NavigableSet<String> ids = links == null ? new TreeSet<>() : new TreeSet<>(links);
+		if (externalLinks(entry.getClass(), type)) {
+			// entities that have not been migrated yet may still hold some of the links inline
+			return adjacencyTargets(organisationId, table(entry.getClass()), entry.getId(), tableTarget)
+				.thenApply(external -> {
+					ids.addAll(external);
+					return ids;
+				});
 		}
-		Class<Table> query = (Class<Table>) type;
-		List<DatabaseKey<Table>> keys = links.stream().map(link -> createDatabaseKey(organisationId, query, link)).collect(Collectors.toList());
-		return items.loadMany(keys);
+		return CompletableFuture.completedFuture(ids);
 	}
 
 	@Override
 	public <T extends Table> CompletableFuture<List<T>> query(DatabaseQueryKey<T> key) {
+		return traced("query", key.getOrganisationId(), table(key.getQuery().getType()), db -> db.queryEntities(key));
+	}
+
+	private <T extends Table> CompletableFuture<List<T>> queryEntities(DatabaseQueryKey<T> key) {
+		// an overlaid row decides whether the entity matches, so with several tables the filter waits until the rows are merged
+		var filter = key.getQuery().getFilter();
+		var pushDown = filter != null && entityTables.size() == 1;
 		var futures = entityTables
 			.stream()
-			.flatMap(table -> {
-				if (globalEnabled) {
-					return Stream.of(Map.entry(table, "global"), Map.entry(table, key.getOrganisationId()));
-				} else {
-					return Stream.of(Map.entry(table, key.getOrganisationId()));
-				}
-			})
+			.flatMap(table -> queryOrganisations(key.getOrganisationId()).stream().map(organisationId -> Map.entry(table, organisationId)))
 			.map(pair -> {
-				return query(pair.getValue(), pair.getKey(), key.getQuery());
+				return query(pair.getValue(), pair.getKey(), key.getQuery(), pushDown);
 			});
 
 		var future = CompletableFutureUtil.sequence(futures);
+		var sources = entityTables.size() * queryOrganisations(key.getOrganisationId()).size();
 
-		return future.thenApply(results -> {
-			var flattener = Flattener.create(this.entityTables, false);
+		return converting(future, results -> {
+			// each source is already cut to the limit in read order, merging in that same order keeps the right end of the range
+			var start = System.nanoTime();
+			var flattener = Flattener.create(this.entityTables, false, readOrder(key.getQuery(), sources));
 
 			results.forEach(list -> flattener.addItems(list));
-			return flattener.results(mapper, key.getQuery().getType(), Optional.ofNullable(key.getQuery().getLimit()));
+			var limit = Optional.ofNullable(key.getQuery().getLimit());
+			var rows = filter == null || pushDown ? flattener.rows(limit, __ -> true) : flattener.rows(limit, item -> FilterExpression.matches(filter, item));
+			merged(start);
+			return convert(key.getQuery().getType(), rows);
 		});
 	}
 
+	// a single source is left as read, a parallel query reads by parallel hash and pages on the last item read so it must stay last
+	private static Comparator<DynamoItem> readOrder(Query<?> query, int sources) {
+		if (sources == 1) {
+			return null;
+		}
+		Comparator<DynamoItem> order = Comparator.naturalOrder();
+		if (query.getThreadIndex() != null && query.getThreadCount() != null) {
+			order = Comparator.comparing((DynamoItem item) -> Objects.requireNonNullElse(item.getField("parallelHash"), "")).thenComparing(order);
+		}
+		return Boolean.FALSE.equals(query.getScanIndexForward()) ? order.reversed() : order;
+	}
+
 	@Override
 	public <T extends Table> CompletableFuture<List<T>> queryHistory(DatabaseQueryHistoryKey<T> key) {
 		if (this.historyTable == null) {
@@ -739,14 +1279,15 @@ public class DynamoDb extends DatabaseDriver {
 	}
 
 	@Override
-	public <T extends Table> CompletableFuture<List<T>> queryGlobal(Class<T> type, String value) {
+	public <T extends Table> CompletableFuture<List<T>> queryGlobal(Class<T> type, String indexName, String value) {
 		var id = AttributeValue.builder().s(table(type) + ":" + value).build();
+		var index = TableUtil.globalIndexName(indexName);
 
 		CompletableFuture<List<List<DynamoItem>>> future = CompletableFuture.completedFuture(new ArrayList<>());
 		for (var table : entityTables) {
 			future = future
 				.thenCombine(
-					queryGlobal(table, id),
+					queryGlobal(table, index, id),
 					(a, b) -> {
 						a.add(b);
 						return a;
@@ -760,7 +1301,7 @@ public class DynamoDb extends DatabaseDriver {
 		});
 	}
 
-	private CompletableFuture<List<DynamoItem>> queryGlobal(String table, AttributeValue id) {
+	private CompletableFuture<List<DynamoItem>> queryGlobal(String table, String index, AttributeValue id) {
 		Map<String, AttributeValue> keyConditions = new HashMap<>();
 		keyConditions.put(":secondaryGlobal", id);
 
@@ -769,8 +1310,9 @@ public class DynamoDb extends DatabaseDriver {
 			.queryPaginator(
 				r -> r
 					.tableName(table)
-					.indexName("secondaryGlobal")
-					.keyConditionExpression("secondaryGlobal = :secondaryGlobal")
+					.indexName(index)
+					.keyConditionExpression("#index = :secondaryGlobal")
+					.expressionAttributeNames(Map.of("#index", index))
 					.expressionAttributeValues(keyConditions)
 			)
 			.subscribe(response -> {
@@ -785,7 +1327,9 @@ public class DynamoDb extends DatabaseDriver {
 	public <T extends Table> CompletableFuture<List<T>> querySecondary(
 		Class<T> type,
 		String organisationId,
-		String value,
+		String indexName,
+		KeyRange range,
+		boolean consistentRead,
 		TableDataLoader<DatabaseKey<Table>> item
 	) {
 		if (getExtractor(type).isPresent()) {
@@ -793,13 +1337,32 @@ public class DynamoDb extends DatabaseDriver {
 		}
 
 		var organisationIdAttribute = AttributeValue.builder().s(organisationId).build();
-		var id = AttributeValue.builder().s(table(type) + ":" + value).build();
+		var prefix = table(type);
+		var index = TableUtil.secondaryIndexName(indexName);
+
+		// the index projects every attribute, so with a single table the rows can be used as is. Overlaid tables need the merged
+		// copy and consistent reads want the base table, both of those go back through the loader by id
+		if (entityTables.size() == 1 && !consistentRead) {
+			return querySecondary(entityTable, index, organisationIdAttribute, prefix, range, false, false)
+				.thenApply(rows -> {
+					List<T> results = new ArrayList<>(rows.size());
+					for (var row : rows) {
+						T entity = new DynamoItem(entityTable, row).convertTo(mapper, type);
+						@SuppressWarnings("unchecked")
+						var key = (DatabaseKey<Table>) createDatabaseKey(organisationId, type, entity.getId());
+						item.prime(key, entity);
+						results.add(entity);
+					}
+					return results;
+				});
+		}
 
 		CompletableFuture<Set<String>> future = CompletableFuture.completedFuture(new HashSet<>());
 		for (var table : entityTables) {
 			future = future
 				.thenCombine(
-					querySecondary(table, organisationIdAttribute, id),
+					querySecondary(table, index, organisationIdAttribute, prefix, range, true, consistentRead)
+						.thenApply(rows -> rows.stream().map(row -> row.get("id").s()).map(itemId -> itemId.substring(itemId.indexOf(':') + 1)).toList()), // Id contains entity name
 					(a, b) -> {
 						a.addAll(b);
 						return a;
@@ -816,37 +1379,294 @@ public class DynamoDb extends DatabaseDriver {
 		});
 	}
 
-	private CompletableFuture<List<String>> querySecondary(String table, AttributeValue organisationId, AttributeValue id) {
-		Map<String, AttributeValue> keyConditions = new HashMap<>();
-		keyConditions.put(":organisationId", organisationId);
-		keyConditions.put(":secondaryOrganisation", id);
+	private CompletableFuture<List<Map<String, AttributeValue>>> querySecondary(
+		String table,
+		String index,
+		AttributeValue organisationId,
+		String prefix,
+		KeyRange range,
+		boolean idOnly,
+		boolean consistentRead
+	) {
+		Map<String, AttributeValue> keyConditions = new HashMap<>();
+		keyConditions.put(":organisationId", organisationId);
+
+		String condition;
+		if (range.isEquality()) {
+			keyConditions.put(":secondaryOrganisation", AttributeValue.builder().s(prefix + ":" + range.from()).build());
+			condition = "#index = :secondaryOrganisation";
+		} else {
+			condition = rangeCondition("#index", prefix, range, keyConditions);
+		}
+
+		var toReturn = new ArrayList<Map<String, AttributeValue>>();
+		return client
+			.queryPaginator(
+				r -> r
+					.tableName(table)
+					.indexName(index)
+					.keyConditionExpression("organisationId = :organisationId AND " + condition)
+					.expressionAttributeNames(Map.of("#index", index))
+					.expressionAttributeValues(keyConditions)
+					// named indexes are global so only the local index can be read consistently
+					.consistentRead(consistentRead && index.equals(TableUtil.SECONDARY_ORGANISATION))
+					.applyMutation(mutator -> {
+						if (idOnly) {
+							mutator.projectionExpression("id, #index");
+						}
+					})
+			)
+			.subscribe(response -> {
+				response
+					.items()
+					.stream()
+					.filter(row -> range.includes(stripTable(row.get(index).s())))
+					.forEach(toReturn::add);
+			})
+			.thenApply(__ -> {
+				return toReturn;
+			});
+	}
+
+	@Override
+	public <T extends Table> CompletableFuture<Changes<T>> changedSince(
+		String organisationId,
+		Class<T> type,
+		Instant since,
+		String cursor,
+		int limit,
+		TableDataLoader<DatabaseKey<Table>> items
+	) {
+		if (!tracksChanges(type)) {
+			throw new UnsupportedOperationException(table(type) + " does not track changes, hashed types can not and others need @TrackChanges");
+		}
+		var start = cursor == null ? null : decodeChangeCursor(organisationId, cursor);
+		var from = start == null ? TableUtil.changedAt(type, since) : start.get(TableUtil.CHANGED_AT);
+		// deletion markers expire, a replica that has not synced since then may have missed some
+		var oldest = TableUtil.changedAt(type, clock.instant().minus(deletedRetention));
+		if (start != null && from.s().compareTo(oldest.s()) < 0) {
+			throw new IllegalArgumentException("changes are only kept for " + deletedRetention + ", read " + table(type) + " again in full");
+		}
+
+		Map<String, AttributeValue> keyConditions = new HashMap<>();
+		keyConditions.put(":organisationId", AttributeValue.builder().s(organisationId).build());
+		keyConditions.put(":from", from);
+		keyConditions.put(":to", AttributeValue.builder().s(table(type) + ";").build());
+		if (start != null) {
+			keyConditions.put(":id", start.get("id"));
+		}
+
+		// rows changed in the same millisecond are ordered by id, the cursor resumes strictly after the pair it ended on
+		var futures = entityTables
+			.stream()
+			.map(table -> {
+				var subscriber = new DynamoQuerySubscriber(table, limit);
+				client
+					.queryPaginator(
+						r -> r
+							.tableName(table)
+							.indexName(TableUtil.CHANGED_AT)
+							.keyConditionExpression("organisationId = :organisationId AND changedAt BETWEEN :from AND :to")
+							.expressionAttributeValues(keyConditions)
+							.projectionExpression("organisationId, id, changedAt, deleted")
+							.limit(limit)
+							.applyMutation(b -> {
+								if (start != null) {
+									b.filterExpression("changedAt > :from OR id > :id");
+								}
+							})
+					)
+					.subscribe(subscriber);
+				return subscriber.getFuture();
+			});
+
+		return CompletableFutureUtil
+			.sequence(futures)
+			.thenCompose(results -> {
+				var merged = results
+					.stream()
+					.flatMap(List::stream)
+					.sorted(Comparator.comparing((DynamoItem row) -> row.getField(TableUtil.CHANGED_AT)).thenComparing(row -> row.getField("id")))
+					.toList();
+				var hasMore = merged.size() > limit || results.stream().anyMatch(list -> list.size() >= limit);
+				var rows = merged.stream().limit(limit).toList();
+				var nextCursor = rows.isEmpty() ? cursor : encodeChangeCursor(rows.getLast());
+
+				// an entity can change more than once or show up in several tables, only its last change in the page counts
+				var deletedPrefix = DELETED_PREFIX + table(type) + ":";
+				Map<String, DynamoItem> latest = new LinkedHashMap<>();
+				for (var row : rows) {
+					var id = row.getId().startsWith(deletedPrefix) ? row.getId().substring(deletedPrefix.length()) : stripTable(row.getId());
+					latest.remove(id);
+					latest.put(id, row);
+				}
+
+				List<String> deleted = new ArrayList<>();
+				List<DatabaseKey<Table>> keys = new ArrayList<>();
+				latest.forEach((id, row) -> {
+					if (row.isDeleted()) {
+						deleted.add(id);
+					} else {
+						@SuppressWarnings("unchecked")
+						var key = (DatabaseKey<Table>) createDatabaseKey(organisationId, type, id);
+						keys.add(key);
+					}
+				});
+
+				return items
+					.<T>loadMany(keys)
+					.thenApply(loaded -> {
+						List<T> updated = new ArrayList<>(loaded.size());
+						for (int i = 0; i < loaded.size(); i++) {
+							// an overlaid table can hide the row that changed
+							if (loaded.get(i) == null) {
+								deleted.add(keys.get(i).getId());
+							} else {
+								updated.add(loaded.get(i));
+							}
+						}
+						return new Changes<>(updated, deleted, nextCursor, hasMore);
+					});
+			});
+	}
+
+	private static String encodeChangeCursor(DynamoItem row) {
+		var position = row.getField(TableUtil.CHANGED_AT) + "\t" + row.getItem().get("id").s();
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static Map<String, AttributeValue> decodeChangeCursor(String organisationId, String cursor) {
+		String position;
+		try {
+			position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("invalid changes cursor " + cursor, e);
+		}
+		var split = position.indexOf('\t');
+		if (split < 0) {
+			throw new IllegalArgumentException("invalid changes cursor " + cursor);
+		}
+		Map<String, AttributeValue> start = new HashMap<>();
+		start.put("organisationId", AttributeValue.builder().s(organisationId).build());
+		start.put("id", AttributeValue.builder().s(position.substring(split + 1)).build());
+		start.put(TableUtil.CHANGED_AT, AttributeValue.builder().s(position.substring(0, split)).build());
+		return start;
+	}
+
+	private List<String> queryOrganisations(String organisationId) {
+		return globalEnabled ? List.of("global", organisationId) : List.of(organisationId);
+	}
+
+	@Override
+	public <T extends Table> QueryPlan explain(String organisationId, Query<T> query) {
+		var pushDown = query.getFilter() != null && entityTables.size() == 1;
+		var limit = queryLimit(query, pushDown);
+		List<QueryPlan.Request> requests = new ArrayList<>();
+		for (var table : entityTables) {
+			for (var source : queryOrganisations(organisationId)) {
+				var request = queryRequest(source, table, query, pushDown);
+				var filter = request.filterExpression();
+				if (filter == null && query.getFilter() != null) {
+					filter = "applied after merging";
+				}
+				requests
+					.add(
+						new QueryPlan.Request(
+							"Query",
+							table,
+							request.indexName(),
+							source,
+							request.keyConditionExpression(),
+							filter,
+							request.consistentRead(),
+							limit,
+							queryCapacity(limit, request.consistentRead())
+						)
+					);
+			}
+		}
+		return new QueryPlan(requests);
+	}
+
+	@Override
+	public QueryPlan explainGet(String organisationId, Class<? extends Table> type, int count) {
+		// the loader hands the driver one batch at a time, each is a single request asking every table for the organisation and global copies
+		var sources = (globalEnabled ? 2 : 1) * entityTables.size();
+		var tables = String.join(", ", entityTables);
+		List<QueryPlan.Request> requests = new ArrayList<>();
+		for (int done = 0; done < count; done += maxBatchSize()) {
+			var keys = Math.min(maxBatchSize(), count - done) * sources;
+			requests.add(new QueryPlan.Request("BatchGetItem", tables, null, organisationId, keys + " keys", null, true, keys, keys * itemCapacity(true)));
+		}
+		return new QueryPlan(requests);
+	}
+
+	@Override
+	public QueryPlan explainLinkedIds(String organisationId, Table entry, Class<? extends Table> type) {
+		if (!externalLinks(entry.getClass(), type)) {
+			return new QueryPlan(List.of());
+		}
+		var requests = entityTables
+			.stream()
+			.map(
+				table -> new QueryPlan.Request(
+					"Query",
+					table,
+					null,
+					organisationId,
+					"organisationId = :organisationId AND begins_with(id, :prefix)",
+					null,
+					false,
+					null,
+					queryCapacity(null, false)
+				)
+			)
+			.toList();
+		return new QueryPlan(requests);
+	}
+
+	// a query is charged on the total size it reads, an unbounded one is planned as a single page
+	private static double queryCapacity(Integer limit, boolean consistentRead) {
+		var items = limit == null ? 1 : Math.max(limit, 1);
+		var units = Math.ceil((double) items * ASSUMED_ITEM_BYTES / READ_UNIT_BYTES);
+		return consistentRead ? units : units / 2;
+	}
 
-		var toReturn = new ArrayList<String>();
-		return client
-			.queryPaginator(
-				r -> r
-					.tableName(table)
-					.indexName("secondaryOrganisation")
-					.keyConditionExpression("organisationId = :organisationId AND secondaryOrganisation = :secondaryOrganisation")
-					.expressionAttributeValues(keyConditions)
-					.projectionExpression("id")
-			)
-			.subscribe(response -> {
-				response
-					.items()
-					.stream()
-					.map(item -> item.get("id").s())
-					.map(itemId -> {
-						return itemId.substring(itemId.indexOf(':') + 1); // Id contains entity name
-					})
-					.forEach(toReturn::add);
-			})
-			.thenApply(__ -> {
-				return toReturn;
-			});
+	// batch gets round every item, found or not, up to a whole unit
+	private static double itemCapacity(boolean consistentRead) {
+		var units = Math.ceil((double) ASSUMED_ITEM_BYTES / READ_UNIT_BYTES);
+		return consistentRead ? units : units / 2;
+	}
+
+	private CompletableFuture<List<DynamoItem>> query(String organisationId, String table, Query<?> query, boolean pushDown) {
+		var s = new DynamoQuerySubscriber(table, queryLimit(query, pushDown));
+		client.queryPaginator(queryRequest(organisationId, table, query, pushDown)).subscribe(s);
+
+		var range = query.getRange();
+		if (range == null) {
+			return s.getFuture();
+		}
+		return s.getFuture().thenApply(items -> items.stream().filter(item -> range.includes(stripTable(item.getId()))).toList());
+	}
+
+	private static Integer queryLimit(Query<?> query, boolean pushDown) {
+		// an exclusive end can come back as one extra row, ask for it so the limit still fills
+		var range = query.getRange();
+		var limit = query.getLimit();
+		if (limit != null && range != null && !(range.fromInclusive() && range.toInclusive())) {
+			limit = limit + 1;
+		}
+		if (query.getFilter() != null && !pushDown) {
+			limit = null;
+		}
+		return limit;
 	}
 
-	private CompletableFuture<List<DynamoItem>> query(String organisationId, String table, Query<?> query) {
+	private QueryRequest queryRequest(String organisationId, String table, Query<?> query, boolean pushDown) {
+		var range = query.getRange();
+		if (range != null && getExtractor(query.getType()).isPresent()) {
+			throw new UnsupportedOperationException("hashed objects do not support range queries");
+		}
 		var keys = mapWithKeys(organisationId, query.getType(), query.getStartsWith());
 		var organisationIdAttribute = keys.get("organisationId");
 		var id = keys.get("id");
@@ -864,53 +1684,70 @@ public class DynamoDb extends DatabaseDriver {
 			keyConditions.put(":hash", AttributeValue.builder().s(toPaddedBinary(query.getThreadIndex(), query.getThreadCount())).build());
 		} else {
 			parallelRequest = false;
-			if (id != null && !id.s().trim().isEmpty()) {
+			if (range == null && id != null && !id.s().trim().isEmpty()) {
 				index = null;
 				keyConditions.put(":table", id);
 			}
 		}
 
-		var s = new DynamoQuerySubscriber(table, query.getLimit());
-		Boolean finalConsistentRead = consistentRead;
-		String finalIndex = index;
-		client
-			.queryPaginator(r -> {
-				r
-					.tableName(table)
-					.indexName(finalIndex)
-					.consistentRead(finalConsistentRead)
-					.expressionAttributeValues(keyConditions)
-					.applyMutation(b -> {
-						var conditionalExpression = "organisationId = :organisationId";
+		var limit = queryLimit(query, pushDown);
+		var rangeCondition = range == null ? null : rangeCondition("id", table(query.getType()), range, keyConditions);
+		var filter = pushDown ? new FilterExpression(query.getFilter()) : null;
+		if (filter != null) {
+			keyConditions.putAll(filter.getValues());
+		}
 
-						if (keyConditions.containsKey(":table")) {
-							conditionalExpression += " AND begins_with(id, :table)";
-						} else if (keyConditions.containsKey(":hash")) {
-							conditionalExpression += " AND begins_with(parallelHash, :hash)";
-						}
+		var conditionalExpression = "organisationId = :organisationId";
+		if (rangeCondition != null) {
+			conditionalExpression += " AND " + rangeCondition;
+		} else if (keyConditions.containsKey(":table")) {
+			conditionalExpression += " AND begins_with(id, :table)";
+		} else if (keyConditions.containsKey(":hash")) {
+			conditionalExpression += " AND begins_with(parallelHash, :hash)";
+		}
 
-						b.keyConditionExpression(conditionalExpression);
+		var b = QueryRequest
+			.builder()
+			.tableName(table)
+			.indexName(index)
+			.consistentRead(consistentRead)
+			.expressionAttributeValues(keyConditions)
+			.keyConditionExpression(conditionalExpression);
+
+		// the page limit counts rows before the filter, leave dynamo to fill pages and let the subscriber stop
+		if (filter != null) {
+			b.filterExpression(filter.getExpression()).expressionAttributeNames(filter.getNames());
+		} else if (limit != null) {
+			b.limit(limit);
+		}
 
-						if (query.getLimit() != null) {
-							b.limit(query.getLimit());
-						}
+		// before is the start key of a reverse read, the builder has already turned scanIndexForward off
+		var startId = query.getAfter() != null ? query.getAfter() : query.getBefore();
+		if (startId != null) {
+			var start = mapWithKeys(organisationId, query.getType(), startId);
+			if (parallelRequest) {
+				start.put("parallelHash", AttributeValue.builder().s(parallelHash(startId)).build());
+			}
+			b.exclusiveStartKey(start);
+		}
 
-						if (query.getAfter() != null) {
-							var start = mapWithKeys(organisationId, query.getType(), query.getAfter());
-							if (parallelRequest) {
-								start.put("parallelHash", AttributeValue.builder().s(parallelHash(query.getAfter())).build());
-							}
-							b.exclusiveStartKey(start);
-						}
+		if (query.getScanIndexForward() != null) {
+			b.scanIndexForward(query.getScanIndexForward());
+		}
+		return b.build();
+	}
 
-						if (query.getScanIndexForward() != null) {
-							b.scanIndexForward(query.getScanIndexForward());
-						}
-					});
-			})
-			.subscribe(s);
+	// ranges are always sent as BETWEEN so they stay inside the entity's prefix, exclusive ends are dropped once the rows come back
+	private static String rangeCondition(String attribute, String prefix, KeyRange range, Map<String, AttributeValue> values) {
+		var from = prefix + ":" + (range.from() == null ? "" : range.from());
+		var to = range.to() == null ? prefix + ";" : prefix + ":" + range.to(); // ';' sorts straight after ':'
+		values.put(":rangeFrom", AttributeValue.builder().s(from).build());
+		values.put(":rangeTo", AttributeValue.builder().s(to).build());
+		return attribute + " BETWEEN :rangeFrom AND :rangeTo";
+	}
 
-		return s.getFuture();
+	private static String stripTable(String id) {
+		return id.substring(id.indexOf(':') + 1);
 	}
 
 	@Override
@@ -964,7 +1801,7 @@ public class DynamoDb extends DatabaseDriver {
 		BackupTableType backupTableType,
 		BiFunction<ObjectMapper, T, Map<String, AttributeValue>> toAttributes
 	) {
-		List<CompletableFuture<BatchWriteItemResponse>> completableFutures = Lists
+		List<CompletableFuture<?>> completableFutures = Lists
 			.partition(
 				entities
 					.stream()
@@ -976,14 +1813,8 @@ public class DynamoDb extends DatabaseDriver {
 			)
 			.stream()
 			.map(putRequestBatch -> {
-				final var batchPutRequest = BatchWriteItemRequest
-					.builder()
-					.requestItems(Map.of(backupTableType == BackupTableType.History ? historyTable : entityTable, putRequestBatch))
-					.build();
-
-				return client
-					.batchWriteItem(batchPutRequest)
-					.thenCompose(this::batchWriteRetry)
+				// unprocessed items are retried with the same backoff and limit as every other batch write
+				return putItems(0, Map.of(backupTableType == BackupTableType.History ? historyTable : entityTable, putRequestBatch))
 					.exceptionally(failure -> {
 						if (failure.getCause() instanceof ConditionalCheckFailedException) {
 							throw new RevisionMismatchException(failure.getCause());
@@ -997,14 +1828,6 @@ public class DynamoDb extends DatabaseDriver {
 		return CompletableFuture.allOf(completableFutures.toArray(new CompletableFuture[completableFutures.size()]));
 	}
 
-	private CompletableFuture<BatchWriteItemResponse> batchWriteRetry(BatchWriteItemResponse items) {
-		if (items.unprocessedItems().size() > 0) {
-			return client.batchWriteItem(BatchWriteItemRequest.builder().requestItems(items.unprocessedItems()).build()).thenCompose(this::batchWriteRetry);
-		} else {
-			return CompletableFuture.completedFuture(items);
-		}
-	}
-
 	@Override
 	public CompletableFuture<List<BackupItem>> takeBackup(String organisationId) {
 		CompletableFuture<List<List<BackupItem>>> future = CompletableFuture.completedFuture(new ArrayList<>());
@@ -1336,8 +2159,9 @@ public class DynamoDb extends DatabaseDriver {
 
 	@Override
 	public <T extends Table> CompletableFuture<T> link(String organisationId, T entity, Class<? extends Table> class1, List<String> groupIds) {
-		var source = table(entity.getClass());
-
+		if (externalLinks(entity.getClass(), class1)) {
+			return linkExternal(organisationId, entity, class1, groupIds);
+		}
 		var target = table(class1);
 		var existing = getLinks(entity).get(target);
 
@@ -1350,6 +2174,131 @@ public class DynamoDb extends DatabaseDriver {
 		var toRemove = new HashSet<>(existing);
 		toRemove.removeAll(groupIds);
 
+		if (canLinkInTransaction(organisationId, entity, target, toAdd, toRemove)) {
+			return linkInTransaction(organisationId, entity, class1, groupIds, toAdd, toRemove).exceptionallyCompose(failure -> {
+				var cause = failure instanceof CompletionException ? failure.getCause() : failure;
+				if (cause instanceof TransactionCanceledException) {
+					// a side is missing its links map or the revision moved, the per item path resolves both
+					return linkEachSide(organisationId, entity, class1, groupIds, toAdd, toRemove);
+				}
+				return CompletableFuture.failedFuture(cause);
+			});
+		}
+		return linkEachSide(organisationId, entity, class1, groupIds, toAdd, toRemove);
+	}
+
+	private <T extends Table> boolean canLinkInTransaction(String organisationId, T entity, String target, Set<String> toAdd, Set<String> toRemove) {
+		if (1 + toAdd.size() + toRemove.size() > MAX_TRANSACTION_ITEMS) {
+			return false;
+		}
+		// a transaction can not touch the same item twice
+		if (table(entity.getClass()).equals(target) && (toAdd.contains(entity.getId()) || toRemove.contains(entity.getId()))) {
+			return false;
+		}
+		// without a revision check the new revision is unknown as transactions do not return values
+		return getSourceTable(entity).equals(entityTable) && getSourceOrganisationId(entity).equals(organisationId) && entity.getRevision() != 0;
+	}
+
+	private <T extends Table> CompletableFuture<T> linkInTransaction(
+		String organisationId,
+		T entity,
+		Class<? extends Table> class1,
+		List<String> groupIds,
+		Set<String> toAdd,
+		Set<String> toRemove
+	) {
+		var source = table(entity.getClass());
+		var target = table(class1);
+
+		List<TransactWriteItem> items = new ArrayList<>();
+
+		Map<String, AttributeValue> values = new HashMap<>();
+		if (groupIds.isEmpty()) {
+			values.put(":val", AttributeValue.builder().nul(true).build());
+		} else {
+			values.put(":val", AttributeValue.builder().ss(groupIds).build());
+		}
+		values.put(":revisionIncrement", REVISION_INCREMENT);
+		values.put(":revision", AttributeValue.builder().n(Long.toString(entity.getRevision())).build());
+		items.add(
+			linkUpdate(
+				mapWithKeys(organisationId, entity),
+				"SET links.#table = :val ADD revision :revisionIncrement",
+				"attribute_exists(links) AND revision = :revision",
+				target,
+				values
+			)
+		);
+
+		Map<String, AttributeValue> targetValues = new HashMap<>();
+		targetValues.put(":val", AttributeValue.builder().ss(entity.getId()).build());
+		targetValues.put(":revisionIncrement", REVISION_INCREMENT);
+		for (var id : toAdd) {
+			items
+				.add(
+					linkUpdate(
+						mapWithKeys(organisationId, class1, id),
+						"ADD links.#table :val, revision :revisionIncrement",
+						"attribute_exists(links)",
+						source,
+						targetValues
+					)
+				);
+		}
+		for (var id : toRemove) {
+			items
+				.add(
+					linkUpdate(
+						mapWithKeys(organisationId, class1, id),
+						"DELETE links.#table :val ADD revision :revisionIncrement",
+						"attribute_exists(links)",
+						source,
+						targetValues
+					)
+				);
+		}
+
+		return client
+			.transactWriteItems(request -> request.transactItems(items))
+			.thenApply(__ -> {
+				entity.setRevision(entity.getRevision() + 1);
+				setLinks(entity, target, groupIds);
+				return entity;
+			});
+	}
+
+	private TransactWriteItem linkUpdate(
+		Map<String, AttributeValue> key,
+		String updateExpression,
+		String conditionExpression,
+		String table,
+		Map<String, AttributeValue> values
+	) {
+		return TransactWriteItem
+			.builder()
+			.update(
+				update -> update
+					.tableName(entityTable)
+					.key(key)
+					.conditionExpression(conditionExpression)
+					.updateExpression(updateExpression)
+					.expressionAttributeNames(Map.of("#table", table))
+					.expressionAttributeValues(values)
+			)
+			.build();
+	}
+
+	private <T extends Table> CompletableFuture<T> linkEachSide(
+		String organisationId,
+		T entity,
+		Class<? extends Table> class1,
+		List<String> groupIds,
+		Set<String> toAdd,
+		Set<String> toRemove
+	) {
+		var source = table(entity.getClass());
+		var target = table(class1);
+
 		var entityFuture = updateEntityLinks(organisationId, entity, class1, groupIds);
 
 		return entityFuture.thenCompose(e -> {
@@ -1369,6 +2318,220 @@ public class DynamoDb extends DatabaseDriver {
 		});
 	}
 
+	private <T extends Table> CompletableFuture<T> linkExternal(String organisationId, T entity, Class<? extends Table> class1, List<String> groupIds) {
+		var source = table(entity.getClass());
+		var target = table(class1);
+
+		// anything still inline is moved out first so the adjacency rows are the only copy being diffed
+		return migrateLinks(organisationId, entity, class1)
+			.thenCompose(
+				migrated -> adjacencyTargets(organisationId, source, migrated.getId(), target)
+					.thenApply(existing -> {
+						var toAdd = new LinkedHashSet<>(groupIds);
+						toAdd.removeAll(existing);
+
+						var toRemove = new LinkedHashSet<>(existing);
+						toRemove.removeAll(groupIds);
+
+						List<WriteRequest> requests = new ArrayList<>();
+						for (var id : toAdd) {
+							requests.add(adjacencyPut(organisationId, source, migrated.getId(), target, id));
+							requests.add(adjacencyPut(organisationId, target, id, source, migrated.getId()));
+						}
+						for (var id : toRemove) {
+							requests.add(adjacencyDelete(organisationId, source, migrated.getId(), target, id));
+							requests.add(adjacencyDelete(organisationId, target, id, source, migrated.getId()));
+						}
+						return requests;
+					})
+					.thenCompose(this::writeAdjacency)
+					.thenApply(__ -> {
+						// the returned entity carries the revision of any migration and no inline copy that would now be stale
+						getLinks(migrated).remove(target);
+						return migrated;
+					})
+			);
+	}
+
+	@Override
+	public <T extends Table> CompletableFuture<T> migrateLinks(String organisationId, T entity, Class<? extends Table> type) {
+		var source = table(entity.getClass());
+		var target = table(type);
+		var inline = getLinks(entity).get(target);
+		if (inline == null || inline.isEmpty()) {
+			return CompletableFuture.completedFuture(entity);
+		}
+		var ids = new HashSet<>(inline);
+
+		List<WriteRequest> requests = new ArrayList<>();
+		for (var id : ids) {
+			requests.add(adjacencyPut(organisationId, source, entity.getId(), target, id));
+			requests.add(adjacencyPut(organisationId, target, id, source, entity.getId()));
+		}
+
+		// adjacency rows are written before the inline copies are dropped, readers merge both so nothing goes missing in between
+		return writeAdjacency(requests)
+			.thenCompose(__ -> updateEntityLinks(organisationId, entity, type, Collections.emptyList()))
+			.thenCompose(e -> removeLinks(organisationId, type, ids, source, e.getId()).thenApply(__ -> e))
+			.thenApply(e -> {
+				getLinks(e).remove(target);
+				return e;
+			});
+	}
+
+	@Override
+	public CompletableFuture<Boolean> hasExternalLinks(String organisationId, Table entity) {
+		if (!mayLinkExternally(entity.getClass())) {
+			return CompletableFuture.completedFuture(false);
+		}
+		var prefix = adjacencyPrefix(table(entity.getClass()), entity.getId());
+		var futures = entityTables.stream().map(table -> adjacencyExists(table, organisationId, prefix)).toList();
+		return TableCoreUtil.all(futures).thenApply(found -> found.contains(true));
+	}
+
+	private CompletableFuture<Boolean> adjacencyExists(String table, String organisationId, String prefix) {
+		Map<String, AttributeValue> keyConditions = new HashMap<>();
+		keyConditions.put(":organisationId", AttributeValue.builder().s(organisationId).build());
+		keyConditions.put(":prefix", AttributeValue.builder().s(prefix).build());
+		return client
+			.query(
+				r -> r
+					.tableName(table)
+					.keyConditionExpression("organisationId = :organisationId AND begins_with(id, :prefix)")
+					.projectionExpression("id")
+					.expressionAttributeValues(keyConditions)
+					.limit(1)
+			)
+			.thenApply(response -> !response.items().isEmpty());
+	}
+
+	// external links need a class path, so without one there are no adjacency rows to look for
+	private boolean mayLinkExternally(Class<? extends Table> type) {
+		if (classes == null) {
+			return false;
+		}
+		if (!externalLinkTables(type).isEmpty()) {
+			return true;
+		}
+		var table = table(type);
+		return classes.values().stream().anyMatch(other -> externalLinkTables(other).contains(table));
+	}
+
+	private boolean externalLinks(Class<? extends Table> a, Class<? extends Table> b) {
+		if (!externalLinkTables(a).contains(table(b)) && !externalLinkTables(b).contains(table(a))) {
+			return false;
+		}
+		if (classes == null) {
+			// deletes find adjacency rows through the types that declare them, which only a class path can list
+			throw new RuntimeException("classPath is required to use external links between " + table(a) + " and " + table(b));
+		}
+		return true;
+	}
+
+	private Set<String> externalLinkTables(Class<? extends Table> type) {
+		return externalLinkTables
+			.computeIfAbsent(
+				type,
+				t -> {
+					var annotation = TableCoreUtil.baseClass(t).getAnnotation(ExternalLinks.class);
+					if (annotation == null) {
+						return Set.of();
+					}
+					return Stream.of(annotation.value()).map(TableCoreUtil::table).collect(Collectors.toSet());
+				}
+			);
+	}
+
+	private String adjacencyPrefix(String sourceTable, String sourceId) {
+		return reservedPrefix("link") + sourceTable + ":" + sourceId + "#";
+	}
+
+	private WriteRequest adjacencyPut(String organisationId, String sourceTable, String sourceId, String targetTable, String targetId) {
+		Map<String, AttributeValue> item = new HashMap<>();
+		item.put("organisationId", AttributeValue.builder().s(organisationId).build());
+		item.put("id", AttributeValue.builder().s(adjacencyPrefix(sourceTable, sourceId) + targetTable + "#" + targetId).build());
+		item.put("targetTable", AttributeValue.builder().s(targetTable).build());
+		item.put("targetId", AttributeValue.builder().s(targetId).build());
+		return WriteRequest.builder().putRequest(builder -> builder.item(item)).build();
+	}
+
+	private WriteRequest adjacencyDelete(String organisationId, String sourceTable, String sourceId, String targetTable, String targetId) {
+		Map<String, AttributeValue> key = new HashMap<>();
+		key.put("organisationId", AttributeValue.builder().s(organisationId).build());
+		key.put("id", AttributeValue.builder().s(adjacencyPrefix(sourceTable, sourceId) + targetTable + "#" + targetId).build());
+		return WriteRequest.builder().deleteRequest(builder -> builder.key(key)).build();
+	}
+
+	private CompletableFuture<Void> writeAdjacency(List<WriteRequest> requests) {
+		// both sides of a self link are the same row, a batch may not name one key twice
+		Map<String, WriteRequest> unique = new LinkedHashMap<>();
+		for (var request : requests) {
+			var key = request.putRequest() != null ? request.putRequest().item() : request.deleteRequest().key();
+			unique.put(key.get("id").s(), request);
+		}
+		var futures = Lists
+			.partition(new ArrayList<>(unique.values()), batchWriteSize)
+			.stream()
+			.map(chunk -> putItems(0, Map.of(entityTable, chunk)))
+			.toArray(CompletableFuture[]::new);
+		return CompletableFuture.allOf(futures);
+	}
+
+	/**
+	 * @return ids linked through adjacency rows across every entity table, in key order
+	 */
+	private CompletableFuture<Set<String>> adjacencyTargets(String organisationId, String sourceTable, String sourceId, String targetTable) {
+		var futures = entityTables
+			.stream()
+			.map(table -> adjacencyRows(table, organisationId, adjacencyPrefix(sourceTable, sourceId) + targetTable + "#"))
+			.toList();
+		return TableCoreUtil
+			.all(futures)
+			.thenApply(tables -> {
+				Set<String> ids = new TreeSet<>();
+				tables.forEach(rows -> rows.forEach(row -> ids.add(row.get("targetId").s())));
+				return ids;
+			});
+	}
+
+	private CompletableFuture<List<Map<String, AttributeValue>>> adjacencyRows(String table, String organisationId, String prefix) {
+		Map<String, AttributeValue> keyConditions = new HashMap<>();
+		keyConditions.put(":organisationId", AttributeValue.builder().s(organisationId).build());
+		keyConditions.put(":prefix", AttributeValue.builder().s(prefix).build());
+
+		List<Map<String, AttributeValue>> rows = Collections.synchronizedList(new ArrayList<>());
+		return client
+			.queryPaginator(
+				r -> r
+					.tableName(table)
+					.keyConditionExpression("organisationId = :organisationId AND begins_with(id, :prefix)")
+					.projectionExpression("targetTable, targetId")
+					.expressionAttributeValues(keyConditions)
+			)
+			.subscribe(response -> rows.addAll(response.items()))
+			.thenApply(__ -> rows);
+	}
+
+	private <T extends Table> CompletableFuture<Void> deleteAdjacency(String organisationId, T entity) {
+		if (!mayLinkExternally(entity.getClass())) {
+			return CompletableFuture.completedFuture(null);
+		}
+		var source = table(entity.getClass());
+		var futures = entityTables.stream().map(table -> adjacencyRows(table, organisationId, adjacencyPrefix(source, entity.getId()))).toList();
+		return TableCoreUtil
+			.all(futures)
+			.thenCompose(tables -> {
+				List<WriteRequest> requests = new ArrayList<>();
+				for (var row : tables.stream().flatMap(List::stream).toList()) {
+					var targetTable = row.get("targetTable").s();
+					var targetId = row.get("targetId").s();
+					requests.add(adjacencyDelete(organisationId, source, entity.getId(), targetTable, targetId));
+					requests.add(adjacencyDelete(organisationId, targetTable, targetId, source, entity.getId()));
+				}
+				return writeAdjacency(requests);
+			});
+	}
+
 	@Override
 	public <T extends Table> CompletableFuture<T> unlink(
 		final String organisationId,
@@ -1376,6 +2539,21 @@ public class DynamoDb extends DatabaseDriver {
 		final Class<? extends Table> clazz,
 		final String targetId
 	) {
+		if (externalLinks(entity.getClass(), clazz)) {
+			var source = table(entity.getClass());
+			var target = table(clazz);
+			return migrateLinks(organisationId, entity, clazz)
+				.thenCompose(
+					e -> writeAdjacency(
+						List
+							.of(
+								adjacencyDelete(organisationId, source, entity.getId(), target, targetId),
+								adjacencyDelete(organisationId, target, targetId, source, entity.getId())
+							)
+					)
+						.thenApply(__ -> e)
+				);
+		}
 		final var updateEntityLinksRequest = createRemoveLinkRequest(organisationId, entity, clazz, targetId);
 
 		return client
@@ -1430,6 +2608,10 @@ public class DynamoDb extends DatabaseDriver {
 	}
 
 	public <T extends Table> CompletableFuture<T> deleteLinks(String organisationId, T entity) {
+		return deleteAdjacency(organisationId, entity).thenCompose(__ -> deleteInlineLinks(organisationId, entity));
+	}
+
+	private <T extends Table> CompletableFuture<T> deleteInlineLinks(String organisationId, T entity) {
 		if (getLinks(entity).isEmpty()) {
 			return CompletableFuture.completedFuture(entity);
 		}
@@ -1706,67 +2888,204 @@ public class DynamoDb extends DatabaseDriver {
 	}
 
 	@Override
-	protected ScanResult startTableScan(TableScanQuery tableScanQuery, int segment, Object from) {
-		return startTableScan(tableScanQuery, segment, from, entityTable);
+	protected boolean isThrottling(Throwable failure) {
+		return (
+			failure instanceof ProvisionedThroughputExceededException ||
+			failure instanceof RequestLimitExceededException ||
+			(failure instanceof SdkServiceException service && service.isThrottlingException())
+		);
 	}
 
-	private ScanResult startTableScan(TableScanQuery tableScanQuery, int segment, Object from, String table) {
-		var builder = ScanRequest.builder().tableName(table).totalSegments(tableScanQuery.parallelism()).segment(segment);
+	@Override
+	protected List<String> scanTables(TableScanQuery tableScanQuery) {
+		var tables = new ArrayList<>(entityTables);
+		if (tableScanQuery.history() && historyTable != null) {
+			tables.add(historyTable);
+		}
+		return tables;
+	}
 
-		if (from != null) {
-			var startKey = TableUtil.toAttributes(mapper, from);
-			builder.exclusiveStartKey(startKey);
+	@Override
+	protected CompletableFuture<ScanResult> scanPage(TableScanQuery tableScanQuery, String table, int segment, Map<String, String> from) {
+		if (classes == null) {
+			throw new IllegalStateException("table scans need the class path to be set to know which type each row is");
 		}
+		return traced("scan", null, null, db -> db.scan(tableScanQuery, table, segment, from));
+	}
 
-		var scan = client.scan(b -> b.tableName(entityTables.getLast()).totalSegments(tableScanQuery.parallelism()).segment(segment)).join();
+	private CompletableFuture<ScanResult> scan(TableScanQuery tableScanQuery, String table, int segment, Map<String, String> from) {
+		var builder = ScanRequest.builder().tableName(table).totalSegments(tableScanQuery.parallelism()).segment(segment);
+		if (from != null) {
+			builder.exclusiveStartKey(startKey(from));
+		}
+		var history = table.equals(historyTable);
+		var index = entityTables.indexOf(table);
+		var above = history ? List.<String>of() : entityTables.subList(index + 1, entityTables.size());
+		return client
+			.scan(builder.build())
+			.thenCompose(
+				scan -> shadowed(above, scan.items())
+					.thenApply(hidden -> {
+						var items = new ArrayList<ScanResult.Item<?>>();
+						for (var item : scan.items()) {
+							if (!hidden.isEmpty() && hidden.contains(scanKey(item))) {
+								continue;
+							}
+							var scanned = history ? historyItem(item) : entityItem(table, item);
+							if (scanned != null) {
+								items.add(scanned);
+							}
+						}
+						return new ScanResult(items, scan.lastEvaluatedKey().isEmpty() ? null : cursor(scan.lastEvaluatedKey()));
+					})
+			);
+	}
 
-		var items = new ArrayList<ScanResult.Item<?>>();
-		for (var item : scan.items()) {
-			if (!item.containsKey("id") || !item.containsKey("organisationId") || !item.containsKey("item")) {
-				continue;
-			}
-			var id = item.get("id").s();
-			var organisationId = item.get("organisationId").s();
-			var innerItem = item.get("item").m();
-			if (innerItem == null || !innerItem.containsKey("id")) {
-				continue;
+	// a row of a lower table that a table above also has, live or deleted, is handed over when that table is scanned or not at all
+	private CompletableFuture<Set<Map<String, AttributeValue>>> shadowed(List<String> above, List<Map<String, AttributeValue>> rows) {
+		var keys = rows.stream().filter(row -> row.containsKey("organisationId") && row.containsKey("id")).map(DynamoDb::scanKey).toList();
+		if (above.isEmpty() || keys.isEmpty()) {
+			return CompletableFuture.completedFuture(Set.of());
+		}
+		Set<Map<String, AttributeValue>> shadowed = ConcurrentHashMap.newKeySet();
+		var size = Math.max(1, 100 / above.size());
+		var batches = new ArrayList<CompletableFuture<Void>>();
+		for (int i = 0; i < keys.size(); i += size) {
+			var batch = keys.subList(i, Math.min(keys.size(), i + size));
+			Map<String, KeysAndAttributes> items = new HashMap<>();
+			for (var table : above) {
+				items.put(table, KeysAndAttributes.builder().keys(batch).projectionExpression("organisationId, id").consistentRead(true).build());
 			}
-			var fullId = innerItem.get("id").s();
+			batches.add(shadowed(0, items, shadowed));
+		}
+		return CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new)).thenApply(__ -> shadowed);
+	}
 
-			String typeId;
-			if (id.endsWith(fullId)) {
-				// not hashed
-				typeId = id.substring(0, id.indexOf(":"));
-			} else {
-				// hashed
-				var parts = organisationId.split(":");
-				typeId = parts[1];
-				organisationId = parts[0];
-			}
-			var type = this.classes.get(typeId);
-			if (type != null) {
-				var entity = new DynamoItem(table, item).convertTo(mapper, type);
+	private CompletableFuture<Void> shadowed(int count, Map<String, KeysAndAttributes> items, Set<Map<String, AttributeValue>> shadowed) {
+		if (count > maxRetry) {
+			return CompletableFuture.failedFuture(new RuntimeException("Failed to get keys from dynamo after " + maxRetry + " attempts"));
+		}
+		var delay = CompletableFuture.delayedExecutor(retryDelay(count), TimeUnit.MILLISECONDS);
+		return CompletableFuture
+			.supplyAsync(() -> client.batchGetItem(builder -> builder.requestItems(items)), delay)
+			.thenCompose(t -> t)
+			.thenCompose(response -> {
+				response.responses().values().forEach(rows -> rows.forEach(row -> shadowed.add(scanKey(row))));
+				if (!response.unprocessedKeys().isEmpty()) {
+					return shadowed(count + 1, response.unprocessedKeys(), shadowed);
+				}
+				return CompletableFuture.completedFuture(null);
+			});
+	}
 
-				var orgIdFinal = organisationId;
-				items
-					.add(
-						new Item<Table>(
-							organisationId,
-							entity,
-							replacement -> put(orgIdFinal, replacement, true, false).join(),
-							delete -> {
-								delete(orgIdFinal, delete).join();
-							}
-						)
-					);
-			}
+	private static Map<String, AttributeValue> scanKey(Map<String, AttributeValue> row) {
+		return Map.of("organisationId", row.get("organisationId"), "id", row.get("id"));
+	}
+
+	private Item<Table> entityItem(String table, Map<String, AttributeValue> item) {
+		if (!item.containsKey("id") || !item.containsKey("organisationId") || !item.containsKey("item")) {
+			return null;
+		}
+		if (item.containsKey("deleted") && Boolean.TRUE.equals(item.get("deleted").bool())) {
+			return null;
+		}
+		var id = item.get("id").s();
+		var organisationId = item.get("organisationId").s();
+		var innerItem = item.get("item").m();
+		if (innerItem == null || !innerItem.containsKey("id")) {
+			return null;
+		}
+		var fullId = innerItem.get("id").s();
+
+		String typeId;
+		if (id.endsWith(fullId)) {
+			// not hashed
+			typeId = id.substring(0, id.indexOf(":"));
+		} else {
+			// hashed
+			var parts = organisationId.split(":");
+			typeId = parts[1];
+			organisationId = parts[0];
 		}
+		var type = this.classes.get(typeId);
+		if (type == null) {
+			return null;
+		}
+		var entity = convert(type, List.of(new DynamoItem(table, item))).getFirst();
+		var orgIdFinal = organisationId;
+		// updaters run on the scan executor and expect the write to be done once replace or delete returns, so these block
+		return new Item<Table>(
+			organisationId,
+			entity,
+			replacement -> put(orgIdFinal, replacement, true, false).join(),
+			delete -> {
+				delete(orgIdFinal, delete).join();
+			}
+		);
+	}
 
-		Object next = null;
-		if (!scan.lastEvaluatedKey().isEmpty()) {
-			next = TableUtil.convertTo(mapper, scan.lastEvaluatedKey(), Object.class);
+	// a revision is rewritten or removed in place, its key stays the same
+	private Item<Table> historyItem(Map<String, AttributeValue> item) {
+		if (!item.containsKey("id") || !item.containsKey("organisationId") || !item.containsKey("item")) {
+			return null;
+		}
+		var id = item.get("id").s();
+		var type = this.classes.get(id.substring(0, id.indexOf(":")));
+		if (type == null) {
+			return null;
 		}
+		var entity = new DynamoItem(historyTable, item).convertTo(mapper, type);
+		var key = Map.of("organisationIdType", item.get("organisationIdType"), "idRevision", item.get("idRevision"));
+		return new Item<Table>(
+			item.get("organisationId").s(),
+			entity,
+			replacement -> {
+				var entries = TableUtil.toAttributes(mapper, replacement);
+				entries.remove("revision");
+				var row = new HashMap<>(item);
+				row.put("item", AttributeValue.builder().m(entries).build());
+				client.putItem(b -> b.tableName(historyTable).item(row)).join();
+			},
+			delete -> client.deleteItem(b -> b.tableName(historyTable).key(key)).join(),
+			true
+		);
+	}
+
+	// scan positions are kept as plain strings so they can be stored, the binary keys of the history table included
+	private static Map<String, String> cursor(Map<String, AttributeValue> key) {
+		var cursor = new HashMap<String, String>();
+		key.forEach((name, value) -> {
+			if (value.s() != null) {
+				cursor.put(name, "S:" + value.s());
+			} else if (value.n() != null) {
+				cursor.put(name, "N:" + value.n());
+			} else if (value.b() != null) {
+				cursor.put(name, "B:" + Base64.getEncoder().encodeToString(value.b().asByteArray()));
+			} else {
+				throw new IllegalStateException("unsupported key attribute " + name);
+			}
+		});
+		return cursor;
+	}
 
-		return new ScanResult(items, next);
+	private static Map<String, AttributeValue> startKey(Map<String, String> from) {
+		var key = new HashMap<String, AttributeValue>();
+		from.forEach((name, value) -> {
+			if (value.indexOf(':') != 1) {
+				throw new IllegalArgumentException("not a scan position " + from);
+			}
+			var content = value.substring(2);
+			key
+				.put(
+					name,
+					switch (value.substring(0, 2)) {
+						case "S:" -> AttributeValue.builder().s(content).build();
+						case "N:" -> AttributeValue.builder().n(content).build();
+						case "B:" -> AttributeValue.builder().b(SdkBytes.fromByteArray(Base64.getDecoder().decode(content))).build();
+						default -> throw new IllegalArgumentException("not a scan position " + from);
+					}
+				);
+		});
+		return key;
 	}
 }
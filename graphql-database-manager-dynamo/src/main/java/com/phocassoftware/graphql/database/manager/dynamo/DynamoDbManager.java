@@ -14,9 +14,14 @@ package com.phocassoftware.graphql.database.manager.dynamo;
 
 import tools.jackson.databind.ObjectMapper;
 import com.phocassoftware.graphql.database.manager.DatabaseDriver;
+import com.phocassoftware.graphql.database.manager.DatabaseExecutors;
+import com.phocassoftware.graphql.database.manager.DatabaseListener;
 import com.phocassoftware.graphql.database.manager.DatabaseManager;
+import com.phocassoftware.graphql.database.manager.util.TimeOrderedIdGenerator;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -32,8 +37,15 @@ public final class DynamoDbManager extends DatabaseManager {
 	private final Supplier<String> idGenerator;
 	private final DynamoDbAsyncClient client;
 
-	private DynamoDbManager(ObjectMapper mapper, Supplier<String> idGenerator, DynamoDbAsyncClient client, DatabaseDriver dynamoDb) {
-		super(dynamoDb);
+	private DynamoDbManager(
+		ObjectMapper mapper,
+		Supplier<String> idGenerator,
+		DynamoDbAsyncClient client,
+		DatabaseDriver dynamoDb,
+		DatabaseListener listener,
+		DatabaseExecutors executors
+	) {
+		super(dynamoDb, listener, executors);
 		this.mapper = mapper;
 		this.idGenerator = idGenerator;
 		this.client = client;
@@ -58,6 +70,10 @@ public final class DynamoDbManager extends DatabaseManager {
 		private String classPath = null;
 
 		private String parallelIndex = null;
+		private DatabaseListener listener = DatabaseListener.NONE;
+		private DatabaseExecutors executors = DatabaseExecutors.VIRTUAL;
+		private Clock clock = Clock.systemUTC();
+		private Duration deletedRetention = DynamoDb.DELETED_RETENTION;
 
 		public DyanmoDbManagerBuilder dynamoDbAsyncClient(DynamoDbAsyncClient client) {
 			this.client = client;
@@ -84,11 +100,23 @@ public final class DynamoDbManager extends DatabaseManager {
 			return this;
 		}
 
+		/**
+		 * Defaults to random UUIDs
+		 */
 		public DyanmoDbManagerBuilder idGenerator(Supplier<String> idGenerator) {
 			this.idGenerator = idGenerator;
 			return this;
 		}
 
+		/**
+		 * Uses a {@link TimeOrderedIdGenerator}, so ids of new entities sort by when they were created. Ids are no longer UUIDs, anything
+		 * parsing them as one has to change first
+		 */
+		public DyanmoDbManagerBuilder timeOrderedIds() {
+			this.idGenerator = new TimeOrderedIdGenerator();
+			return this;
+		}
+
 		public DyanmoDbManagerBuilder dynamoDb(final DatabaseDriver database) {
 			this.database = database;
 			return this;
@@ -129,6 +157,42 @@ public final class DynamoDbManager extends DatabaseManager {
 			return this;
 		}
 
+		/**
+		 * Told about the capacity every database consumes and the operations it runs, for billing, throttling tenants or a
+		 * {@link com.phocassoftware.graphql.database.manager.SlowOperationLog}
+		 */
+		public DyanmoDbManagerBuilder listener(DatabaseListener listener) {
+			this.listener = Objects.requireNonNull(listener);
+			return this;
+		}
+
+		/**
+		 * Where database work runs, use {@link com.phocassoftware.graphql.database.manager.BoundedExecutor} to keep scans and imports
+		 * from starving requests
+		 */
+		public DyanmoDbManagerBuilder executors(DatabaseExecutors executors) {
+			this.executors = Objects.requireNonNull(executors);
+			return this;
+		}
+
+		/**
+		 * Stamps created, updated and changed times
+		 */
+		public DyanmoDbManagerBuilder clock(Clock clock) {
+			this.clock = Objects.requireNonNull(clock);
+			return this;
+		}
+
+		/**
+		 * How long deletions of tracked types are kept for changedSince, removed through the table's ttl attribute. A replica whose
+		 * cursor is older has to read everything again.
+		 */
+		public DyanmoDbManagerBuilder deletedRetention(Duration deletedRetention) {
+			Preconditions.checkArgument(deletedRetention.isPositive(), "Deleted retention must be positive");
+			this.deletedRetention = deletedRetention;
+			return this;
+		}
+
 		public DynamoDbManager build() {
 			Preconditions.checkNotNull(tables, "Tables must be set");
 			Preconditions.checkArgument(!tables.isEmpty(), "Empty table array");
@@ -144,10 +208,24 @@ public final class DynamoDbManager extends DatabaseManager {
 			database = Objects
 				.requireNonNullElse(
 					database,
-					new DynamoDb(mapper, tables, historyTable, client, idGenerator, batchWriteSize, maxRetry, globalEnabled, hash, classPath, parallelIndex)
+					new DynamoDb(
+						mapper,
+						tables,
+						historyTable,
+						client,
+						idGenerator,
+						batchWriteSize,
+						maxRetry,
+						globalEnabled,
+						hash,
+						classPath,
+						parallelIndex,
+						clock,
+						deletedRetention
+					)
 				);
 
-			return new DynamoDbManager(mapper, idGenerator, client, database);
+			return new DynamoDbManager(mapper, idGenerator, client, database, listener, executors);
 		}
 	}
 
@@ -0,0 +1,92 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.phocassoftware.graphql.database.manager.dynamo;
+
+import com.phocassoftware.graphql.database.manager.ScanCheckpoint;
+import com.phocassoftware.graphql.database.manager.ScanCheckpointStore;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * Keeps one item per segment in a table keyed on organisationId and id, an entity table works as scans skip these items. The
+ * items of a checkpoint share the partition "scan-checkpoint:" followed by its id.
+ */
+public class DynamoDbScanCheckpointStore implements ScanCheckpointStore {
+
+	private final DynamoDbAsyncClient client;
+	private final String table;
+
+	public DynamoDbScanCheckpointStore(DynamoDbAsyncClient client, String table) {
+		this.client = client;
+		this.table = table;
+	}
+
+	@Override
+	public CompletableFuture<Map<Integer, ScanCheckpoint>> load(String checkpointId) {
+		var s = new DynamoQuerySubscriber(table);
+		client
+			.queryPaginator(
+				b -> b
+					.tableName(table)
+					.consistentRead(true)
+					.keyConditionExpression("organisationId = :organisationId")
+					.expressionAttributeValues(Map.of(":organisationId", AttributeValue.fromS(partition(checkpointId))))
+			)
+			.subscribe(s);
+		return s
+			.getFuture()
+			.thenApply(items -> {
+				var checkpoints = new HashMap<Integer, ScanCheckpoint>();
+				for (var item : items) {
+					checkpoints.put(Integer.parseInt(item.getId()), checkpoint(item.getItem()));
+				}
+				return checkpoints;
+			});
+	}
+
+	@Override
+	public CompletableFuture<Void> save(String checkpointId, int segment, ScanCheckpoint checkpoint) {
+		var item = new HashMap<String, AttributeValue>();
+		item.put("organisationId", AttributeValue.fromS(partition(checkpointId)));
+		item.put("id", AttributeValue.fromS(Integer.toString(segment)));
+		item.put("segments", AttributeValue.fromN(Integer.toString(checkpoint.segments())));
+		item.put("complete", AttributeValue.fromBool(checkpoint.complete()));
+		if (checkpoint.table() != null) {
+			item.put("table", AttributeValue.fromS(checkpoint.table()));
+		}
+		if (checkpoint.position() != null) {
+			var position = new HashMap<String, AttributeValue>();
+			checkpoint.position().forEach((name, value) -> position.put(name, AttributeValue.fromS(value)));
+			item.put("position", AttributeValue.fromM(position));
+		}
+		return client.putItem(b -> b.tableName(table).item(item)).thenApply(__ -> null);
+	}
+
+	private static String partition(String checkpointId) {
+		return "scan-checkpoint:" + checkpointId;
+	}
+
+	private static ScanCheckpoint checkpoint(Map<String, AttributeValue> item) {
+		Map<String, String> position = null;
+		if (item.containsKey("position")) {
+			position = new HashMap<>();
+			for (var entry : item.get("position").m().entrySet()) {
+				position.put(entry.getKey(), entry.getValue().s());
+			}
+		}
+		var table = item.containsKey("table") ? item.get("table").s() : null;
+		return new ScanCheckpoint(Integer.parseInt(item.get("segments").n()), table, position, item.get("complete").bool());
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.phocassoftware.graphql.database.manager.dynamo;
+
+import com.phocassoftware.graphql.database.manager.QueryFilter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * Compiles a {@link QueryFilter} against the stored item attribute, the same filter can be evaluated against rows that have
+ * already been read when it can not be pushed down.
+ */
+final class FilterExpression {
+
+	private static final int MAX_IN_OPERANDS = 100;
+
+	private final Map<String, String> names = new HashMap<>();
+	private final Map<String, String> placeholders = new HashMap<>();
+	private final Map<String, AttributeValue> values = new HashMap<>();
+	private final String expression;
+
+	FilterExpression(QueryFilter filter) {
+		names.put("#item", "item");
+		this.expression = compile(filter);
+	}
+
+	String getExpression() {
+		return expression;
+	}
+
+	Map<String, String> getNames() {
+		return names;
+	}
+
+	Map<String, AttributeValue> getValues() {
+		return values;
+	}
+
+	private String compile(QueryFilter filter) {
+		return switch (filter) {
+			case QueryFilter.Compare compare -> path(compare.path()) + " " + operator(compare.operator()) + " " + value(compare.value());
+			case QueryFilter.In in -> {
+				var path = path(in.path());
+				List<String> chunks = new ArrayList<>();
+				for (int i = 0; i < in.values().size(); i += MAX_IN_OPERANDS) {
+					var chunk = in.values().subList(i, Math.min(i + MAX_IN_OPERANDS, in.values().size()));
+					chunks.add(path + " IN (" + chunk.stream().map(this::value).collect(Collectors.joining(", ")) + ")");
+				}
+				yield chunks.size() == 1 ? chunks.get(0) : "(" + String.join(" OR ", chunks) + ")";
+			}
+			case QueryFilter.Exists exists -> (exists.exists() ? "attribute_exists(" : "attribute_not_exists(") + path(exists.path()) + ")";
+			case QueryFilter.BeginsWith beginsWith -> "begins_with(" + path(beginsWith.path()) + ", " + value(beginsWith.prefix()) + ")";
+			case QueryFilter.And and -> join(and.filters(), " AND ");
+			case QueryFilter.Or or -> join(or.filters(), " OR ");
+			case QueryFilter.Not not -> "NOT (" + compile(not.filter()) + ")";
+		};
+	}
+
+	private String join(List<QueryFilter> filters, String separator) {
+		return "(" + filters.stream().map(this::compile).collect(Collectors.joining(separator)) + ")";
+	}
+
+	private String path(String path) {
+		var builder = new StringBuilder("#item");
+		for (var part : path.split("\\.")) {
+			var placeholder = placeholders
+				.computeIfAbsent(
+					part,
+					name -> {
+						var key = "#filter" + placeholders.size();
+						names.put(key, name);
+						return key;
+					}
+				);
+			builder.append('.').append(placeholder);
+		}
+		return builder.toString();
+	}
+
+	private String value(Object value) {
+		var placeholder = ":filter" + values.size();
+		values.put(placeholder, attribute(value));
+		return placeholder;
+	}
+
+	private static String operator(QueryFilter.Operator operator) {
+		return switch (operator) {
+			case EQ -> "=";
+			case NE -> "<>";
+			case LT -> "<";
+			case LE -> "<=";
+			case GT -> ">";
+			case GE -> ">=";
+		};
+	}
+
+	private static AttributeValue attribute(Object value) {
+		if (value instanceof Number) {
+			return AttributeValue.builder().n(value.toString()).build();
+		}
+		if (value instanceof Boolean bool) {
+			return AttributeValue.builder().bool(bool).build();
+		}
+		return AttributeValue.builder().s((String) value).build();
+	}
+
+	static boolean matches(QueryFilter filter, DynamoItem item) {
+		return matches(filter, item.getItem().get("item"));
+	}
+
+	private static boolean matches(QueryFilter filter, AttributeValue item) {
+		return switch (filter) {
+			case QueryFilter.Compare compare -> {
+				var attribute = resolve(item, compare.path());
+				if (attribute == null) {
+					yield compare.operator() == QueryFilter.Operator.NE;
+				}
+				if (compare.operator() == QueryFilter.Operator.EQ) {
+					yield equal(attribute, compare.value());
+				}
+				if (compare.operator() == QueryFilter.Operator.NE) {
+					yield !equal(attribute, compare.value());
+				}
+				if (attribute.n() == null) {
+					yield false;
+				}
+				var result = new BigDecimal(attribute.n()).compareTo(new BigDecimal(compare.value().toString()));
+				yield switch (compare.operator()) {
+					case LT -> result < 0;
+					case LE -> result <= 0;
+					case GT -> result > 0;
+					default -> result >= 0;
+				};
+			}
+			case QueryFilter.In in -> {
+				var attribute = resolve(item, in.path());
+				yield attribute != null && in.values().stream().anyMatch(value -> equal(attribute, value));
+			}
+			case QueryFilter.Exists exists -> (resolve(item, exists.path()) != null) == exists.exists();
+			case QueryFilter.BeginsWith beginsWith -> {
+				var attribute = resolve(item, beginsWith.path());
+				yield attribute != null && attribute.s() != null && attribute.s().startsWith(beginsWith.prefix());
+			}
+			case QueryFilter.And and -> and.filters().stream().allMatch(child -> matches(child, item));
+			case QueryFilter.Or or -> or.filters().stream().anyMatch(child -> matches(child, item));
+			case QueryFilter.Not not -> !matches(not.filter(), item);
+		};
+	}
+
+	private static AttributeValue resolve(AttributeValue item, String path) {
+		var current = item;
+		for (var part : path.split("\\.")) {
+			if (current == null || !current.hasM()) {
+				return null;
+			}
+			current = current.m().get(part);
+		}
+		return current;
+	}
+
+	private static boolean equal(AttributeValue attribute, Object value) {
+		if (value instanceof Number) {
+			return attribute.n() != null && new BigDecimal(attribute.n()).compareTo(new BigDecimal(value.toString())) == 0;
+		}
+		if (value instanceof Boolean bool) {
+			return bool.equals(attribute.bool());
+		}
+		return value.equals(attribute.s());
+	}
+}
@@ -17,6 +17,8 @@ import com.phocassoftware.graphql.database.manager.Table;
 import com.phocassoftware.graphql.database.manager.annotations.Hash;
 
 import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 
@@ -24,11 +26,21 @@ public abstract class Flattener {
 
 	public static Flattener create(List<String> entityTables, boolean b) {
 		if (entityTables.size() > 1) {
-			return new FlattenerMulti(entityTables, b);
+			return new FlattenerMulti(entityTables, b, Comparator.naturalOrder());
 		}
 		return new FlattenerSingle(b);
 	}
 
+	/**
+	 * @param order how several sources are merged before the limit is applied, null keeps a single source in the order it was read
+	 */
+	public static Flattener create(List<String> entityTables, boolean b, Comparator<DynamoItem> order) {
+		if (entityTables.size() > 1) {
+			return new FlattenerMulti(entityTables, b, order);
+		}
+		return new FlattenerSingle(b, order);
+	}
+
 	public abstract DynamoItem get(Optional<Hash.HashExtractor> extractor, Class<? extends Table> type, String id);
 
 	protected abstract void addItem(DynamoItem item);
@@ -50,5 +62,25 @@ public abstract class Flattener {
 		return results(mapper, type, Optional.empty());
 	}
 
-	public abstract <T extends Table> List<T> results(ObjectMapper mapper, Class<T> type, Optional<Integer> limit);
+	public final <T extends Table> List<T> results(ObjectMapper mapper, Class<T> type, Optional<Integer> limit) {
+		return results(mapper, type, limit, __ -> true);
+	}
+
+	/**
+	 * @param filter applied to the merged rows before the limit
+	 */
+	public final <T extends Table> List<T> results(ObjectMapper mapper, Class<T> type, Optional<Integer> limit, Predicate<DynamoItem> filter) {
+		return convert(mapper, type, rows(limit, filter));
+	}
+
+	public static <T extends Table> List<T> convert(ObjectMapper mapper, Class<T> type, List<DynamoItem> rows) {
+		return rows.stream().map(t -> t.convertTo(mapper, type)).collect(Collectors.toList());
+	}
+
+	/**
+	 * The merged rows in order, not yet converted
+	 *
+	 * @param filter applied to the merged rows before the limit
+	 */
+	public abstract List<DynamoItem> rows(Optional<Integer> limit, Predicate<DynamoItem> filter);
 }
@@ -12,11 +12,11 @@
 
 package com.phocassoftware.graphql.database.manager.dynamo;
 
-import tools.jackson.databind.ObjectMapper;
 import com.phocassoftware.graphql.database.manager.Table;
 import com.phocassoftware.graphql.database.manager.annotations.Hash;
 import com.phocassoftware.graphql.database.manager.util.TableCoreUtil;
 import java.util.*;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public final class FlattenerMulti extends Flattener {
@@ -24,9 +24,11 @@ public final class FlattenerMulti extends Flattener {
 	private final Map<String, DynamoItem> lookup;
 	private final boolean includeOrganisationId;
 	private final List<String> tables;
+	private final Comparator<DynamoItem> order;
 
-	FlattenerMulti(List<String> tables, boolean includeOrganisationId) {
+	FlattenerMulti(List<String> tables, boolean includeOrganisationId, Comparator<DynamoItem> order) {
 		this.tables = tables;
+		this.order = order;
 		lookup = new HashMap<>();
 		this.includeOrganisationId = includeOrganisationId;
 	}
@@ -84,9 +86,15 @@ public final class FlattenerMulti extends Flattener {
 		return toReturn;
 	}
 
-	public <T extends Table> List<T> results(ObjectMapper mapper, Class<T> type, Optional<Integer> limit) {
+	public List<DynamoItem> rows(Optional<Integer> limit, Predicate<DynamoItem> filter) {
 		var items = new ArrayList<DynamoItem>(lookup.values());
-		Collections.sort(items);
-		return items.stream().limit(limit.orElse(Integer.MAX_VALUE)).map(t -> t.convertTo(mapper, type)).collect(Collectors.toList());
+		items.sort(order);
+		// a tombstone in an upper table hides the entity, drop it before the limit so it does not take a place in the page
+		return items
+			.stream()
+			.filter(item -> !item.isDeleted())
+			.filter(filter)
+			.limit(limit.orElse(Integer.MAX_VALUE))
+			.collect(Collectors.toList());
 	}
 }
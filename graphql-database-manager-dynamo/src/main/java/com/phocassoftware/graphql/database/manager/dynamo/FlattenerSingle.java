@@ -12,11 +12,11 @@
 
 package com.phocassoftware.graphql.database.manager.dynamo;
 
-import tools.jackson.databind.ObjectMapper;
 import com.phocassoftware.graphql.database.manager.Table;
 import com.phocassoftware.graphql.database.manager.annotations.Hash;
 import com.phocassoftware.graphql.database.manager.util.TableCoreUtil;
 import java.util.*;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public final class FlattenerSingle extends Flattener {
@@ -24,11 +24,17 @@ public final class FlattenerSingle extends Flattener {
 	private final Map<String, DynamoItem> lookup;
 	private final List<DynamoItem> order;
 	private final boolean includeOrganisationId;
+	private final Comparator<DynamoItem> sort;
 
 	FlattenerSingle(boolean includeOrganisationId) {
+		this(includeOrganisationId, null);
+	}
+
+	FlattenerSingle(boolean includeOrganisationId, Comparator<DynamoItem> sort) {
 		lookup = new HashMap<>();
 		order = new ArrayList<>();
 		this.includeOrganisationId = includeOrganisationId;
+		this.sort = sort;
 	}
 
 	private String getId(DynamoItem item) {
@@ -59,7 +65,10 @@ public final class FlattenerSingle extends Flattener {
 		order.add(item);
 	}
 
-	public <T extends Table> List<T> results(ObjectMapper mapper, Class<T> type, Optional<Integer> limit) {
-		return order.stream().limit(limit.orElse(Integer.MAX_VALUE)).map(t -> t.convertTo(mapper, type)).collect(Collectors.toList());
+	public List<DynamoItem> rows(Optional<Integer> limit, Predicate<DynamoItem> filter) {
+		if (sort != null) {
+			order.sort(sort);
+		}
+		return order.stream().filter(filter).limit(limit.orElse(Integer.MAX_VALUE)).collect(Collectors.toList());
 	}
 }
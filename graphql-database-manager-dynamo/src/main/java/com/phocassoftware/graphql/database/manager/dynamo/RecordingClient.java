@@ -0,0 +1,398 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager.dynamo;
+
+import com.phocassoftware.graphql.database.manager.DatabaseListener;
+import com.phocassoftware.graphql.database.manager.Deadline;
+import com.phocassoftware.graphql.database.manager.DeadlineExceededException;
+import com.phocassoftware.graphql.database.manager.OperationTrace;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.Capacity;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+/**
+ * Asks for the consumed capacity on every call the driver makes and hands it to the listener. When the driver is running a traced
+ * operation each call is also added to its trace, and under a deadline each call is checked, limited and cancelled against it. Paginators are built on top of the request methods so their pages are counted too.
+ */
+class RecordingClient implements DynamoDbAsyncClient {
+
+	private static final String ORGANISATION_ID = "organisationId";
+	private static final String GLOBAL = "global";
+
+	private final DynamoDbAsyncClient client;
+	private final DatabaseListener listener;
+	private final OperationTrace trace;
+	private final Deadline deadline;
+
+	RecordingClient(DynamoDbAsyncClient client, DatabaseListener listener) {
+		this(client, listener, null, Deadline.NONE);
+	}
+
+	private RecordingClient(DynamoDbAsyncClient client, DatabaseListener listener, OperationTrace trace, Deadline deadline) {
+		this.client = client;
+		this.listener = listener;
+		this.trace = trace;
+		this.deadline = deadline;
+	}
+
+	/**
+	 * A client on the same connection that also adds its calls to the trace
+	 */
+	RecordingClient tracing(OperationTrace trace) {
+		return new RecordingClient(client, listener, trace, deadline);
+	}
+
+	/**
+	 * A client on the same connection whose calls are refused once the deadline ends, limited to the time left and cancelled when it
+	 * ends while they are in flight
+	 */
+	RecordingClient withDeadline(Deadline deadline) {
+		return new RecordingClient(client, listener, trace, deadline);
+	}
+
+	@Override
+	public CompletableFuture<QueryResponse> query(QueryRequest request) {
+		var organisationId = organisation(Stream.of(valueOf(request.expressionAttributeValues(), ":" + ORGANISATION_ID)));
+		var start = System.nanoTime();
+		return send(() -> client.query(request.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.INDEXES).overrideConfiguration(limited(request)).build()))
+			.thenApply(
+				response -> record(
+					"Query",
+					request.tableName(),
+					request.indexName(),
+					start,
+					response,
+					organisationId,
+					false,
+					List.of(response.consumedCapacity()),
+					response.count(),
+					0
+				)
+			);
+	}
+
+	@Override
+	public CompletableFuture<ScanResponse> scan(ScanRequest request) {
+		var start = System.nanoTime();
+		return send(() -> client.scan(request.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.INDEXES).overrideConfiguration(limited(request)).build()))
+			.thenApply(
+				response -> record(
+					"Scan",
+					request.tableName(),
+					request.indexName(),
+					start,
+					response,
+					null,
+					false,
+					List.of(response.consumedCapacity()),
+					response.count(),
+					0
+				)
+			);
+	}
+
+	@Override
+	public CompletableFuture<GetItemResponse> getItem(GetItemRequest request) {
+		var organisationId = organisation(Stream.of(valueOf(request.key(), ORGANISATION_ID)));
+		var start = System.nanoTime();
+		return send(() -> client.getItem(request.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.INDEXES).overrideConfiguration(limited(request)).build()))
+			.thenApply(
+				response -> record(
+					"GetItem",
+					request.tableName(),
+					null,
+					start,
+					response,
+					organisationId,
+					false,
+					List.of(response.consumedCapacity()),
+					response.hasItem() ? 1 : 0,
+					0
+				)
+			);
+	}
+
+	@Override
+	public CompletableFuture<BatchGetItemResponse> batchGetItem(BatchGetItemRequest request) {
+		var organisationId = organisation(
+			request.requestItems().values().stream().flatMap(keys -> keys.keys().stream()).map(key -> valueOf(key, ORGANISATION_ID))
+		);
+		var start = System.nanoTime();
+		return send(() -> client.batchGetItem(request.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.INDEXES).overrideConfiguration(limited(request)).build()))
+			.thenApply(
+				response -> record(
+					"BatchGetItem",
+					tables(request.requestItems().keySet()),
+					null,
+					start,
+					response,
+					organisationId,
+					false,
+					response.consumedCapacity(),
+					response.responses().values().stream().mapToInt(List::size).sum(),
+					response.unprocessedKeys().values().stream().mapToInt(keys -> keys.keys().size()).sum()
+				)
+			);
+	}
+
+	@Override
+	public CompletableFuture<PutItemResponse> putItem(PutItemRequest request) {
+		var organisationId = organisation(Stream.of(valueOf(request.item(), ORGANISATION_ID)));
+		var start = System.nanoTime();
+		return send(() -> client.putItem(request.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.INDEXES).overrideConfiguration(limited(request)).build()))
+			.thenApply(
+				response -> record("PutItem", request.tableName(), null, start, response, organisationId, true, List.of(response.consumedCapacity()), 1, 0)
+			);
+	}
+
+	@Override
+	public CompletableFuture<UpdateItemResponse> updateItem(UpdateItemRequest request) {
+		var organisationId = organisation(Stream.of(valueOf(request.key(), ORGANISATION_ID)));
+		var start = System.nanoTime();
+		return send(() -> client.updateItem(request.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.INDEXES).overrideConfiguration(limited(request)).build()))
+			.thenApply(
+				response -> record("UpdateItem", request.tableName(), null, start, response, organisationId, true, List.of(response.consumedCapacity()), 1, 0)
+			);
+	}
+
+	@Override
+	public CompletableFuture<DeleteItemResponse> deleteItem(DeleteItemRequest request) {
+		var organisationId = organisation(Stream.of(valueOf(request.key(), ORGANISATION_ID)));
+		var start = System.nanoTime();
+		return send(() -> client.deleteItem(request.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.INDEXES).overrideConfiguration(limited(request)).build()))
+			.thenApply(
+				response -> record("DeleteItem", request.tableName(), null, start, response, organisationId, true, List.of(response.consumedCapacity()), 1, 0)
+			);
+	}
+
+	@Override
+	public CompletableFuture<BatchWriteItemResponse> batchWriteItem(BatchWriteItemRequest request) {
+		var organisationId = organisation(request.requestItems().values().stream().flatMap(Collection::stream).map(RecordingClient::organisationOf));
+		var start = System.nanoTime();
+		return send(() -> client.batchWriteItem(request.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.INDEXES).overrideConfiguration(limited(request)).build()))
+			.thenApply(response -> {
+				var unprocessed = response.unprocessedItems().values().stream().mapToInt(List::size).sum();
+				return record(
+					"BatchWriteItem",
+					tables(request.requestItems().keySet()),
+					null,
+					start,
+					response,
+					organisationId,
+					true,
+					response.consumedCapacity(),
+					request.requestItems().values().stream().mapToInt(List::size).sum() - unprocessed,
+					unprocessed
+				);
+			});
+	}
+
+	@Override
+	public CompletableFuture<TransactWriteItemsResponse> transactWriteItems(TransactWriteItemsRequest request) {
+		var organisationId = organisation(request.transactItems().stream().map(RecordingClient::organisationOf));
+		var start = System.nanoTime();
+		return send(() -> client.transactWriteItems(request.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.INDEXES).overrideConfiguration(limited(request)).build()))
+			.thenApply(
+				response -> record(
+					"TransactWriteItems",
+					null,
+					null,
+					start,
+					response,
+					organisationId,
+					true,
+					response.consumedCapacity(),
+					request.transactItems().size(),
+					0
+				)
+			);
+	}
+
+	@Override
+	public String serviceName() {
+		return client.serviceName();
+	}
+
+	@Override
+	public void close() {
+		client.close();
+	}
+
+	private <R> CompletableFuture<R> send(Supplier<CompletableFuture<R>> call) {
+		if (deadline == Deadline.NONE) {
+			return call.get();
+		}
+		try {
+			deadline.check();
+		} catch (DeadlineExceededException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+		return deadline.track(call.get());
+	}
+
+	// the call may not run past what is left of the deadline
+	private AwsRequestOverrideConfiguration limited(DynamoDbRequest request) {
+		var configuration = request.overrideConfiguration().orElse(null);
+		var remaining = deadline.remaining();
+		if (remaining.isEmpty()) {
+			return configuration;
+		}
+		var builder = configuration == null ? AwsRequestOverrideConfiguration.builder() : configuration.toBuilder();
+		var timeout = builder.apiCallTimeout();
+		if (timeout != null && timeout.compareTo(remaining.get()) < 0) {
+			return configuration;
+		}
+		return builder.apiCallTimeout(remaining.get()).build();
+	}
+
+	private <R> R record(
+		String operation,
+		String table,
+		String index,
+		long start,
+		R response,
+		String organisationId,
+		boolean write,
+		List<ConsumedCapacity> consumed,
+		int items,
+		int unprocessed
+	) {
+		double units = 0;
+		if (consumed != null) {
+			for (var capacity : consumed) {
+				if (capacity == null) {
+					continue;
+				}
+				units += Objects.requireNonNullElse(capacity.capacityUnits(), 0d);
+				if (capacity.table() != null) {
+					report(organisationId, capacity.tableName(), null, write, capacity.table());
+				} else {
+					report(
+						organisationId,
+						capacity.tableName(),
+						null,
+						write,
+						Capacity
+							.builder()
+							.capacityUnits(capacity.capacityUnits())
+							.readCapacityUnits(capacity.readCapacityUnits())
+							.writeCapacityUnits(capacity.writeCapacityUnits())
+							.build()
+					);
+				}
+				if (capacity.hasLocalSecondaryIndexes()) {
+					capacity.localSecondaryIndexes().forEach((name, capacityUnits) -> report(organisationId, capacity.tableName(), name, write, capacityUnits));
+				}
+				if (capacity.hasGlobalSecondaryIndexes()) {
+					capacity.globalSecondaryIndexes().forEach((name, capacityUnits) -> report(organisationId, capacity.tableName(), name, write, capacityUnits));
+				}
+			}
+		}
+		if (trace != null) {
+			trace.call(new OperationTrace.Call(operation, table, index, start, System.nanoTime() - start, items, unprocessed, units));
+		}
+		return response;
+	}
+
+	private void report(String organisationId, String table, String index, boolean write, Capacity units) {
+		double read = Objects.requireNonNullElse(units.readCapacityUnits(), 0d);
+		double written = Objects.requireNonNullElse(units.writeCapacityUnits(), 0d);
+		// the split is not always given, the total is then charged to the kind of call made
+		if (units.readCapacityUnits() == null && units.writeCapacityUnits() == null && units.capacityUnits() != null) {
+			if (write) {
+				written = units.capacityUnits();
+			} else {
+				read = units.capacityUnits();
+			}
+		}
+		if (read == 0 && written == 0) {
+			return;
+		}
+		listener.consumedCapacity(new com.phocassoftware.graphql.database.manager.ConsumedCapacity(organisationId, table, index, read, written));
+	}
+
+	// requests for an organisation also read global, the capacity belongs to the organisation that asked
+	private static String organisation(Stream<String> organisationIds) {
+		var ids = organisationIds.filter(Objects::nonNull).distinct().toList();
+		return ids.stream().filter(id -> !GLOBAL.equals(id)).findFirst().orElse(ids.isEmpty() ? null : ids.getFirst());
+	}
+
+	private static String organisationOf(WriteRequest request) {
+		if (request.putRequest() != null) {
+			return valueOf(request.putRequest().item(), ORGANISATION_ID);
+		}
+		if (request.deleteRequest() != null) {
+			return valueOf(request.deleteRequest().key(), ORGANISATION_ID);
+		}
+		return null;
+	}
+
+	private static String organisationOf(TransactWriteItem item) {
+		if (item.put() != null) {
+			return valueOf(item.put().item(), ORGANISATION_ID);
+		}
+		if (item.update() != null) {
+			return valueOf(item.update().key(), ORGANISATION_ID);
+		}
+		if (item.delete() != null) {
+			return valueOf(item.delete().key(), ORGANISATION_ID);
+		}
+		if (item.conditionCheck() != null) {
+			return valueOf(item.conditionCheck().key(), ORGANISATION_ID);
+		}
+		return null;
+	}
+
+	private static String tables(Collection<String> tables) {
+		return tables.size() == 1 ? tables.iterator().next() : null;
+	}
+
+	private static String valueOf(Map<String, AttributeValue> values, String name) {
+		if (values == null) {
+			return null;
+		}
+		var value = values.get(name);
+		return value == null ? null : value.s();
+	}
+}
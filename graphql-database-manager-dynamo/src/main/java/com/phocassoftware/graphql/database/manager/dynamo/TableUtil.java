@@ -27,16 +27,23 @@ import com.phocassoftware.graphql.database.manager.Table;
 import com.phocassoftware.graphql.database.manager.annotations.GlobalIndex;
 import com.phocassoftware.graphql.database.manager.annotations.SecondaryIndex;
 import com.phocassoftware.graphql.database.manager.annotations.TimeToLive;
+import com.phocassoftware.graphql.database.manager.annotations.TrackChanges;
 import com.phocassoftware.graphql.database.manager.util.BackupItem;
+import com.phocassoftware.graphql.database.manager.util.TableCoreUtil;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.Spliterators;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -79,38 +86,119 @@ public class TableUtil {
 		}
 	}
 
-	static String getSecondaryGlobal(Table entity) {
-		for (var method : entity.getClass().getMethods()) {
-			if (method.isAnnotationPresent(GlobalIndex.class)) {
-				try {
-					var secondary = method.invoke(entity);
-					if (secondary instanceof Optional) {
-						secondary = ((Optional) secondary).orElse(null);
+	static final String SECONDARY_GLOBAL = "secondaryGlobal";
+	static final String SECONDARY_ORGANISATION = "secondaryOrganisation";
+	/**
+	 * Attribute and index holding the change time of a {@link TrackChanges} type
+	 */
+	public static final String CHANGED_AT = "changedAt";
+
+	static boolean tracksChanges(Class<? extends Table> type) {
+		return TableCoreUtil.baseClass(type).isAnnotationPresent(TrackChanges.class);
+	}
+
+	// millis are padded so the index sorts by time, the table prefix keeps each type in its own range of the organisation
+	static AttributeValue changedAt(Class<? extends Table> type, Instant at) {
+		return AttributeValue.builder().s(TableCoreUtil.table(type) + ":" + String.format("%015d", at.toEpochMilli())).build();
+	}
+
+	private static final Map<Class<?>, List<IndexAccessor>> INDEXES = new ConcurrentHashMap<>();
+
+	private record IndexAccessor(String attribute, boolean global, Method method) {}
+
+	/**
+	 * @return attribute and index name used to store a named {@link SecondaryIndex}
+	 */
+	public static String secondaryIndexName(String name) {
+		return name.isEmpty() ? SECONDARY_ORGANISATION : SECONDARY_ORGANISATION + "_" + name;
+	}
+
+	/**
+	 * @return attribute and index name used to store a named {@link GlobalIndex}
+	 */
+	public static String globalIndexName(String name) {
+		return name.isEmpty() ? SECONDARY_GLOBAL : SECONDARY_GLOBAL + "_" + name;
+	}
+
+	/**
+	 * @return names of every named secondary index declared on the type, the unnamed index is not included
+	 */
+	public static Set<String> secondaryIndexNames(Class<?> type) {
+		return indexes(type)
+			.stream()
+			.filter(index -> !index.global() && !index.attribute().equals(SECONDARY_ORGANISATION))
+			.map(IndexAccessor::attribute)
+			.collect(Collectors.toSet());
+	}
+
+	/**
+	 * @return names of every named global index declared on the type, the unnamed index is not included
+	 */
+	public static Set<String> globalIndexNames(Class<?> type) {
+		return indexes(type)
+			.stream()
+			.filter(index -> index.global() && !index.attribute().equals(SECONDARY_GLOBAL))
+			.map(IndexAccessor::attribute)
+			.collect(Collectors.toSet());
+	}
+
+	private static List<IndexAccessor> indexes(Class<?> type) {
+		return INDEXES
+			.computeIfAbsent(
+				type,
+				t -> {
+					var accessors = new ArrayList<IndexAccessor>();
+					var seen = new HashSet<String>();
+					for (var method : t.getMethods()) {
+						String attribute;
+						boolean global;
+						if (method.isAnnotationPresent(GlobalIndex.class)) {
+							attribute = globalIndexName(method.getAnnotation(GlobalIndex.class).name());
+							global = true;
+						} else if (method.isAnnotationPresent(SecondaryIndex.class)) {
+							attribute = secondaryIndexName(method.getAnnotation(SecondaryIndex.class).name());
+							global = false;
+						} else {
+							continue;
+						}
+						// first declaration wins, same as before named indexes existed
+						if (!seen.add(attribute)) {
+							continue;
+						}
+						accessors.add(new IndexAccessor(attribute, global, method));
 					}
-					return (String) secondary;
-				} catch (ReflectiveOperationException e) {
-					throw new RuntimeException(e);
+					return List.copyOf(accessors);
 				}
-			}
-		}
-		return null;
+			);
 	}
 
-	static String getSecondaryOrganisation(Table entity) {
-		for (var method : entity.getClass().getMethods()) {
-			if (method.isAnnotationPresent(SecondaryIndex.class)) {
-				try {
-					var secondary = method.invoke(entity);
-					if (secondary instanceof Optional) {
-						secondary = ((Optional) secondary).orElse(null);
-					}
-					return (String) secondary;
-				} catch (ReflectiveOperationException e) {
-					throw new RuntimeException(e);
+	/**
+	 * @return value of every index on the entity keyed by the attribute it is stored in, indexes without a value are left out
+	 */
+	static Map<String, String> getIndexes(Table entity) {
+		Map<String, String> values = new HashMap<>();
+		for (var index : indexes(entity.getClass())) {
+			try {
+				var value = index.method().invoke(entity);
+				if (value instanceof Optional) {
+					value = ((Optional) value).orElse(null);
 				}
+				if (value != null) {
+					values.put(index.attribute(), (String) value);
+				}
+			} catch (ReflectiveOperationException e) {
+				throw new RuntimeException(e);
 			}
 		}
-		return null;
+		return values;
+	}
+
+	static String getSecondaryGlobal(Table entity) {
+		return getIndexes(entity).get(SECONDARY_GLOBAL);
+	}
+
+	static String getSecondaryOrganisation(Table entity) {
+		return getIndexes(entity).get(SECONDARY_ORGANISATION);
 	}
 
 	public static Map<String, AttributeValue> toAttributes(ObjectMapper mapper, Object entity) {
@@ -132,14 +220,15 @@ public class TableUtil {
 		var entityItem = entity.getItem();
 		LinkedHashMap<String, String[]> links = mapper.convertValue(entityItem.get("links"), new TypeReference<>() {});
 
+		// always write the links map so later link updates can ADD into it in a single call
+		entityItem.remove("links");
+		Map<String, AttributeValue> linkMap = new HashMap<>();
 		if (links != null) {
-			entityItem.remove("links");
-			Map<String, AttributeValue> linkMap = new HashMap<>();
 			links.forEach((key, value) -> {
 				linkMap.put(key, AttributeValue.builder().ss(value).build());
 			});
-			entries.put("links", AttributeValue.builder().m(linkMap).build());
 		}
+		entries.put("links", AttributeValue.builder().m(linkMap).build());
 
 		if (entity.isHashed()) {
 			entries.put("hashed", AttributeValue.builder().bool(true).build());
@@ -16,12 +16,20 @@ import com.amazonaws.services.dynamodbv2.local.main.ServerRunner;
 import com.amazonaws.services.dynamodbv2.local.server.DynamoDBProxyServer;
 import tools.jackson.databind.ObjectMapper;
 import com.phocassoftware.graphql.database.manager.Database;
+import com.phocassoftware.graphql.database.manager.annotations.GlobalIndex;
+import com.phocassoftware.graphql.database.manager.annotations.SecondaryIndex;
 import com.phocassoftware.graphql.database.manager.dynamo.DynamoDbManager;
+import com.phocassoftware.graphql.database.manager.dynamo.TableUtil;
+import io.github.classgraph.ClassGraph;
 
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ExecutionException;
 
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
@@ -34,6 +42,8 @@ import software.amazon.awssdk.services.dynamodb.streams.DynamoDbStreamsAsyncClie
 
 final class DynamoDbInitializer {
 
+	private static NamedIndexes namedIndexes;
+
 	@SuppressWarnings("unchecked")
 	static void createTable(final DynamoDbClient client, final String name) throws ExecutionException, InterruptedException {
 		try {
@@ -52,25 +62,7 @@ final class DynamoDbInitializer {
 							KeySchemaElement.builder().attributeName("id").keyType(KeyType.RANGE).build()
 						)
 						.streamSpecification(streamSpecification -> streamSpecification.streamEnabled(true).streamViewType(StreamViewType.NEW_IMAGE))
-						.globalSecondaryIndexes(
-							GlobalSecondaryIndex
-								.builder()
-								.indexName("secondaryGlobal")
-								.provisionedThroughput(p -> p.readCapacityUnits(10L).writeCapacityUnits(10L))
-								.projection(b -> b.projectionType(ProjectionType.ALL))
-								.keySchema(KeySchemaElement.builder().attributeName("secondaryGlobal").keyType(KeyType.HASH).build())
-								.build(),
-							GlobalSecondaryIndex
-								.builder()
-								.indexName("parallelIndex")
-								.provisionedThroughput(p -> p.readCapacityUnits(10L).writeCapacityUnits(10L))
-								.projection(b -> b.projectionType(ProjectionType.ALL))
-								.keySchema(
-									KeySchemaElement.builder().attributeName("organisationId").keyType(KeyType.HASH).build(),
-									KeySchemaElement.builder().attributeName("parallelHash").keyType(KeyType.RANGE).build()
-								)
-								.build()
-						)
+						.globalSecondaryIndexes(globalSecondaryIndexes())
 						.localSecondaryIndexes(
 							builder -> builder
 								.indexName("secondaryOrganisation")
@@ -80,19 +72,97 @@ final class DynamoDbInitializer {
 									KeySchemaElement.builder().attributeName("secondaryOrganisation").keyType(KeyType.RANGE).build()
 								)
 						)
-						.attributeDefinitions(
-							AttributeDefinition.builder().attributeName("organisationId").attributeType(ScalarAttributeType.S).build(),
-							AttributeDefinition.builder().attributeName("id").attributeType(ScalarAttributeType.S).build(),
-							AttributeDefinition.builder().attributeName("secondaryGlobal").attributeType(ScalarAttributeType.S).build(),
-							AttributeDefinition.builder().attributeName("secondaryOrganisation").attributeType(ScalarAttributeType.S).build(),
-							AttributeDefinition.builder().attributeName("parallelHash").attributeType(ScalarAttributeType.S).build()
-						)
+						.attributeDefinitions(attributeDefinitions())
 						.provisionedThroughput(p -> p.readCapacityUnits(10L).writeCapacityUnits(10L).build())
 				);
 
 		}
 	}
 
+	private static List<GlobalSecondaryIndex> globalSecondaryIndexes() {
+		var indexes = new ArrayList<GlobalSecondaryIndex>();
+		indexes.add(globalIndex("secondaryGlobal", KeySchemaElement.builder().attributeName("secondaryGlobal").keyType(KeyType.HASH).build()));
+		indexes
+			.add(
+				globalIndex(
+					"parallelIndex",
+					KeySchemaElement.builder().attributeName("organisationId").keyType(KeyType.HASH).build(),
+					KeySchemaElement.builder().attributeName("parallelHash").keyType(KeyType.RANGE).build()
+				)
+			);
+		indexes
+			.add(
+				globalIndex(
+					TableUtil.CHANGED_AT,
+					KeySchemaElement.builder().attributeName("organisationId").keyType(KeyType.HASH).build(),
+					KeySchemaElement.builder().attributeName(TableUtil.CHANGED_AT).keyType(KeyType.RANGE).build()
+				)
+			);
+		var named = namedIndexes();
+		for (var name : named.global()) {
+			indexes.add(globalIndex(name, KeySchemaElement.builder().attributeName(name).keyType(KeyType.HASH).build()));
+		}
+		// named organisation indexes are global indexes as local ones can not be added once a table exists
+		for (var name : named.secondary()) {
+			indexes
+				.add(
+					globalIndex(
+						name,
+						KeySchemaElement.builder().attributeName("organisationId").keyType(KeyType.HASH).build(),
+						KeySchemaElement.builder().attributeName(name).keyType(KeyType.RANGE).build()
+					)
+				);
+		}
+		return indexes;
+	}
+
+	private static GlobalSecondaryIndex globalIndex(String name, KeySchemaElement... keys) {
+		return GlobalSecondaryIndex
+			.builder()
+			.indexName(name)
+			.provisionedThroughput(p -> p.readCapacityUnits(10L).writeCapacityUnits(10L))
+			.projection(b -> b.projectionType(ProjectionType.ALL))
+			.keySchema(keys)
+			.build();
+	}
+
+	private static List<AttributeDefinition> attributeDefinitions() {
+		var attributes = new ArrayList<String>(List.of("organisationId", "id", "secondaryGlobal", "secondaryOrganisation", "parallelHash", TableUtil.CHANGED_AT));
+		var named = namedIndexes();
+		attributes.addAll(named.global());
+		attributes.addAll(named.secondary());
+		return attributes.stream().map(name -> AttributeDefinition.builder().attributeName(name).attributeType(ScalarAttributeType.S).build()).toList();
+	}
+
+	private record NamedIndexes(Set<String> secondary, Set<String> global) {}
+
+	// named indexes have to exist when the table is created, so find every table type on the class path that declares one
+	private static synchronized NamedIndexes namedIndexes() {
+		if (namedIndexes == null) {
+			var secondary = new TreeSet<String>();
+			var global = new TreeSet<String>();
+			try (
+				var scanResult = new ClassGraph()
+					.enableClassInfo()
+					.enableMethodInfo()
+					.enableAnnotationInfo()
+					.rejectPackages("com.amazonaws", "software.amazon", "io.netty", "org.eclipse", "org.apache", "com.google", "org.junit")
+					.scan()
+			) {
+				var classes = scanResult
+					.getClassesWithMethodAnnotation(SecondaryIndex.class.getName())
+					.union(scanResult.getClassesWithMethodAnnotation(GlobalIndex.class.getName()))
+					.loadClasses();
+				for (var type : classes) {
+					secondary.addAll(TableUtil.secondaryIndexNames(type));
+					global.addAll(TableUtil.globalIndexNames(type));
+				}
+			}
+			namedIndexes = new NamedIndexes(secondary, global);
+		}
+		return namedIndexes;
+	}
+
 	static void createHistoryTable(final DynamoDbClient client, final String name) throws ExecutionException, InterruptedException {
 		try {
 			client.describeTable(builder -> builder.tableName(name));
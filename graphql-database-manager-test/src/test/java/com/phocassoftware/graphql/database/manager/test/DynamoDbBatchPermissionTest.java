@@ -0,0 +1,114 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager.test;
+
+import com.phocassoftware.graphql.database.manager.DatabaseExecutors;
+import com.phocassoftware.graphql.database.manager.Table;
+import com.phocassoftware.graphql.database.manager.access.BatchModificationPermission;
+import com.phocassoftware.graphql.database.manager.access.ForbiddenWriteException;
+import com.phocassoftware.graphql.database.manager.dynamo.DynamoDbManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Assertions;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+
+final class DynamoDbBatchPermissionTest {
+
+	private static BatchModificationPermission permission(AtomicInteger calls) {
+		return entities -> {
+			calls.incrementAndGet();
+			return CompletableFuture.completedFuture(entities.stream().map(entity -> !((SimpleTable) entity).getName().startsWith("deny")).toList());
+		};
+	}
+
+	@TestDatabase
+	void testPutBatch(final DynamoDbAsyncClient client) throws InterruptedException, ExecutionException {
+		// dispatch is held until every put is queued, so they all go out in one batch
+		var held = new ArrayList<Runnable>();
+		var open = new AtomicBoolean();
+		Executor dispatch = task -> {
+			synchronized (held) {
+				if (!open.get()) {
+					held.add(task);
+					return;
+				}
+			}
+			Thread.startVirtualThread(task);
+		};
+		DatabaseExecutors executors = workload -> workload == DatabaseExecutors.Workload.DISPATCH ? dispatch : DatabaseExecutors.VIRTUAL.executor(workload);
+		var manager = DynamoDbManager
+			.builder()
+			.tables("table")
+			.dynamoDbAsyncClient(client)
+			.objectMapper(new ObjectMapperCreator().get())
+			.executors(executors)
+			.build();
+
+		var calls = new AtomicInteger();
+		var db = manager.getDatabase(UUID.randomUUID().toString(), permission(calls));
+
+		var puts = IntStream.range(0, 50).mapToObj(i -> db.put(new SimpleTable((i % 10 == 0 ? "deny" : "allow") + i))).toList();
+		synchronized (held) {
+			open.set(true);
+		}
+		held.forEach(Thread::startVirtualThread);
+		CompletableFuture.allOf(puts.toArray(CompletableFuture[]::new)).exceptionally(failure -> null).get();
+
+		Assertions.assertEquals(1, calls.get());
+		for (int i = 0; i < puts.size(); i++) {
+			var put = puts.get(i);
+			if (i % 10 == 0) {
+				var failure = Assertions.assertThrows(ExecutionException.class, put::get);
+				Assertions.assertInstanceOf(ForbiddenWriteException.class, failure.getCause());
+			} else {
+				Assertions.assertNotNull(put.get().getId());
+			}
+		}
+		Assertions.assertEquals(45, db.query(SimpleTable.class).get().size());
+	}
+
+	@TestDatabase
+	void testImportBatch(final DynamoDbManager manager) throws InterruptedException, ExecutionException {
+		var calls = new AtomicInteger();
+		var db = manager.getDatabase("batch", permission(calls));
+
+		var entities = List.of(new SimpleTable("allow"), new SimpleTable("deny"), new SimpleTable("allow again")).iterator();
+		var result = db.importStream(entities, builder -> builder.batchSize(10)).get();
+
+		Assertions.assertEquals(1, calls.get());
+		Assertions.assertEquals(2, result.succeeded());
+		Assertions.assertEquals(1, result.failed());
+	}
+
+	static class SimpleTable extends Table {
+
+		private String name;
+
+		public SimpleTable() {}
+
+		public SimpleTable(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.phocassoftware.graphql.database.manager.test;
+
+import com.phocassoftware.graphql.database.manager.Database;
+import com.phocassoftware.graphql.database.manager.Table;
+import com.phocassoftware.graphql.database.manager.annotations.TrackChanges;
+import com.phocassoftware.graphql.database.manager.dynamo.DynamoDbManager;
+import com.phocassoftware.graphql.database.manager.test.annotations.DatabaseNames;
+import com.phocassoftware.graphql.database.manager.test.annotations.DatabaseOrganisation;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import org.junit.jupiter.api.Assertions;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+
+final class DynamoDbChangedSinceTest {
+
+	private static final Instant START = Instant.parse("2030-01-01T00:00:00Z");
+
+	@TestDatabase
+	void testChangedSince(final DynamoDbAsyncClient client) throws InterruptedException, ExecutionException {
+		var clock = new TestClock(START);
+		var db = database(client, clock);
+		db.put(new Note("before")).get();
+		var since = START.plusMillis(5);
+
+		clock.set(START.plusMillis(10));
+		var first = db.put(new Note("first")).get();
+		clock.set(START.plusMillis(12));
+		var second = db.put(new Note("second")).get();
+		db.put(new Untracked("ignored")).get();
+
+		var changes = db.changedSince(Note.class, since, null).get();
+		Assertions.assertEquals(List.of("first", "second"), changes.updated().stream().map(Note::getText).toList());
+		Assertions.assertTrue(changes.deleted().isEmpty());
+
+		clock.set(START.plusMillis(20));
+		db.delete(first, false).get();
+		clock.set(START.plusMillis(22));
+		second.setText("second edit");
+		db.put(second).get();
+
+		var next = db.changedSince(Note.class, null, changes.cursor()).get();
+		Assertions.assertEquals(List.of(first.getId()), next.deleted());
+		Assertions.assertEquals(List.of("second edit"), next.updated().stream().map(Note::getText).toList());
+
+		var none = db.changedSince(Note.class, null, next.cursor()).get();
+		Assertions.assertTrue(none.updated().isEmpty());
+		Assertions.assertFalse(none.hasMore());
+		Assertions.assertEquals(next.cursor(), none.cursor());
+
+		Assertions.assertThrows(UnsupportedOperationException.class, () -> db.changedSince(Untracked.class, since, null));
+
+		// the deletion markers are gone by now, a cursor this old can no longer be trusted
+		clock.set(START.plus(Duration.ofDays(40)));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> db.changedSince(Note.class, null, next.cursor()));
+	}
+
+	@TestDatabase
+	void testChangedSincePages(final DynamoDbAsyncClient client) throws InterruptedException, ExecutionException {
+		var clock = new TestClock(START);
+		var db = database(client, clock);
+		for (int i = 0; i < 5; i++) {
+			clock.set(START.plusMillis(10 + i));
+			db.put(new Note("note" + i)).get();
+		}
+
+		List<String> texts = new ArrayList<>();
+		var page = db.changedSince(Note.class, START, null, 2).get();
+		texts.addAll(page.updated().stream().map(Note::getText).toList());
+		while (page.hasMore()) {
+			page = db.changedSince(Note.class, START, page.cursor(), 2).get();
+			texts.addAll(page.updated().stream().map(Note::getText).toList());
+		}
+		Assertions.assertEquals(List.of("note0", "note1", "note2", "note3", "note4"), texts);
+	}
+
+	@TestDatabase
+	void testChangedSinceSameMillisecond(final DynamoDbAsyncClient client) throws InterruptedException, ExecutionException {
+		var clock = new TestClock(START);
+		var db = database(client, clock);
+		for (int i = 0; i < 5; i++) {
+			db.put(new Note("note" + i)).get();
+		}
+
+		// every change has the same time, only the id tells the pages apart
+		List<String> texts = new ArrayList<>();
+		var page = db.changedSince(Note.class, START, null, 2).get();
+		texts.addAll(page.updated().stream().map(Note::getText).toList());
+		while (page.hasMore()) {
+			page = db.changedSince(Note.class, START, page.cursor(), 2).get();
+			texts.addAll(page.updated().stream().map(Note::getText).toList());
+		}
+		Assertions.assertEquals(List.of("note0", "note1", "note2", "note3", "note4"), texts.stream().sorted().toList());
+	}
+
+	@TestDatabase
+	void testChangedSinceAcrossTables(
+		@DatabaseNames({ "prod", "stage" }) @DatabaseOrganisation("org") final Database db,
+		@DatabaseNames("prod") @DatabaseOrganisation("org") final Database dbProd
+	) throws InterruptedException, ExecutionException {
+		for (int i = 0; i < 3; i++) {
+			dbProd.put(new Note("prod" + i)).get();
+			db.put(new Note("stage" + i)).get();
+		}
+
+		// neither table fills a page on its own, together they do
+		var page = db.changedSince(Note.class, Instant.EPOCH, null, 4).get();
+		Assertions.assertEquals(4, page.updated().size());
+		Assertions.assertTrue(page.hasMore());
+
+		List<String> texts = new ArrayList<>(page.updated().stream().map(Note::getText).toList());
+		while (page.hasMore()) {
+			page = db.changedSince(Note.class, Instant.EPOCH, page.cursor(), 4).get();
+			texts.addAll(page.updated().stream().map(Note::getText).toList());
+		}
+		Assertions.assertEquals(List.of("prod0", "prod1", "prod2", "stage0", "stage1", "stage2"), texts.stream().sorted().toList());
+	}
+
+	private static Database database(DynamoDbAsyncClient client, Clock clock) {
+		return DynamoDbManager
+			.builder()
+			.tables("table")
+			.dynamoDbAsyncClient(client)
+			.objectMapper(new ObjectMapperCreator().get())
+			.clock(clock)
+			.build()
+			.getDatabase(UUID.randomUUID().toString());
+	}
+
+	private static final class TestClock extends Clock {
+
+		private volatile Instant now;
+
+		private TestClock(Instant now) {
+			this.now = now;
+		}
+
+		private void set(Instant now) {
+			this.now = now;
+		}
+
+		@Override
+		public Instant instant() {
+			return now;
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+	}
+
+	@TrackChanges
+	static class Note extends Table {
+
+		private String text;
+
+		public Note() {}
+
+		public Note(String text) {
+			this.text = text;
+		}
+
+		public String getText() {
+			return text;
+		}
+
+		public void setText(String text) {
+			this.text = text;
+		}
+	}
+
+	static class Untracked extends Table {
+
+		private String text;
+
+		public Untracked() {}
+
+		public Untracked(String text) {
+			this.text = text;
+		}
+
+		public String getText() {
+			return text;
+		}
+	}
+}
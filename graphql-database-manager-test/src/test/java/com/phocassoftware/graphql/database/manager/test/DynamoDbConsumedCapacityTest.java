@@ -0,0 +1,60 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager.test;
+
+import com.phocassoftware.graphql.database.manager.Database;
+import com.phocassoftware.graphql.database.manager.Table;
+import java.util.concurrent.ExecutionException;
+import org.junit.jupiter.api.Assertions;
+
+final class DynamoDbConsumedCapacityTest {
+
+	@TestDatabase
+	void testConsumedCapacity(final Database db) throws InterruptedException, ExecutionException {
+		Assertions.assertTrue(db.getConsumedCapacity().isEmpty());
+
+		var entry = db.put(new Widget("widget")).get();
+		var written = db.getConsumedCapacity().total().writeCapacityUnits();
+		Assertions.assertTrue(written > 0);
+
+		db.query(Widget.class).get();
+		db.get(Widget.class, entry.getId()).get();
+		var total = db.getConsumedCapacity().total();
+		Assertions.assertTrue(total.readCapacityUnits() > 0);
+		Assertions.assertEquals(written, total.writeCapacityUnits());
+
+		var byOrganisation = db.getConsumedCapacity().byOrganisation();
+		Assertions.assertEquals(1, byOrganisation.size());
+		Assertions.assertTrue(byOrganisation.containsKey(db.getOrganisationId()));
+
+		var other = db.withOrganisationId("other");
+		other.put(new Widget("other widget")).get();
+		Assertions.assertSame(db.getConsumedCapacity(), other.getConsumedCapacity());
+		Assertions.assertEquals(2, db.getConsumedCapacity().byOrganisation().size());
+	}
+
+	static class Widget extends Table {
+
+		private String name;
+
+		public Widget() {}
+
+		public Widget(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager.test;
+
+import com.phocassoftware.graphql.database.manager.Database;
+import com.phocassoftware.graphql.database.manager.Table;
+import com.phocassoftware.graphql.database.manager.test.annotations.DatabaseNames;
+import com.phocassoftware.graphql.database.manager.test.annotations.DatabaseOrganisation;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Assertions;
+
+final class DynamoDbCounterTest {
+
+	@TestDatabase
+	void testIncrement(final Database db) throws InterruptedException, ExecutionException {
+		var page = db.put(new Page("home")).get();
+
+		var futures = IntStream.range(0, 20).mapToObj(i -> db.increment(Page.class, page.getId(), "views", 2)).toArray(CompletableFuture[]::new);
+		CompletableFuture.allOf(futures).get();
+
+		var read = db.get(Page.class, page.getId()).get();
+		Assertions.assertEquals(40, read.getViews());
+		Assertions.assertEquals("home", read.getName());
+		Assertions.assertEquals(21, read.getRevision());
+	}
+
+	@TestDatabase
+	void testIncrementVisibleToGet(final Database db) throws InterruptedException, ExecutionException {
+		var page = db.put(new Page("home")).get();
+		db.get(Page.class, page.getId()).get();
+
+		var incremented = db.increment(Page.class, page.getId(), "views", 5).get();
+		Assertions.assertEquals(5, incremented.getViews());
+		Assertions.assertEquals(5, db.get(Page.class, page.getId()).get().getViews());
+	}
+
+	@TestDatabase
+	void testIncrementMissing(final Database db) {
+		var failure = Assertions.assertThrows(ExecutionException.class, () -> db.increment(Page.class, "missing", "views", 1).get());
+		Assertions.assertInstanceOf(IllegalArgumentException.class, failure.getCause());
+	}
+
+	@TestDatabase
+	void testIncrementSetsUpdatedAt(final Database db) throws InterruptedException, ExecutionException {
+		var page = db.put(new Page("home")).get();
+
+		var incremented = db.increment(Page.class, page.getId(), "views", 1).get();
+		Assertions.assertFalse(incremented.getUpdatedAt().isBefore(page.getUpdatedAt()));
+		Assertions.assertEquals(page.getCreatedAt(), incremented.getCreatedAt());
+	}
+
+	@TestDatabase
+	void testIncrementLowerTable(
+		@DatabaseNames({ "prod", "stage" }) @DatabaseOrganisation("fixed") final Database db,
+		@DatabaseNames("prod") @DatabaseOrganisation("fixed") final Database dbProd
+	) throws InterruptedException, ExecutionException {
+		var page = dbProd.put(new Page("home")).get();
+
+		// the first increment copies the page up, the rest add to that copy
+		var futures = IntStream.range(0, 10).mapToObj(i -> db.increment(Page.class, page.getId(), "views", 3)).toArray(CompletableFuture[]::new);
+		CompletableFuture.allOf(futures).get();
+
+		Assertions.assertEquals(30, db.get(Page.class, page.getId()).get().getViews());
+		Assertions.assertEquals("home", db.get(Page.class, page.getId()).get().getName());
+		Assertions.assertEquals(0, dbProd.get(Page.class, page.getId()).get().getViews());
+	}
+
+	@TestDatabase
+	void testShardedCounter(final Database db) throws InterruptedException, ExecutionException {
+		var page = db.put(new Page("home")).get();
+		var other = db.put(new Page("other")).get();
+
+		var futures = IntStream.range(0, 50).mapToObj(i -> db.incrementSharded(Page.class, page.getId(), "views", 1, 8)).toArray(CompletableFuture[]::new);
+		CompletableFuture.allOf(futures).get();
+		db.incrementSharded(Page.class, other.getId(), "views", 3, 8).get();
+
+		Assertions.assertEquals(50L, db.getShardedCounter(Page.class, page.getId(), "views").get());
+		Assertions.assertEquals(3L, db.getShardedCounter(Page.class, other.getId(), "views").get());
+		Assertions.assertEquals(0L, db.getShardedCounter(Page.class, page.getId(), "likes").get());
+		Assertions.assertEquals(2, db.query(Page.class).get().size());
+	}
+
+	static class Page extends Table {
+
+		private String name;
+		private long views;
+
+		public Page() {}
+
+		public Page(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getViews() {
+			return views;
+		}
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.phocassoftware.graphql.database.manager.test;
+
+import com.phocassoftware.graphql.database.manager.Database;
+import com.phocassoftware.graphql.database.manager.DatabaseExecutors;
+import com.phocassoftware.graphql.database.manager.Table;
+import com.phocassoftware.graphql.database.manager.dynamo.DynamoDbManager;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Assertions;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+
+final class DynamoDbDispatchTest {
+
+	@TestDatabase
+	void testRejectingDispatch(final DynamoDbAsyncClient client) throws InterruptedException, ExecutionException {
+		DatabaseExecutors executors = workload -> {
+			if (workload == DatabaseExecutors.Workload.DISPATCH) {
+				return task -> {
+					throw new RejectedExecutionException("full");
+				};
+			}
+			return DatabaseExecutors.VIRTUAL.executor(workload);
+		};
+		Database db = DynamoDbManager
+			.builder()
+			.tables("table")
+			.dynamoDbAsyncClient(client)
+			.objectMapper(new ObjectMapperCreator().get())
+			.executors(executors)
+			.build()
+			.getDatabase(UUID.randomUUID().toString());
+
+		var ids = IntStream.range(0, 20).mapToObj(i -> db.put(new Entry("entry" + i)).join().getId()).toList();
+
+		// every load is handed back on the thread that finished it rather than failing with the rejection
+		List<CompletableFuture<Entry>> loads = ids.stream().map(id -> db.get(Entry.class, id)).toList();
+		CompletableFuture.allOf(loads.toArray(CompletableFuture[]::new)).get();
+		Assertions.assertEquals(ids, loads.stream().map(load -> load.join().getId()).toList());
+	}
+
+	static class Entry extends Table {
+
+		private String name;
+
+		public Entry() {}
+
+		public Entry(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager.test;
+
+import com.phocassoftware.graphql.database.manager.Database;
+import com.phocassoftware.graphql.database.manager.Table;
+import com.phocassoftware.graphql.database.manager.TableAccess;
+import com.phocassoftware.graphql.database.manager.annotations.ExternalLinks;
+import com.phocassoftware.graphql.database.manager.annotations.TableName;
+import com.phocassoftware.graphql.database.manager.dynamo.DynamoDbManager;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Assertions;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+
+final class DynamoDbExternalLinkTest {
+
+	@TestDatabase
+	void testLinkBothSides(final Database db) throws InterruptedException, ExecutionException {
+		var group = db.put(new Group("admins")).get();
+		var members = IntStream.range(0, 60).mapToObj(i -> db.put(new Member("member" + i)).join()).toList();
+
+		var linked = db.links(group, Member.class, members.stream().map(Member::getId).toList()).get();
+		// adjacency rows leave the entity row alone
+		Assertions.assertEquals(1, linked.getRevision());
+
+		group = db.get(Group.class, group.getId()).get();
+		Assertions.assertEquals(60, db.getLinks(group, Member.class).get().size());
+
+		var member = db.get(Member.class, members.get(0).getId()).get();
+		Assertions.assertEquals("admins", db.getLink(member, Group.class).get().getName());
+
+		db.unlink(group, Member.class, member.getId()).get();
+		Assertions.assertEquals(59, db.getLinks(group, Member.class).get().size());
+		Assertions.assertNull(db.getLink(member, Group.class).get());
+
+		db.links(group, Member.class, List.of(members.get(1).getId())).get();
+		var remaining = db.getLinks(group, Member.class).get();
+		Assertions.assertEquals(1, remaining.size());
+		Assertions.assertEquals("member1", remaining.get(0).getName());
+	}
+
+	@TestDatabase
+	void testDeleteLinks(final Database db) throws InterruptedException, ExecutionException {
+		var group = db.put(new Group("admins")).get();
+		var member = db.put(new Member("garry")).get();
+
+		db.link(group, Member.class, member.getId()).get();
+		group = db.get(Group.class, group.getId()).get();
+
+		db.delete(group, true).get();
+
+		member = db.get(Member.class, member.getId()).get();
+		Assertions.assertTrue(db.getLinks(member, Group.class).get().isEmpty());
+	}
+
+	@TestDatabase
+	void testDeleteKeepsExternalLinks(final Database db) throws InterruptedException, ExecutionException {
+		var group = db.put(new Group("admins")).get();
+		var member = db.put(new Member("garry")).get();
+		db.link(group, Member.class, member.getId()).get();
+
+		// the links are not on either row, deleting without them must still notice
+		var failure = Assertions.assertThrows(ExecutionException.class, () -> db.delete(member, false).get());
+		Assertions.assertEquals("deleting would leave dangling links", failure.getCause().getMessage());
+		Assertions.assertEquals("garry", db.get(Member.class, member.getId()).get().getName());
+
+		db.unlink(group, Member.class, member.getId()).get();
+		db.delete(member, false).get();
+		Assertions.assertNull(db.get(Member.class, member.getId()).get());
+	}
+
+	@TestDatabase
+	void testSelfLink(final Database db) throws InterruptedException, ExecutionException {
+		var node = db.put(new Node("root")).get();
+		var other = db.put(new Node("leaf")).get();
+
+		node = db.links(node, Node.class, List.of(node.getId(), other.getId())).get();
+		Assertions.assertEquals(Set.of(node.getId(), other.getId()), db.getLinkIdsAsync(node, Node.class).get());
+		Assertions.assertEquals(Set.of(node.getId()), db.getLinkIdsAsync(other, Node.class).get());
+
+		db.delete(node, true).get();
+		Assertions.assertTrue(db.getLinkIdsAsync(other, Node.class).get().isEmpty());
+	}
+
+	@TestDatabase
+	void testExternalLinksNeedClassPath(final DynamoDbAsyncClient client) throws InterruptedException, ExecutionException {
+		var db = DynamoDbManager
+			.builder()
+			.tables("table")
+			.dynamoDbAsyncClient(client)
+			.objectMapper(new ObjectMapperCreator().get())
+			.build()
+			.getDatabase(UUID.randomUUID().toString());
+
+		var group = db.put(new Group("admins")).get();
+		var member = db.put(new Member("garry")).get();
+		var failure = Assertions.assertThrows(ExecutionException.class, () -> db.link(group, Member.class, member.getId()).get());
+		Assertions.assertEquals("classPath is required to use external links between externalgroups and externalmembers", failure.getCause().getMessage());
+
+		// nothing can be linked externally so deletes do not go looking for adjacency rows
+		db.delete(member, false).get();
+		Assertions.assertNull(db.get(Member.class, member.getId()).get());
+	}
+
+	@TestDatabase
+	void testMigrate(final Database db) throws InterruptedException, ExecutionException {
+		var inline = db.put(new InlineGroup("admins")).get();
+		var garry = db.put(new Member("garry")).get();
+		var frank = db.put(new Member("frank")).get();
+
+		db.links(inline, Member.class, List.of(garry.getId(), frank.getId())).get();
+
+		// same row read through the externally linked type still sees the inline links
+		var group = db.get(Group.class, inline.getId()).get();
+		var links = db.getLinks(group, Member.class).get();
+		Assertions.assertEquals(2, links.size());
+
+		group = db.migrateLinks(group, Member.class).get();
+		Assertions.assertNull(TableAccess.getTableLinks(group).get("externalmembers"));
+		Assertions.assertTrue(db.getLinkIds(group, Member.class).isEmpty());
+		Assertions.assertEquals(Set.of(garry.getId(), frank.getId()), db.getLinkIdsAsync(group, Member.class).get());
+
+		group = db.get(Group.class, group.getId()).get();
+		links = db.getLinks(group, Member.class).get();
+		links.sort(Comparator.comparing(Member::getName));
+		Assertions.assertEquals(2, links.size());
+		Assertions.assertEquals("frank", links.get(0).getName());
+		Assertions.assertEquals("garry", links.get(1).getName());
+
+		garry = db.get(Member.class, garry.getId()).get();
+		Assertions.assertTrue(TableAccess.getTableLinks(garry).getOrDefault("externalgroups", Set.of()).isEmpty());
+		Assertions.assertEquals(Set.of(group.getId()), db.getLinkIdsAsync(garry, Group.class).get());
+		Assertions.assertEquals("admins", db.getLink(garry, Group.class).get().getName());
+	}
+
+	@TableName("externalgroups")
+	@ExternalLinks(Member.class)
+	static class Group extends Table {
+
+		private String name;
+
+		public Group() {}
+
+		public Group(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	@TableName("externalgroups")
+	static class InlineGroup extends Table {
+
+		private String name;
+
+		public InlineGroup() {}
+
+		public InlineGroup(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	@TableName("externalnodes")
+	@ExternalLinks(Node.class)
+	static class Node extends Table {
+
+		private String name;
+
+		public Node() {}
+
+		public Node(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	@TableName("externalmembers")
+	static class Member extends Table {
+
+		private String name;
+
+		public Member() {}
+
+		public Member(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager.test;
+
+import com.phocassoftware.graphql.database.manager.dynamo.DynamoDbManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Assertions;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+
+final class DynamoDbIdGeneratorTest {
+
+	@TestDatabase
+	void testDefaultIdsAreUuids(final DynamoDbAsyncClient client) {
+		var manager = DynamoDbManager.builder().tables("table").dynamoDbAsyncClient(client).objectMapper(new ObjectMapperCreator().get()).build();
+
+		var id = manager.newId();
+		Assertions.assertEquals(id, UUID.fromString(id).toString());
+	}
+
+	@TestDatabase
+	void testTimeOrderedIds(final DynamoDbAsyncClient client) {
+		var manager = DynamoDbManager
+			.builder()
+			.tables("table")
+			.dynamoDbAsyncClient(client)
+			.objectMapper(new ObjectMapperCreator().get())
+			.timeOrderedIds()
+			.build();
+
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			ids.add(manager.newId());
+		}
+		var sorted = new ArrayList<>(ids);
+		sorted.sort(null);
+		Assertions.assertEquals(ids, sorted);
+		Assertions.assertThrows(IllegalArgumentException.class, () -> UUID.fromString(ids.get(0)));
+	}
+}
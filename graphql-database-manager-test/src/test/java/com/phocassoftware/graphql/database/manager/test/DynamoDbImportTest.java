@@ -0,0 +1,109 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager.test;
+
+import com.phocassoftware.graphql.database.manager.Database;
+import com.phocassoftware.graphql.database.manager.ImportResult;
+import com.phocassoftware.graphql.database.manager.Table;
+import com.phocassoftware.graphql.database.manager.access.ForbiddenWriteException;
+import com.phocassoftware.graphql.database.manager.dynamo.DynamoDbManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Assertions;
+
+final class DynamoDbImportTest {
+
+	@TestDatabase
+	void testImportIterator(final Database db) throws InterruptedException, ExecutionException {
+		var entities = IntStream.range(0, 250).mapToObj(i -> new SimpleTable("entry" + i)).iterator();
+
+		var result = db.importStream(entities, builder -> builder.batchSize(40).parallelism(2)).get();
+
+		Assertions.assertEquals(250, result.succeeded());
+		Assertions.assertEquals(0, result.failed());
+		Assertions.assertEquals(250, db.query(SimpleTable.class).get().size());
+	}
+
+	@TestDatabase
+	void testImportSourceFailure(final Database db) throws InterruptedException, ExecutionException {
+		var entities = IntStream
+			.range(0, 100)
+			.mapToObj(i -> {
+				if (i == 45) {
+					throw new IllegalStateException("source broke");
+				}
+				return new SimpleTable("entry" + i);
+			})
+			.iterator();
+
+		var failure = Assertions.assertThrows(ExecutionException.class, () -> db.importStream(entities, builder -> builder.batchSize(20).parallelism(2)).get());
+		Assertions.assertEquals("source broke", failure.getCause().getMessage());
+		// everything read before the failure was written by the time the import failed
+		Assertions.assertEquals(45, db.query(SimpleTable.class).get().size());
+	}
+
+	@TestDatabase
+	void testImportPublisher(final Database db) throws InterruptedException, ExecutionException {
+		CompletableFuture<ImportResult> result;
+		try (var publisher = new SubmissionPublisher<SimpleTable>()) {
+			result = db.importStream(publisher, builder -> builder.batchSize(7));
+			for (int i = 0; i < 30; i++) {
+				publisher.submit(new SimpleTable("entry" + i));
+			}
+		}
+
+		Assertions.assertEquals(30, result.get().succeeded());
+		var names = db.query(SimpleTable.class).get().stream().map(SimpleTable::getName).collect(Collectors.toSet());
+		Assertions.assertEquals(30, names.size());
+	}
+
+	@TestDatabase
+	void testImportFailures(final DynamoDbManager manager) throws InterruptedException, ExecutionException {
+		var db = manager.getDatabase("import", entity -> CompletableFuture.completedFuture(!((SimpleTable) entity).getName().startsWith("deny")));
+
+		var existing = db.put(new SimpleTable("existing")).get();
+		var stale = new SimpleTable("stale");
+		stale.setId(existing.getId());
+
+		var failures = Collections.synchronizedList(new ArrayList<Throwable>());
+		var entities = List.of(new SimpleTable("allow"), new SimpleTable("deny"), stale).iterator();
+
+		var result = db.importStream(entities, builder -> builder.onFailure((entity, failure) -> failures.add(failure))).get();
+
+		Assertions.assertEquals(1, result.succeeded());
+		Assertions.assertEquals(2, result.failed());
+		Assertions.assertEquals(2, failures.size());
+		Assertions.assertTrue(failures.stream().anyMatch(ForbiddenWriteException.class::isInstance));
+	}
+
+	static class SimpleTable extends Table {
+
+		private String name;
+
+		public SimpleTable() {}
+
+		public SimpleTable(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}
@@ -15,6 +15,7 @@ package com.phocassoftware.graphql.database.manager.test;
 import tools.jackson.core.type.TypeReference;
 import tools.jackson.databind.ObjectMapper;
 import com.phocassoftware.graphql.database.manager.Database;
+import com.phocassoftware.graphql.database.manager.KeyRange;
 import com.phocassoftware.graphql.database.manager.Table;
 import com.phocassoftware.graphql.database.manager.annotations.GlobalIndex;
 import com.phocassoftware.graphql.database.manager.annotations.SecondaryIndex;
@@ -88,6 +89,52 @@ final class DynamoDbIndexesTest {
 		Assertions.assertEquals("garry", db.querySecondaryUnique(SimpleTable.class, "garry").get().getName());
 	}
 
+	@TestDatabase
+	void testSecondaryPrimesLoader(@DatabaseNames({ "isolate" }) final Database db) throws InterruptedException, ExecutionException {
+		var entry = db.put(new SimpleTable("garry", "john")).get();
+
+		var list = db.querySecondary(SimpleTable.class, "garry").get();
+		Assertions.assertEquals(1, list.size());
+		// the index row was decoded and primed so the get does not go back to the table
+		Assertions.assertSame(list.get(0), db.get(SimpleTable.class, entry.getId()).get());
+
+		list = db.querySecondary(SimpleTable.class, "garry", true).get();
+		Assertions.assertEquals(1, list.size());
+		Assertions.assertEquals("john", list.get(0).getGlobalLookup());
+	}
+
+	@TestDatabase
+	void testNamedIndexes(final Database db) throws InterruptedException, ExecutionException {
+		var first = db.put(new Ticket("open", "garry", "T-1")).get();
+		db.put(new Ticket("open", "barry", "T-2")).get();
+		db.put(new Ticket("closed", "garry", "T-3")).get();
+
+		Assertions.assertEquals(2, db.querySecondary(Ticket.class, "byStatus", "open").get().size());
+		Assertions.assertEquals(2, db.querySecondary(Ticket.class, "byOwner", "garry").get().size());
+		Assertions.assertEquals("barry", db.queryGlobal(Ticket.class, "byCode", "T-2").get().get(0).getOwner());
+
+		first.setStatus("closed");
+		db.put(first).get();
+
+		Assertions.assertEquals(1, db.querySecondary(Ticket.class, "byStatus", "open").get().size());
+		Assertions.assertEquals(2, db.querySecondary(Ticket.class, "byStatus", "closed").get().size());
+		// the unnamed index is untouched by the named ones
+		Assertions.assertEquals(0, db.querySecondary(Ticket.class, "open").get().size());
+	}
+
+	@TestDatabase
+	void testSecondaryRange(@DatabaseNames({ "isolate" }) final Database db) throws InterruptedException, ExecutionException {
+		db.put(new SimpleTable("anna", "1")).get();
+		db.put(new SimpleTable("barry", "2")).get();
+		db.put(new SimpleTable("garry", "3")).get();
+
+		Assertions.assertEquals(2, db.querySecondary(SimpleTable.class, "", KeyRange.between("anna", "barry")).get().size());
+		var after = db.querySecondary(SimpleTable.class, "", KeyRange.greaterThan("barry")).get();
+		Assertions.assertEquals(1, after.size());
+		Assertions.assertEquals("garry", after.get(0).getName());
+		Assertions.assertEquals(1, db.querySecondary(SimpleTable.class, "", KeyRange.lessThan("barry")).get().size());
+	}
+
 	@TestDatabase
 	void testSecondaryInheritance(
 		@DatabaseNames({ "prod", "stage" }) @DatabaseOrganisation("fixed") final Database db,
@@ -223,4 +270,38 @@ final class DynamoDbIndexesTest {
 			return globalLookup;
 		}
 	}
+
+	public static class Ticket extends Table {
+
+		private String status;
+		private String owner;
+		private String code;
+
+		public Ticket() {}
+
+		public Ticket(String status, String owner, String code) {
+			this.status = status;
+			this.owner = owner;
+			this.code = code;
+		}
+
+		@SecondaryIndex(name = "byStatus")
+		public String getStatus() {
+			return status;
+		}
+
+		public void setStatus(String status) {
+			this.status = status;
+		}
+
+		@SecondaryIndex(name = "byOwner")
+		public String getOwner() {
+			return owner;
+		}
+
+		@GlobalIndex(name = "byCode")
+		public String getCode() {
+			return code;
+		}
+	}
 }
@@ -16,8 +16,12 @@ import com.phocassoftware.graphql.database.manager.Database;
 import com.phocassoftware.graphql.database.manager.Table;
 import com.phocassoftware.graphql.database.manager.test.annotations.DatabaseNames;
 import com.phocassoftware.graphql.database.manager.test.annotations.DatabaseOrganisation;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.stream.IntStream;
 import org.junit.jupiter.api.Assertions;
 
 final class DynamoDbLinkTest {
@@ -75,6 +79,97 @@ final class DynamoDbLinkTest {
 		Assertions.assertEquals("garry", bobLinks.get(1).name);
 	}
 
+	@TestDatabase
+	void testBulkLinks(final Database db) throws InterruptedException, ExecutionException {
+		var garry = db.put(new SimpleTable("garry")).get();
+		var frank = db.put(new SimpleTable("frank")).get();
+		var john = db.put(new AnotherTable("john")).get();
+		var bob = db.put(new AnotherTable("bob")).get();
+
+		var linked = db
+			.bulkLinks(
+				Map
+					.of(
+						garry,
+						Map.of(AnotherTable.class, List.of(john.getId(), bob.getId(), john.getId())),
+						frank,
+						Map.of(AnotherTable.class, List.of(bob.getId()))
+					)
+			)
+			.get();
+		Assertions.assertEquals(2, linked.size());
+
+		john = db.get(AnotherTable.class, john.getId()).get();
+		bob = db.get(AnotherTable.class, bob.getId()).get();
+
+		Assertions.assertEquals("garry", db.getLink(john, SimpleTable.class).get().name);
+		var bobLinks = db.getLinks(bob, SimpleTable.class).get();
+		bobLinks.sort(Comparator.comparing(a -> a.name));
+		Assertions.assertEquals(2, bobLinks.size());
+		Assertions.assertEquals("frank", bobLinks.get(0).name);
+		Assertions.assertEquals("garry", bobLinks.get(1).name);
+
+		garry = db.get(SimpleTable.class, garry.getId()).get();
+		frank = db.get(SimpleTable.class, frank.getId()).get();
+		var frankRevision = frank.getRevision();
+
+		// frank is unchanged so is not written again
+		db.bulkLinks(Map.of(garry, Map.of(AnotherTable.class, List.of(bob.getId())), frank, Map.of(AnotherTable.class, List.of(bob.getId())))).get();
+
+		john = db.get(AnotherTable.class, john.getId()).get();
+		frank = db.get(SimpleTable.class, frank.getId()).get();
+		Assertions.assertTrue(db.getLinks(john, SimpleTable.class).get().isEmpty());
+		Assertions.assertEquals(frankRevision, frank.getRevision());
+	}
+
+	@TestDatabase
+	void testBulkLinksEachOther(final Database db) throws InterruptedException, ExecutionException {
+		var garry = db.put(new SimpleTable("garry")).get();
+		var john = db.put(new AnotherTable("john")).get();
+		var bob = db.put(new AnotherTable("bob")).get();
+		db.link(garry, AnotherTable.class, bob.getId()).get();
+
+		// garry is passed as it was before linking to bob, both sides name each other
+		var linked = db
+			.bulkLinks(Map.of(garry, Map.of(AnotherTable.class, List.of(john.getId())), john, Map.of(SimpleTable.class, List.of(garry.getId()))))
+			.get();
+
+		var storedGarry = db.get(SimpleTable.class, garry.getId()).get();
+		var storedJohn = db.get(AnotherTable.class, john.getId()).get();
+		bob = db.get(AnotherTable.class, bob.getId()).get();
+
+		Assertions.assertEquals("john", db.getLink(storedGarry, AnotherTable.class).get().name);
+		Assertions.assertEquals("garry", db.getLink(storedJohn, SimpleTable.class).get().name);
+		Assertions.assertTrue(db.getLinks(bob, SimpleTable.class).get().isEmpty());
+
+		// john got his link from garry's write and is not written a second time
+		Assertions.assertEquals(john.getRevision() + 1, storedJohn.getRevision());
+		for (var entity : linked) {
+			var stored = entity instanceof SimpleTable ? storedGarry : storedJohn;
+			Assertions.assertEquals(stored.getRevision(), entity.getRevision());
+		}
+	}
+
+	@TestDatabase
+	void testPagedLinks(final Database db) throws InterruptedException, ExecutionException {
+		var garry = db.put(new SimpleTable("garry")).get();
+		var others = IntStream.range(0, 25).mapToObj(i -> db.put(new AnotherTable("other" + i)).join()).toList();
+		garry = db.links(garry, AnotherTable.class, others.stream().map(Table::getId).toList()).get();
+
+		var seen = new ArrayList<String>();
+		String after = null;
+		List<AnotherTable> page;
+		do {
+			page = db.getLinks(garry, AnotherTable.class, after, 10).get();
+			Assertions.assertTrue(page.size() <= 10);
+			page.forEach(other -> seen.add(other.getId()));
+			after = page.isEmpty() ? after : page.get(page.size() - 1).getId();
+		} while (page.size() == 10);
+
+		Assertions.assertEquals(25, seen.size());
+		Assertions.assertEquals(seen.stream().sorted().toList(), seen);
+	}
+
 	@TestDatabase
 	void testUpdate(final Database db) throws InterruptedException, ExecutionException {
 		var garry = db.put(new SimpleTable("garry")).get();
@@ -13,8 +13,11 @@
 package com.phocassoftware.graphql.database.manager.test;
 
 import com.phocassoftware.graphql.database.manager.Database;
+import com.phocassoftware.graphql.database.manager.QueryBuilder;
+import com.phocassoftware.graphql.database.manager.QueryFilter;
 import com.phocassoftware.graphql.database.manager.Table;
 import com.phocassoftware.graphql.database.manager.test.annotations.DatabaseNames;
+import com.phocassoftware.graphql.database.manager.test.annotations.DatabaseOrganisation;
 
 import java.util.List;
 import java.util.Random;
@@ -67,6 +70,13 @@ final class DynamoDbQueryBuilderTest {
 		Assertions.assertEquals(10, result2.size());
 	}
 
+	static class Trinket extends Table {
+
+		public Trinket(String id) {
+			setId(id);
+		}
+	}
+
 	static class BigData extends Table {
 
 		private String name;
@@ -169,4 +179,128 @@ final class DynamoDbQueryBuilderTest {
 		Assertions.assertEquals("budgetId1:sales;trinkets:2021/02", reverse.get(0).getId());
 		Assertions.assertEquals("budgetId1:sales;trinkets:2020/10", reverse.get(reverse.size() - 1).getId());
 	}
+
+	@TestDatabase
+	void testRange(final Database db) throws InterruptedException, ExecutionException {
+		db.put(new Ticket("2020/10", "6 trinkets")).get();
+		db.put(new Ticket("2020/11", "7 trinkets")).get();
+		db.put(new Ticket("2020/12", "8 trinkets")).get();
+		db.put(new Ticket("2021/01", "9 trinkets")).get();
+		db.put(new Ticket("2021/02", "10 trinkets")).get();
+
+		var between = db.query(Ticket.class, builder -> builder.between("2020/11", "2021/01")).get();
+		Assertions.assertEquals(List.of("2020/11", "2020/12", "2021/01"), between.stream().map(Ticket::getId).toList());
+
+		var greater = db.query(Ticket.class, builder -> builder.greaterThan("2020/12")).get();
+		Assertions.assertEquals(List.of("2021/01", "2021/02"), greater.stream().map(Ticket::getId).toList());
+
+		var less = db.query(Ticket.class, builder -> builder.lessThan("2020/12").limit(2)).get();
+		Assertions.assertEquals(List.of("2020/10", "2020/11"), less.stream().map(Ticket::getId).toList());
+
+		// the exclusive end is dropped without shrinking the page
+		var limited = db.query(Ticket.class, builder -> builder.greaterThan("2020/10").limit(2)).get();
+		Assertions.assertEquals(List.of("2020/11", "2020/12"), limited.stream().map(Ticket::getId).toList());
+
+		// other types sort straight after this one and must stay out of an open range
+		db.put(new Trinket("2021/01")).get();
+		Assertions.assertEquals(2, db.query(Ticket.class, builder -> builder.greaterThan("2020/12")).get().size());
+	}
+
+	static class Sale extends Table {
+
+		private String region;
+		private int amount;
+
+		public Sale(String id, String region, int amount) {
+			setId(id);
+			this.region = region;
+			this.amount = amount;
+		}
+
+		public String getRegion() {
+			return region;
+		}
+
+		public int getAmount() {
+			return amount;
+		}
+	}
+
+	@TestDatabase
+	void testFilter(final Database db) throws InterruptedException, ExecutionException {
+		db.put(new Sale("1", "north", 10)).get();
+		db.put(new Sale("2", "south", 20)).get();
+		db.put(new Sale("3", "north", 30)).get();
+		db.put(new Sale("4", "northwest", 40)).get();
+		db.put(new Sale("5", "east", 50)).get();
+
+		var north = db.query(Sale.class, builder -> builder.filter(QueryFilter.eq("region", "north"))).get();
+		Assertions.assertEquals(List.of("1", "3"), north.stream().map(Sale::getId).toList());
+
+		var large = db
+			.query(Sale.class, builder -> builder.filter(QueryFilter.beginsWith("region", "north")).filter(QueryFilter.greaterThan("amount", 15)))
+			.get();
+		Assertions.assertEquals(List.of("3", "4"), large.stream().map(Sale::getId).toList());
+
+		var any = db.query(Sale.class, builder -> builder.filter(QueryFilter.in("region", "south", "east")).limit(1)).get();
+		Assertions.assertEquals(List.of("2"), any.stream().map(Sale::getId).toList());
+
+		var none = db.query(Sale.class, builder -> builder.filter(QueryFilter.not(QueryFilter.exists("region")))).get();
+		Assertions.assertEquals(0, none.size());
+	}
+
+	@TestDatabase
+	void testBeforeAndLast(final Database db) throws InterruptedException, ExecutionException {
+		for (int i = 1; i <= 10; i++) {
+			db.put(new Ticket(getId(i), i + " trinkets")).get();
+		}
+
+		var last = db.query(Ticket.class, builder -> builder.last(3)).get();
+		Assertions.assertEquals(List.of(getId(10), getId(9), getId(8)), last.stream().map(Ticket::getId).toList());
+
+		var before = db.query(Ticket.class, builder -> builder.before(getId(8)).limit(3)).get();
+		Assertions.assertEquals(List.of(getId(7), getId(6), getId(5)), before.stream().map(Ticket::getId).toList());
+	}
+
+	@TestDatabase
+	void testLastOverlay(
+		@DatabaseNames({ "prod", "stage" }) @DatabaseOrganisation("fixed") final Database db,
+		@DatabaseNames({ "prod" }) @DatabaseOrganisation("fixed") final Database dbProd
+	) throws InterruptedException, ExecutionException {
+		for (int i = 1; i <= 5; i++) {
+			dbProd.put(new Ticket(getId(i), "prod " + i)).get();
+		}
+		db.put(new Ticket(getId(6), "stage 6")).get();
+		db.put(new Ticket(getId(4), "stage 4")).get();
+		db.delete(db.get(Ticket.class, getId(5)).get(), false).get();
+
+		var last = db.query(Ticket.class, builder -> builder.last(3)).get();
+		Assertions.assertEquals(List.of(getId(6), getId(4), getId(3)), last.stream().map(Ticket::getId).toList());
+		Assertions.assertEquals("stage 4", last.get(1).getValue());
+	}
+
+	@TestDatabase
+	void testExplain(
+		@DatabaseNames({ "prod", "stage" }) @DatabaseOrganisation("fixed") final Database db
+	) throws InterruptedException, ExecutionException {
+		var plan = db.explain(Ticket.class, builder -> builder.startsWith("budgetId1:").limit(10));
+		Assertions.assertEquals(4, plan.fanOut());
+		Assertions.assertTrue(plan.requests().stream().allMatch(request -> request.expectedItems() == 10));
+		Assertions.assertTrue(plan.estimatedReadCapacity() > 0);
+
+		for (int i = 1; i <= 3; i++) {
+			db.put(new Ticket(getId(i), i + " trinkets")).get();
+		}
+		var analyzed = db.analyze(QueryBuilder.create(Ticket.class).limit(10).build()).get();
+		Assertions.assertEquals(3, analyzed.actual().items());
+
+		db.query(Ticket.class, builder -> builder.limit(10)).get();
+		Assertions.assertEquals(0, db.explain(Ticket.class, builder -> builder.limit(10)).fanOut());
+
+		var get = db.explainGet(Ticket.class, List.of(getId(1), getId(2)));
+		// both tables are read by the one batch request the loader sends
+		Assertions.assertEquals(1, get.fanOut());
+		Assertions.assertEquals("BatchGetItem", get.requests().get(0).operation());
+		Assertions.assertEquals(2, get.requests().get(0).table().split(", ").length);
+	}
 }
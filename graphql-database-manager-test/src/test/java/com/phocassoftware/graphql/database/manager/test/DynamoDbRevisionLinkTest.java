@@ -116,6 +116,24 @@ public class DynamoDbRevisionLinkTest {
 		Assertions.assertEquals(4, other2.getRevision());
 	}
 
+	@TestDatabase
+	public void testLinkMissingTarget(final Database db) throws InterruptedException, ExecutionException {
+		var entry = new SimpleTable("1", "garry");
+		var other1 = new AnotherTable("1", "pants");
+
+		entry = db.put(entry).get();
+		other1 = db.put(other1).get();
+
+		// target 2 was never written so the whole link can not go through in one transaction
+		entry = db.links(entry, AnotherTable.class, Arrays.asList("1", "2")).get();
+
+		other1 = db.get(AnotherTable.class, "1").get();
+
+		Assertions.assertEquals(2, entry.getRevision());
+		Assertions.assertEquals(2, other1.getRevision()); // rolled back transaction does not bump twice
+		Assertions.assertEquals("garry", db.getLink(other1, SimpleTable.class).get().getName());
+	}
+
 	@TestDatabase
 	public void testLinkDeleteObject(final Database db) throws InterruptedException, ExecutionException {
 		var entry = new SimpleTable("1", "garry");
@@ -0,0 +1,85 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.phocassoftware.graphql.database.manager.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.phocassoftware.graphql.database.manager.Table;
+import com.phocassoftware.graphql.database.manager.dynamo.DynamoDbManager;
+import com.phocassoftware.graphql.database.manager.test.annotations.DatabaseNames;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+final class DynamoDbScanTest {
+
+	@TestDatabase
+	void testOverlayScan(
+		@DatabaseNames({ "prod", "stage" }) final DynamoDbManager stage,
+		@DatabaseNames("prod") final DynamoDbManager prod
+	) {
+		var prodDb = prod.getVirtualDatabase("org");
+		prodDb.put(new ScanEntry("only", "prod"));
+		prodDb.put(new ScanEntry("shadowed", "prod"));
+		prodDb.put(new ScanEntry("deleted", "prod"));
+
+		var stageDb = stage.getVirtualDatabase("org");
+		stageDb.put(new ScanEntry("shadowed", "stage"));
+		stageDb.delete(stageDb.get(ScanEntry.class, "deleted"), false);
+
+		var seen = new CopyOnWriteArrayList<String>();
+		stage
+			.startTableScan(
+				b -> b
+					.updater(
+						ScanEntry.class,
+						(context, entry) -> {
+							seen.add(entry.getId() + ":" + entry.getName());
+							entry.setName(entry.getName() + "!");
+							context.replace(entry);
+						}
+					)
+			)
+			.start()
+			.join();
+
+		// the prod copy of shadowed and the deleted entry are never handed over
+		assertEquals(List.of("only:prod", "shadowed:stage"), seen.stream().sorted().toList());
+		assertEquals("prod!", stageDb.get(ScanEntry.class, "only").getName());
+		assertEquals("stage!", stageDb.get(ScanEntry.class, "shadowed").getName());
+		assertNull(stageDb.get(ScanEntry.class, "deleted"));
+
+		assertEquals("prod", prodDb.get(ScanEntry.class, "only").getName());
+		assertEquals("prod", prodDb.get(ScanEntry.class, "shadowed").getName());
+		assertEquals("prod", prodDb.get(ScanEntry.class, "deleted").getName());
+	}
+
+	public static class ScanEntry extends Table {
+
+		private String name;
+
+		public ScanEntry() {}
+
+		public ScanEntry(String id, String name) {
+			setId(id);
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+	}
+}
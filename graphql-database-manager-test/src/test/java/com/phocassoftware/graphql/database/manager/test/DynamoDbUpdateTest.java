@@ -0,0 +1,138 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.phocassoftware.graphql.database.manager.test;
+
+import com.phocassoftware.graphql.database.manager.Database;
+import com.phocassoftware.graphql.database.manager.Table;
+import com.phocassoftware.graphql.database.manager.annotations.SecondaryIndex;
+import com.phocassoftware.graphql.database.manager.test.annotations.DatabaseNames;
+import com.phocassoftware.graphql.database.manager.test.annotations.DatabaseOrganisation;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+
+final class DynamoDbUpdateTest {
+
+	@TestDatabase
+	void testUpdateChangedFields(final Database db) throws InterruptedException, ExecutionException {
+		var entry = db.put(new SimpleTable("garry", "blue")).get();
+
+		var updated = db
+			.update(
+				SimpleTable.class,
+				entry.getId(),
+				e -> {
+					e.setColour(null);
+					e.setName("frank");
+					return e;
+				}
+			)
+			.get();
+
+		Assertions.assertEquals(2, updated.getRevision());
+
+		var read = db.get(SimpleTable.class, entry.getId()).get();
+		Assertions.assertEquals("frank", read.getName());
+		Assertions.assertNull(read.getColour());
+		Assertions.assertEquals(2, read.getRevision());
+		Assertions.assertEquals(entry.getCreatedAt(), read.getCreatedAt());
+
+		Assertions.assertEquals(entry.getId(), db.querySecondaryUnique(SimpleTable.class, "frank").get().getId());
+		Assertions.assertNull(db.querySecondaryUnique(SimpleTable.class, "garry").get());
+	}
+
+	@TestDatabase
+	void testUpdateRetriesOnConflict(@DatabaseOrganisation("fixed") final Database db, @DatabaseOrganisation("fixed") final Database other)
+		throws InterruptedException, ExecutionException {
+		var entry = db.put(new SimpleTable("garry", "blue")).get();
+		var calls = new AtomicInteger();
+
+		var updated = db
+			.update(
+				SimpleTable.class,
+				entry.getId(),
+				e -> {
+					if (calls.incrementAndGet() == 1) {
+						other.put(new SimpleTable(e.getId(), "john", "red", e.getRevision())).join();
+					}
+					e.setName(e.getName() + "!");
+					return e;
+				}
+			)
+			.get();
+
+		Assertions.assertEquals(2, calls.get());
+		Assertions.assertEquals("john!", updated.getName());
+		Assertions.assertEquals("red", updated.getColour());
+		Assertions.assertEquals(3, updated.getRevision());
+	}
+
+	@TestDatabase
+	void testUpdateInheritedEntity(
+		@DatabaseNames({ "prod", "stage" }) @DatabaseOrganisation("fixed") final Database db,
+		@DatabaseNames("prod") @DatabaseOrganisation("fixed") final Database dbProd
+	)
+		throws InterruptedException, ExecutionException {
+		var entry = dbProd.put(new SimpleTable("garry", "blue")).get();
+
+		var updated = db
+			.update(
+				SimpleTable.class,
+				entry.getId(),
+				e -> {
+					e.setName("frank");
+					return e;
+				}
+			)
+			.get();
+
+		Assertions.assertEquals("frank", db.get(SimpleTable.class, updated.getId()).get().getName());
+		Assertions.assertEquals("garry", dbProd.get(SimpleTable.class, updated.getId()).get().getName());
+	}
+
+	static class SimpleTable extends Table {
+
+		private String name;
+		private String colour;
+
+		public SimpleTable() {}
+
+		public SimpleTable(String name, String colour) {
+			this.name = name;
+			this.colour = colour;
+		}
+
+		public SimpleTable(String id, String name, String colour, long revision) {
+			this(name, colour);
+			setId(id);
+			setRevision(revision);
+		}
+
+		@SecondaryIndex
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public String getColour() {
+			return colour;
+		}
+
+		public void setColour(String colour) {
+			this.colour = colour;
+		}
+	}
+}
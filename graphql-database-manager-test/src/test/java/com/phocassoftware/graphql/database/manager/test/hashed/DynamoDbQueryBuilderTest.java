@@ -15,6 +15,8 @@ package com.phocassoftware.graphql.database.manager.test.hashed;
 import com.phocassoftware.graphql.database.manager.Database;
 import com.phocassoftware.graphql.database.manager.Table;
 import com.phocassoftware.graphql.database.manager.annotations.Hash;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.CompletableFuture;
@@ -150,22 +152,34 @@ final class DynamoDbQueryBuilderTest {
 		l.stream().map(db::put).forEach(this::swallow);
 
 		var allItems = db.query(BigData.class, builder -> builder).get();
-		var result1Page1 = db.query(BigData.class, builder -> builder.threadCount(2).threadIndex(0).limit(5)).get();
-		var result2Page2 = db.query(BigData.class, builder -> builder.threadCount(2).threadIndex(1).limit(5)).get();
-
 		Assertions.assertEquals(20, allItems.size());
 
-		var lastPageIndex1 = result1Page1.get(result1Page1.size() - 1).getId();
-		var result1Page3 = db.query(BigData.class, builder -> builder.threadCount(2).after(lastPageIndex1).threadIndex(0).limit(5)).get();
-
-		var lastPageIndex2 = result2Page2.get(result2Page2.size() - 1).getId();
-		var result2Page4 = db.query(BigData.class, builder -> builder.threadCount(2).after(lastPageIndex2).threadIndex(1).limit(5)).get();
-
-		var firstSide = Stream.concat(result1Page1.stream(), result2Page2.stream());
-		var secondSide = Stream.concat(result1Page3.stream(), result2Page4.stream());
-		var allItemsPage = Stream.concat(firstSide, secondSide).map(s -> s.name).collect(Collectors.toList());
+		// every thread pages on from the last item it was given, so the pages must neither skip nor repeat an item
+		var paged = new ArrayList<String>();
+		for (int thread = 0; thread < 2; thread++) {
+			var threadIndex = thread;
+			String after = null;
+			while (true) {
+				var from = after;
+				var page = db
+					.query(
+						BigData.class,
+						builder -> {
+							builder.threadCount(2).threadIndex(threadIndex).limit(5);
+							return from == null ? builder : builder.after(from);
+						}
+					)
+					.get();
+				page.forEach(item -> paged.add(item.name));
+				if (page.size() < 5) {
+					break;
+				}
+				after = page.getLast().getId();
+			}
+		}
 
-		Assertions.assertTrue(allItems.stream().map(s -> s.name).collect(Collectors.toList()).containsAll(allItemsPage));
+		Assertions.assertEquals(20, paged.size());
+		Assertions.assertEquals(allItems.stream().map(s -> s.name).collect(Collectors.toSet()), new HashSet<>(paged));
 	}
 
 	@TestDatabase
@@ -14,11 +14,23 @@ package com.phocassoftware.graphql.database.manager.test.hashed;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.phocassoftware.graphql.database.manager.InMemoryScanCheckpointStore;
+import com.phocassoftware.graphql.database.manager.ScanCheckpoint;
 import com.phocassoftware.graphql.database.manager.Table;
 import com.phocassoftware.graphql.database.manager.annotations.Hash;
 import com.phocassoftware.graphql.database.manager.dynamo.DynamoDbManager;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 final class TestScanLogic {
 
@@ -84,6 +96,88 @@ final class TestScanLogic {
 		assertEquals(2, lassy.getRevision());
 	}
 
+	@TestDatabase
+	void testScanSeesEveryItemOnce(final DynamoDbManager dynamoDbManager) {
+		var db = dynamoDbManager.getVirtualDatabase("123");
+		var names = IntStream.range(0, 200).mapToObj(i -> "cat" + i).collect(Collectors.toSet());
+		for (var name : names) {
+			db.put(new Cat(name, "loud"));
+		}
+
+		Set<String> seen = ConcurrentHashMap.newKeySet();
+		var scan = dynamoDbManager
+			.startTableScan(
+				b -> b
+					.parallelism(4)
+					.batchSize(7)
+					.updater(
+						Cat.class,
+						(context, cat) -> {
+							assertTrue(seen.add(cat.getName()));
+						}
+					)
+			);
+
+		scan.start().join();
+
+		assertEquals(names, seen);
+	}
+
+	@TestDatabase
+	void testResumeFromCheckpoint(final DynamoDbManager dynamoDbManager) {
+		var db = dynamoDbManager.getVirtualDatabase("123");
+		var names = IntStream.range(0, 200).mapToObj(i -> "cat" + i).collect(Collectors.toSet());
+		for (var name : names) {
+			db.put(new Cat(name, "loud"));
+		}
+		var store = new InMemoryScanCheckpointStore();
+
+		Set<String> seen = ConcurrentHashMap.newKeySet();
+		var count = new AtomicInteger();
+		var failing = dynamoDbManager
+			.startTableScan(
+				b -> b
+					.parallelism(2)
+					.batchSize(10)
+					.checkpoints(store, "resume")
+					.checkpointInterval(Duration.ZERO)
+					.updater(
+						Cat.class,
+						(context, cat) -> {
+							if (count.incrementAndGet() > 50) {
+								throw new RuntimeException("stopped");
+							}
+							seen.add(cat.getName());
+						}
+					)
+			);
+		assertThrows(CompletionException.class, () -> failing.start().join());
+
+		var resumed = dynamoDbManager
+			.startTableScan(
+				b -> b
+					.parallelism(2)
+					.batchSize(10)
+					.checkpoints(store, "resume")
+					.resumeFrom("resume")
+					.updater(Cat.class, (context, cat) -> seen.add(cat.getName()))
+			);
+		resumed.start().join();
+
+		assertEquals(names, seen);
+		assertEquals(Map.of(0, ScanCheckpoint.complete(2), 1, ScanCheckpoint.complete(2)), store.load("resume").join());
+
+		// a finished scan has nothing left to resume
+		var again = new AtomicInteger();
+		dynamoDbManager
+			.startTableScan(
+				b -> b.parallelism(2).checkpoints(store, "resume").resumeFrom("resume").updater(Cat.class, (context, cat) -> again.incrementAndGet())
+			)
+			.start()
+			.join();
+		assertEquals(0, again.get());
+	}
+
 	public static class Cat extends Table {
 
 		private String name;